@@ -22,9 +22,8 @@
 
 package me.lucko.luckperms.api;
 
-import com.google.common.collect.ImmutableMap;
+import me.lucko.luckperms.api.context.ContextSet;
 
-import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -36,24 +35,37 @@ public class Contexts {
     public static final String SERVER_KEY = "server";
     public static final String WORLD_KEY = "world";
 
+    private static final Contexts ALLOW_ALL = new Contexts(ContextSet.empty(), true, true, true, true, true);
+
     /**
      * Gets a context that will allow all nodes
      * @return a context that will not apply any filters
      */
     public static Contexts allowAll() {
-        return new Contexts(Collections.emptyMap(), true, true, true, true, true);
+        return ALLOW_ALL;
     }
 
     public static Contexts of(Map<String, String> context, boolean includeGlobal, boolean includeGlobalWorld, boolean applyGroups, boolean applyGlobalGroups, boolean applyGlobalWorldGroups) {
         return new Contexts(context, includeGlobal, includeGlobalWorld, applyGroups, applyGlobalGroups, applyGlobalWorldGroups);
     }
 
+    public static Contexts of(ContextSet context, boolean includeGlobal, boolean includeGlobalWorld, boolean applyGroups, boolean applyGlobalGroups, boolean applyGlobalWorldGroups) {
+        return new Contexts(context, includeGlobal, includeGlobalWorld, applyGroups, applyGlobalGroups, applyGlobalWorldGroups);
+    }
+
     public Contexts(Map<String, String> context, boolean includeGlobal, boolean includeGlobalWorld, boolean applyGroups, boolean applyGlobalGroups, boolean applyGlobalWorldGroups) {
+        this(ContextSet.of(context), includeGlobal, includeGlobalWorld, applyGroups, applyGlobalGroups, applyGlobalWorldGroups);
+    }
+
+    /**
+     * @since 2.11
+     */
+    public Contexts(ContextSet context, boolean includeGlobal, boolean includeGlobalWorld, boolean applyGroups, boolean applyGlobalGroups, boolean applyGlobalWorldGroups) {
         if (context == null) {
             throw new NullPointerException("context");
         }
 
-        this.context = ImmutableMap.copyOf(context);
+        this.context = context;
         this.includeGlobal = includeGlobal;
         this.includeGlobalWorld = includeGlobalWorld;
         this.applyGroups = applyGroups;
@@ -66,7 +78,7 @@ public class Contexts {
      *
      * The keys for servers and worlds are defined as static values.
      */
-    private final Map<String, String> context;
+    private final ContextSet context;
 
     /**
      * If global or non server specific nodes should be applied
@@ -98,6 +110,15 @@ public class Contexts {
      * @return an immutable map of context key value pairs
      */
     public Map<String, String> getContext() {
+        return this.context.toMap();
+    }
+
+    /**
+     * Gets the contexts that apply for this lookup
+     * @return an immutable set of contexts
+     * @since 2.11
+     */
+    public ContextSet getContextSet() {
         return this.context;
     }
 
@@ -141,6 +162,33 @@ public class Contexts {
         return this.applyGlobalWorldGroups;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof Contexts)) return false;
+        final Contexts other = (Contexts) o;
+        return this.getContextSet().equals(other.getContextSet()) &&
+                this.isIncludeGlobal() == other.isIncludeGlobal() &&
+                this.isIncludeGlobalWorld() == other.isIncludeGlobalWorld() &&
+                this.isApplyGroups() == other.isApplyGroups() &&
+                this.isApplyGlobalGroups() == other.isApplyGlobalGroups() &&
+                this.isApplyGlobalWorldGroups() == other.isApplyGlobalWorldGroups();
+    }
+
+    @Override
+    public int hashCode() {
+        final int PRIME = 59;
+        int result = 1;
+        result = result * PRIME + this.getContextSet().hashCode();
+        result = result * PRIME + (this.isIncludeGlobal() ? 79 : 97);
+        result = result * PRIME + (this.isIncludeGlobalWorld() ? 79 : 97);
+        result = result * PRIME + (this.isApplyGroups() ? 79 : 97);
+        result = result * PRIME + (this.isApplyGlobalGroups() ? 79 : 97);
+        result = result * PRIME + (this.isApplyGlobalWorldGroups() ? 79 : 97);
+        return result;
+    }
+
+    @Override
     public String toString() {
         return "Contexts(" +
                 "context=" + this.getContext() + ", " +
@@ -139,6 +139,25 @@ public interface Datastore {
          */
         Set<UUID> getUniqueUsers();
 
+        /**
+         * Gets the UUIDs of the users who have a stored node for the given permission, without loading them.
+         * Nodes in any context and with any value are matched.
+         * @param permission the permission to look up
+         * @return a set of uuids, or null if the operation failed.
+         * @throws NullPointerException if permission is null
+         * @since 2.11
+         */
+        Set<UUID> getUsersWithPermission(String permission);
+
+        /**
+         * Gets the UUIDs of the users who have a stored node for the given group, without loading them.
+         * @param group the name of the group
+         * @return a set of uuids, or null if the operation failed.
+         * @throws NullPointerException if group is null
+         * @since 2.11
+         */
+        Set<UUID> getGroupMembers(String group);
+
         /**
          * Creates and loads a group into the plugins internal storage
          * @param name the name of the group
@@ -260,6 +279,8 @@ public interface Datastore {
         void saveUser(User user, Callback<Boolean> callback);
         void cleanupUsers(Callback<Boolean> callback);
         void getUniqueUsers(Callback<Set<UUID>> callback);
+        void getUsersWithPermission(String permission, Callback<Set<UUID>> callback);
+        void getGroupMembers(String group, Callback<Set<UUID>> callback);
         void createAndLoadGroup(String name, Callback<Boolean> callback);
         void loadGroup(String name, Callback<Boolean> callback);
         void loadAllGroups(Callback<Boolean> callback);
@@ -292,6 +313,8 @@ public interface Datastore {
         java.util.concurrent.Future<Boolean> saveUser(User user);
         java.util.concurrent.Future<Boolean> cleanupUsers();
         java.util.concurrent.Future<Set<UUID>> getUniqueUsers();
+        java.util.concurrent.Future<Set<UUID>> getUsersWithPermission(String permission);
+        java.util.concurrent.Future<Set<UUID>> getGroupMembers(String group);
         java.util.concurrent.Future<Boolean> createAndLoadGroup(String name);
         java.util.concurrent.Future<Boolean> loadGroup(String name);
         java.util.concurrent.Future<Boolean> loadAllGroups();
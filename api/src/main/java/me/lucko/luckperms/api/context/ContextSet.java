@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.api.context;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * An immutable set of contexts, such as the server and world a permission is checked in.
+ *
+ * <p>The server and world are held separately from any other contexts, so they can be read without copying the set.
+ * Instances are interned and their hash code is computed once, so they can be compared and used as map keys
+ * cheaply.</p>
+ * @since 2.11
+ */
+public final class ContextSet {
+    private static final String SERVER_KEY = "server";
+    private static final String WORLD_KEY = "world";
+
+    private static final Interner<ContextSet> INTERNER = Interners.newWeakInterner();
+    private static final ContextSet EMPTY = INTERNER.intern(new ContextSet(null, null, ImmutableMap.of()));
+
+    /**
+     * Gets a set containing no contexts
+     * @return an empty set
+     */
+    public static ContextSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a set from a map of contexts
+     * @param context the contexts, mapped by their key
+     * @return a set containing the contexts
+     * @throws NullPointerException if the context map is null
+     */
+    public static ContextSet of(Map<String, String> context) {
+        if (context == null) {
+            throw new NullPointerException("context");
+        }
+        if (context.isEmpty()) {
+            return EMPTY;
+        }
+
+        return fromEntries(context.entrySet());
+    }
+
+    /**
+     * Creates a set from context entries, such as the contexts of a Sponge subject
+     * @param contexts the context entries
+     * @return a set containing the contexts
+     * @throws NullPointerException if the entries are null
+     * @throws IllegalArgumentException if a context key is given more than once
+     */
+    public static ContextSet fromEntries(Iterable<? extends Map.Entry<String, String>> contexts) {
+        if (contexts == null) {
+            throw new NullPointerException("contexts");
+        }
+
+        String server = null;
+        String world = null;
+        ImmutableMap.Builder<String, String> other = null;
+        for (Map.Entry<String, String> e : contexts) {
+            switch (e.getKey()) {
+                case SERVER_KEY:
+                    if (server != null) {
+                        throw new IllegalArgumentException("Duplicate server context");
+                    }
+                    server = e.getValue();
+                    break;
+                case WORLD_KEY:
+                    if (world != null) {
+                        throw new IllegalArgumentException("Duplicate world context");
+                    }
+                    world = e.getValue();
+                    break;
+                default:
+                    if (other == null) {
+                        other = ImmutableMap.builder();
+                    }
+                    other.put(e.getKey(), e.getValue());
+                    break;
+            }
+        }
+
+        if (server == null && world == null && other == null) {
+            return EMPTY;
+        }
+        return INTERNER.intern(new ContextSet(server, world, other == null ? ImmutableMap.of() : other.build()));
+    }
+
+    private final String server;
+    private final String world;
+    private final ImmutableMap<String, String> other;
+    private final int hash;
+
+    /**
+     * All of the contexts, created when first requested
+     */
+    private volatile ImmutableMap<String, String> map = null;
+
+    private ContextSet(String server, String world, ImmutableMap<String, String> other) {
+        this.server = server;
+        this.world = world;
+        this.other = other;
+        this.hash = (Objects.hashCode(server) * 31 + Objects.hashCode(world)) * 31 + other.hashCode();
+    }
+
+    /**
+     * Gets the server context
+     * @return the server, or null if there is no server context
+     */
+    public String getServer() {
+        return server;
+    }
+
+    /**
+     * Gets the world context
+     * @return the world, or null if there is no world context
+     */
+    public String getWorld() {
+        return world;
+    }
+
+    /**
+     * Gets the contexts other than the server and world
+     * @return an immutable map of the other contexts
+     */
+    public Map<String, String> getOther() {
+        return other;
+    }
+
+    public boolean isEmpty() {
+        return this == EMPTY;
+    }
+
+    /**
+     * Gets all of the contexts in this set as a map
+     * @return an immutable map of the contexts
+     */
+    public Map<String, String> toMap() {
+        ImmutableMap<String, String> m = map;
+        if (m == null) {
+            ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+            if (server != null) {
+                builder.put(SERVER_KEY, server);
+            }
+            if (world != null) {
+                builder.put(WORLD_KEY, world);
+            }
+            m = builder.putAll(other).build();
+            map = m;
+        }
+        return m;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) return true;
+        if (!(o instanceof ContextSet)) return false;
+        final ContextSet other = (ContextSet) o;
+        return this.hash == other.hash &&
+                Objects.equals(this.server, other.server) &&
+                Objects.equals(this.world, other.world) &&
+                this.other.equals(other.other);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextSet(" + toMap() + ")";
+    }
+}
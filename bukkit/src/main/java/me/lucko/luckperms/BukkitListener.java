@@ -60,7 +60,7 @@ class BukkitListener extends AbstractListener implements Listener {
 
         // Pre-process the user's permissions, so they're ready for PLE.
         BukkitUser user = (BukkitUser) plugin.getUserManager().get(plugin.getUuidCache().getUUID(e.getUniqueId()));
-        Map<String, Boolean> toApply = user.exportNodes(
+        Map<String, Boolean> toApply = user.getPermissionCache().getPermissions(
                 new Contexts(
                         Collections.singletonMap("server", plugin.getConfiguration().getServer()),
                         plugin.getConfiguration().isIncludingGlobalPerms(),
@@ -68,9 +68,7 @@ class BukkitListener extends AbstractListener implements Listener {
                         true,
                         plugin.getConfiguration().isApplyingGlobalGroups(),
                         plugin.getConfiguration().isApplyingGlobalWorldGroups()
-                ),
-                Collections.emptyList(),
-                true
+                )
         );
         user.setLoginPreProcess(toApply);
 
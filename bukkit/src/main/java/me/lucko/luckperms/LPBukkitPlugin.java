@@ -28,6 +28,8 @@ import me.lucko.luckperms.api.LuckPermsApi;
 import me.lucko.luckperms.api.PlatformType;
 import me.lucko.luckperms.api.implementation.ApiProvider;
 import me.lucko.luckperms.api.vault.VaultHook;
+import me.lucko.luckperms.api.vault.cache.VaultUserManager;
+import me.lucko.luckperms.caching.ContextualCache;
 import me.lucko.luckperms.calculators.DefaultsProvider;
 import me.lucko.luckperms.commands.ConsecutiveExecutor;
 import me.lucko.luckperms.commands.Sender;
@@ -36,10 +38,11 @@ import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.contexts.ContextManager;
 import me.lucko.luckperms.contexts.ServerCalculator;
 import me.lucko.luckperms.contexts.WorldCalculator;
+import me.lucko.luckperms.core.ExpiryScheduler;
 import me.lucko.luckperms.core.UuidCache;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.data.Importer;
 import me.lucko.luckperms.groups.GroupManager;
-import me.lucko.luckperms.runnables.ExpireTemporaryTask;
 import me.lucko.luckperms.runnables.UpdateTask;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.storage.StorageFactory;
@@ -77,6 +80,8 @@ public class LPBukkitPlugin extends JavaPlugin implements LuckPermsPlugin {
     private ConsecutiveExecutor consecutiveExecutor;
     private DefaultsProvider defaultsProvider;
     private LocaleManager localeManager;
+    private ExpiryScheduler expiryScheduler;
+    private WorkerPool workerPool;
     private ContextManager<Player> contextManager;
     private WorldCalculator worldCalculator;
 
@@ -86,6 +91,8 @@ public class LPBukkitPlugin extends JavaPlugin implements LuckPermsPlugin {
 
         getLog().info("Loading configuration...");
         configuration = new BukkitConfig(this);
+        expiryScheduler = new ExpiryScheduler(this);
+        workerPool = new WorkerPool();
 
         localeManager = new LocaleManager();
         File locale = new File(getDataFolder(), "lang.yml");
@@ -133,11 +140,10 @@ public class LPBukkitPlugin extends JavaPlugin implements LuckPermsPlugin {
         int mins = getConfiguration().getSyncTime();
         if (mins > 0) {
             long ticks = mins * 60 * 20;
-            getServer().getScheduler().runTaskTimerAsynchronously(this, new UpdateTask(this), ticks, ticks);
+            getServer().getScheduler().runTaskTimerAsynchronously(this, new UpdateTask(this, true), ticks, ticks);
         }
 
         getServer().getScheduler().runTaskTimer(this, BukkitSenderFactory.get(this), 1L, 1L);
-        getServer().getScheduler().runTaskTimerAsynchronously(this, new ExpireTemporaryTask(this), 60L, 60L);
         getServer().getScheduler().runTaskTimerAsynchronously(this, consecutiveExecutor, 20L, 20L);
 
         // Provide vault support
@@ -180,6 +186,8 @@ public class LPBukkitPlugin extends JavaPlugin implements LuckPermsPlugin {
     public void onDisable() {
         getLog().info("Closing datastore...");
         datastore.shutdown();
+        expiryScheduler.shutdown();
+        workerPool.shutdown();
 
         getLog().info("Unregistering API...");
         LuckPerms.unregisterProvider();
@@ -220,6 +228,16 @@ public class LPBukkitPlugin extends JavaPlugin implements LuckPermsPlugin {
         return getServer().getPlayer(getUuidCache().getExternalUUID(uuid)) != null ? Message.PLAYER_ONLINE : Message.PLAYER_OFFLINE;
     }
 
+    @Override
+    public Map<String, String> getCacheInfo() {
+        if (vaultHook == null || !vaultHook.isHooked()) {
+            return Collections.emptyMap();
+        }
+
+        VaultUserManager vaultUsers = vaultHook.getPermissionHook().getVaultUserManager();
+        return Collections.singletonMap("Vault Context Caches", ContextualCache.describe(vaultUsers.getCachedContextCount(), vaultUsers.getCacheStats()));
+    }
+
     @Override
     public int getPlayerCount() {
         return getServer().getOnlinePlayers().size();
@@ -162,7 +162,7 @@ public class VaultPermissionHook extends Permission implements Runnable {
         }
         if (t instanceof Group) {
             plugin.getDatastore().saveGroup(((Group) t));
-            plugin.runUpdateTask();
+            plugin.doAsync(() -> plugin.getUserManager().refreshAllUsers());
         }
     }
 
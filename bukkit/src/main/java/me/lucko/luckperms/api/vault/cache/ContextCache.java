@@ -48,11 +48,8 @@ public class ContextCache {
     public ContextCache(User user, Map<String, String> context, LuckPermsPlugin plugin, DefaultsProvider defaultsProvider) {
         this.context = context;
 
-        List<PermissionProcessor> processors = new ArrayList<>(5);
-        processors.add(new MapProcessor(permissionCache));
-        if (plugin.getConfiguration().isApplyingWildcards()) {
-            processors.add(new WildcardProcessor(permissionCache));
-        }
+        List<PermissionProcessor> processors = new ArrayList<>(3);
+        processors.add(new TrieProcessor(permissionCache, plugin.getConfiguration().isApplyingWildcards()));
         if (plugin.getConfiguration().isApplyingRegex()) {
             processors.add(new RegexProcessor(permissionCache));
         }
@@ -27,13 +27,12 @@ import lombok.RequiredArgsConstructor;
 import me.lucko.luckperms.LPBukkitPlugin;
 import me.lucko.luckperms.api.Contexts;
 import me.lucko.luckperms.api.Node;
+import me.lucko.luckperms.api.context.ContextSet;
 import me.lucko.luckperms.api.vault.VaultPermissionHook;
+import me.lucko.luckperms.caching.ContextualCache;
 import me.lucko.luckperms.users.User;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
 public class VaultUser {
@@ -44,28 +43,23 @@ public class VaultUser {
     private final User user;
 
     @Getter
-    private final Map<Map<String, String>, ContextCache> contextData = new ConcurrentHashMap<>();
+    private final ContextualCache<ContextCache> contextData = new ContextualCache<>();
 
     @Getter
-    private final Map<Map<String, String>, ChatCache> chatData = new ConcurrentHashMap<>();
+    private final ContextualCache<ChatCache> chatData = new ContextualCache<>();
 
     public boolean hasPermission(Map<String, String> context, String permission) {
-        ContextCache cd = contextData.computeIfAbsent(context, map -> calculatePermissions(map, false));
+        // The cache has already been checked, so the loader fills new data without looking it up again
+        ContextCache cd = contextData.get(context, map -> fillPermissions(new ContextCache(user, map, plugin, plugin.getDefaultsProvider()), map));
         return cd.getPermissionValue(permission).asBoolean();
     }
 
     public ChatCache processChatData(Map<String, String> context) {
-        return chatData.computeIfAbsent(context, map -> calculateChat(map, false));
+        return chatData.get(context, map -> fillChat(new ChatCache(map), map));
     }
 
     public ContextCache calculatePermissions(Map<String, String> context, boolean apply) {
-        Map<String, Boolean> toApply = user.exportNodes(
-                new Contexts(context, vault.isIncludeGlobal(), true, true, true, true),
-                Collections.emptyList(),
-                true
-        );
-
-        ContextCache existing = contextData.get(context);
+        ContextCache existing = contextData.getIfPresent(context);
         if (existing == null) {
             existing = new ContextCache(user, context, plugin, plugin.getDefaultsProvider());
             if (apply) {
@@ -73,29 +67,24 @@ public class VaultUser {
             }
         }
 
-        boolean different = false;
-        if (toApply.size() != existing.getPermissionCache().size()) {
-            different = true;
-        } else {
-            for (Map.Entry<String, Boolean> e : existing.getPermissionCache().entrySet()) {
-                if (toApply.containsKey(e.getKey()) && toApply.get(e.getKey()) == e.getValue()) {
-                    continue;
-                }
-                different = true;
-                break;
-            }
-        }
+        return fillPermissions(existing, context);
+    }
 
-        if (!different) return existing;
+    private ContextCache fillPermissions(ContextCache existing, Map<String, String> context) {
+        Map<String, Boolean> toApply = user.getPermissionCache().getPermissions(
+                new Contexts(context, vault.isIncludeGlobal(), true, true, true, true)
+        );
+
+        if (toApply.equals(existing.getPermissionCache())) return existing;
 
         existing.getPermissionCache().clear();
-        existing.invalidateCache();
         existing.getPermissionCache().putAll(toApply);
+        existing.invalidateCache();
         return existing;
     }
 
     public ChatCache calculateChat(Map<String, String> context, boolean apply) {
-        ChatCache existing = chatData.get(context);
+        ChatCache existing = chatData.getIfPresent(context);
         if (existing == null) {
             existing = new ChatCache(context);
             if (apply) {
@@ -103,11 +92,13 @@ public class VaultUser {
             }
         }
 
-        Map<String, String> contexts = new HashMap<>(context);
-        String server = contexts.get("server");
-        String world = contexts.get("world");
-        contexts.remove("server");
-        contexts.remove("world");
+        return fillChat(existing, context);
+    }
+
+    private ChatCache fillChat(ChatCache existing, Map<String, String> context) {
+        ContextSet contexts = ContextSet.of(context);
+        String server = contexts.getServer();
+        String world = contexts.getWorld();
 
         existing.invalidateCache();
 
@@ -129,7 +120,7 @@ public class VaultUser {
                 continue;
             }
 
-            if (!n.shouldApplyWithContext(contexts, false)) {
+            if (!n.shouldApplyWithContext(contexts.getOther(), false)) {
                 continue;
             }
 
@@ -142,7 +133,7 @@ public class VaultUser {
         int prefixPriority = Integer.MIN_VALUE;
         int suffixPriority = Integer.MIN_VALUE;
 
-        for (Node n : user.getAllNodes(null, new Contexts(context, vault.isIncludeGlobal(), true, true, true, true))) {
+        for (Node n : user.getAllNodes(null, new Contexts(contexts, vault.isIncludeGlobal(), true, true, true, true))) {
             if (!n.getValue()) {
                 continue;
             }
@@ -159,7 +150,7 @@ public class VaultUser {
                 continue;
             }
 
-            if (!n.shouldApplyWithContext(contexts, false)) {
+            if (!n.shouldApplyWithContext(contexts.getOther(), false)) {
                 continue;
             }
 
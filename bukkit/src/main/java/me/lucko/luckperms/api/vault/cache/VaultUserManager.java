@@ -22,16 +22,14 @@
 
 package me.lucko.luckperms.api.vault.cache;
 
+import com.google.common.cache.CacheStats;
 import lombok.RequiredArgsConstructor;
 import me.lucko.luckperms.LPBukkitPlugin;
 import me.lucko.luckperms.api.vault.VaultPermissionHook;
 import me.lucko.luckperms.users.User;
-import org.bukkit.World;
+import org.bukkit.entity.Player;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
@@ -40,17 +38,31 @@ public class VaultUserManager {
     private final VaultPermissionHook vault;
     private final Map<UUID, VaultUser> userCache = new ConcurrentHashMap<>();
 
+    /**
+     * Calculates the data of a user in the server context and the world they're in, and recalculates the other
+     * contexts which are still cached. Data for other worlds is calculated when it is first looked up.
+     * @param user the user
+     */
     public void setupUser(User user) {
         VaultUser vaultUser = userCache.computeIfAbsent(user.getUuid(), uuid -> new VaultUser(plugin, vault, user));
-        vaultUser.calculatePermissions(Collections.singletonMap("server", vault.getServer()), true);
-        vaultUser.calculateChat(Collections.singletonMap("server", vault.getServer()), true);
-        for (World world : plugin.getServer().getWorlds()) {
+
+        Set<Map<String, String>> contexts = new HashSet<>();
+        contexts.add(Collections.singletonMap("server", vault.getServer()));
+
+        Player player = plugin.getServer().getPlayer(plugin.getUuidCache().getExternalUUID(user.getUuid()));
+        if (player != null) {
             Map<String, String> context = new HashMap<>();
             context.put("server", vault.getServer());
-            context.put("world", world.getName());
-            vaultUser.calculatePermissions(context, true);
-            vaultUser.calculateChat(context, true);
+            context.put("world", player.getWorld().getName());
+            contexts.add(context);
         }
+
+        Set<Map<String, String>> chatContexts = new HashSet<>(contexts);
+        contexts.addAll(vaultUser.getContextData().getContexts());
+        chatContexts.addAll(vaultUser.getChatData().getContexts());
+
+        contexts.forEach(context -> vaultUser.calculatePermissions(context, true));
+        chatContexts.forEach(context -> vaultUser.calculateChat(context, true));
     }
 
     public void clearUser(UUID uuid) {
@@ -65,4 +77,22 @@ public class VaultUserManager {
         return userCache.get(uuid);
     }
 
+    /**
+     * Gets the combined statistics of the permission and chat caches of every user
+     * @return the statistics
+     */
+    public CacheStats getCacheStats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (VaultUser user : userCache.values()) {
+            stats = stats.plus(user.getContextData().getStats()).plus(user.getChatData().getStats());
+        }
+        return stats;
+    }
+
+    public long getCachedContextCount() {
+        return userCache.values().stream()
+                .mapToLong(user -> user.getContextData().size() + user.getChatData().size())
+                .sum();
+    }
+
 }
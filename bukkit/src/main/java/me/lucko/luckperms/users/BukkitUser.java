@@ -32,8 +32,6 @@ import me.lucko.luckperms.inject.LPPermissible;
 import org.bukkit.entity.Player;
 import org.bukkit.permissions.Permissible;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -71,40 +69,25 @@ public class BukkitUser extends User {
         }
 
         // Calculate the permissions that should be applied. This is done async, who cares about how long it takes or how often it's done.
-        Map<String, Boolean> toApply = exportNodes(
+        Map<String, Boolean> toApply = getPermissionCache().getPermissions(
                 new Contexts(
-                        plugin.getContextManager().giveApplicableContext((Player) permissible.getParent(), new HashMap<>()),
+                        plugin.getContextManager().getApplicableContext((Player) permissible.getParent()),
                         plugin.getConfiguration().isIncludingGlobalPerms(),
                         plugin.getConfiguration().isIncludingGlobalWorldPerms(),
                         true,
                         plugin.getConfiguration().isApplyingGlobalGroups(),
                         plugin.getConfiguration().isApplyingGlobalWorldGroups()
-                ),
-                Collections.emptyList(),
-                true
+                )
         );
 
         try {
             Map<String, Boolean> existing = permissible.getLuckPermsPermissions();
 
-            boolean different = false;
-            if (toApply.size() != existing.size()) {
-                different = true;
-            } else {
-                for (Map.Entry<String, Boolean> e : existing.entrySet()) {
-                    if (toApply.containsKey(e.getKey()) && toApply.get(e.getKey()) == e.getValue()) {
-                        continue;
-                    }
-                    different = true;
-                    break;
-                }
-            }
-
-            if (!different) return;
+            if (toApply.equals(existing)) return;
 
             existing.clear();
-            permissible.invalidateCache();
             existing.putAll(toApply);
+            permissible.invalidateCache();
 
             if (plugin.getConfiguration().isAutoOp()) {
                 boolean op = false;
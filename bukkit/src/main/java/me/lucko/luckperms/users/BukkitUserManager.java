@@ -81,7 +81,7 @@ public class BukkitUserManager extends UserManager implements ContextListener<Pl
             Set<UUID> players = plugin.getServer().getOnlinePlayers().stream()
                     .map(p -> plugin.getUuidCache().getUUID(p.getUniqueId()))
                     .collect(Collectors.toSet());
-            plugin.doAsync(() -> players.forEach(u -> plugin.getDatastore().loadUser(u, "null")));
+            plugin.doAsync(() -> plugin.getDatastore().loadUsers(players));
         });
     }
 
@@ -38,11 +38,8 @@ public class BungeePlayerCache {
     private final Map<String, Boolean> permissions = new ConcurrentHashMap<>();
 
     public BungeePlayerCache(LuckPermsPlugin plugin, String name) {
-        List<PermissionProcessor> processors = new ArrayList<>(3);
-        processors.add(new MapProcessor(permissions));
-        if (plugin.getConfiguration().isApplyingWildcards()) {
-            processors.add(new WildcardProcessor(permissions));
-        }
+        List<PermissionProcessor> processors = new ArrayList<>(2);
+        processors.add(new TrieProcessor(permissions, plugin.getConfiguration().isApplyingWildcards()));
         if (plugin.getConfiguration().isApplyingRegex()) {
             processors.add(new RegexProcessor(permissions));
         }
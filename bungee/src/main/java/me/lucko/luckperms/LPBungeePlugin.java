@@ -35,10 +35,11 @@ import me.lucko.luckperms.constants.Permission;
 import me.lucko.luckperms.contexts.BackendServerCalculator;
 import me.lucko.luckperms.contexts.ContextManager;
 import me.lucko.luckperms.contexts.ServerCalculator;
+import me.lucko.luckperms.core.ExpiryScheduler;
 import me.lucko.luckperms.core.UuidCache;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.data.Importer;
 import me.lucko.luckperms.groups.GroupManager;
-import me.lucko.luckperms.runnables.ExpireTemporaryTask;
 import me.lucko.luckperms.runnables.UpdateTask;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.storage.StorageFactory;
@@ -70,6 +71,8 @@ public class LPBungeePlugin extends Plugin implements LuckPermsPlugin {
     private Importer importer;
     private ConsecutiveExecutor consecutiveExecutor;
     private LocaleManager localeManager;
+    private ExpiryScheduler expiryScheduler;
+    private WorkerPool workerPool;
     private ContextManager<ProxiedPlayer> contextManager;
 
     @Override
@@ -78,6 +81,8 @@ public class LPBungeePlugin extends Plugin implements LuckPermsPlugin {
 
         getLog().info("Loading configuration...");
         configuration = new BungeeConfig(this);
+        expiryScheduler = new ExpiryScheduler(this);
+        workerPool = new WorkerPool();
 
         localeManager = new LocaleManager();
         File locale = new File(getDataFolder(), "lang.yml");
@@ -120,12 +125,11 @@ public class LPBungeePlugin extends Plugin implements LuckPermsPlugin {
 
         int mins = getConfiguration().getSyncTime();
         if (mins > 0) {
-            getProxy().getScheduler().schedule(this, new UpdateTask(this), mins, mins, TimeUnit.MINUTES);
+            getProxy().getScheduler().schedule(this, new UpdateTask(this, true), mins, mins, TimeUnit.MINUTES);
         }
 
         // 20 times per second (once per "tick")
         getProxy().getScheduler().schedule(this, BungeeSenderFactory.get(this), 50L, 50L, TimeUnit.MILLISECONDS);
-        getProxy().getScheduler().schedule(this, new ExpireTemporaryTask(this), 3L, 3L, TimeUnit.SECONDS);
         getProxy().getScheduler().schedule(this, consecutiveExecutor, 1L, 1L, TimeUnit.SECONDS);
 
         getLog().info("Registering API...");
@@ -147,6 +151,8 @@ public class LPBungeePlugin extends Plugin implements LuckPermsPlugin {
     public void onDisable() {
         getLog().info("Closing datastore...");
         datastore.shutdown();
+        expiryScheduler.shutdown();
+        workerPool.shutdown();
 
         getLog().info("Unregistering API...");
         LuckPerms.unregisterProvider();
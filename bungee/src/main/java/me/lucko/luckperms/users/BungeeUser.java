@@ -29,8 +29,6 @@ import me.lucko.luckperms.api.event.events.UserPermissionRefreshEvent;
 import me.lucko.luckperms.api.implementation.internal.UserLink;
 import net.md_5.bungee.api.connection.ProxiedPlayer;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
@@ -60,39 +58,24 @@ public class BungeeUser extends User {
         }
 
         // Calculate the permissions that should be applied. This is done async.
-        Map<String, Boolean> toApply = exportNodes(
+        Map<String, Boolean> toApply = getPermissionCache().getPermissions(
                 new Contexts(
-                        plugin.getContextManager().giveApplicableContext(player, new HashMap<>()),
+                        plugin.getContextManager().getApplicableContext(player),
                         plugin.getConfiguration().isIncludingGlobalPerms(),
                         plugin.getConfiguration().isIncludingGlobalWorldPerms(),
                         true,
                         plugin.getConfiguration().isApplyingGlobalGroups(),
                         plugin.getConfiguration().isApplyingGlobalWorldGroups()
-                ),
-                Collections.emptyList(),
-                true
+                )
         );
 
         Map<String, Boolean> existing = playerCache.getPermissions();
 
-        boolean different = false;
-        if (toApply.size() != existing.size()) {
-            different = true;
-        } else {
-            for (Map.Entry<String, Boolean> e : existing.entrySet()) {
-                if (toApply.containsKey(e.getKey()) && toApply.get(e.getKey()) == e.getValue()) {
-                    continue;
-                }
-                different = true;
-                break;
-            }
-        }
-
-        if (!different) return;
+        if (toApply.equals(existing)) return;
 
         existing.clear();
-        playerCache.invalidateCache();
         existing.putAll(toApply);
+        playerCache.invalidateCache();
 
         plugin.getApiProvider().fireEventAsync(new UserPermissionRefreshEvent(new UserLink(this)));
     }
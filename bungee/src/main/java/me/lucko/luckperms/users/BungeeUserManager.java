@@ -28,6 +28,7 @@ import net.md_5.bungee.api.connection.ProxiedPlayer;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 public class BungeeUserManager extends UserManager implements ContextListener<ProxiedPlayer> {
     private final LPBungeePlugin plugin;
@@ -55,9 +56,10 @@ public class BungeeUserManager extends UserManager implements ContextListener<Pr
 
     @Override
     public void updateAllUsers() {
-        plugin.getProxy().getPlayers().stream()
+        plugin.getDatastore().loadUsers(plugin.getProxy().getPlayers().stream()
                 .map(p -> plugin.getUuidCache().getUUID(p.getUniqueId()))
-                .forEach(u -> plugin.getDatastore().loadUser(u, "null"));
+                .collect(Collectors.toSet())
+        );
     }
 
     @Override
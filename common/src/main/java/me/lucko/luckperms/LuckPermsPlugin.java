@@ -30,6 +30,8 @@ import me.lucko.luckperms.commands.Sender;
 import me.lucko.luckperms.config.LPConfiguration;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.contexts.ContextManager;
+import me.lucko.luckperms.core.ExpiryScheduler;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.core.UuidCache;
 import me.lucko.luckperms.data.Importer;
 import me.lucko.luckperms.groups.GroupManager;
@@ -39,7 +41,9 @@ import me.lucko.luckperms.users.UserManager;
 import me.lucko.luckperms.utils.LocaleManager;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -64,6 +68,8 @@ public interface LuckPermsPlugin {
     ConsecutiveExecutor getConsecutiveExecutor();
     LocaleManager getLocaleManager();
     ContextManager getContextManager();
+    ExpiryScheduler getExpiryScheduler();
+    WorkerPool getWorkerPool();
 
     /**
      * @return the version of the plugin
@@ -92,6 +98,14 @@ public interface LuckPermsPlugin {
      */
     Message getPlayerStatus(UUID uuid);
 
+    /**
+     * Gets details about the platforms per-context permission caches, shown by the info command
+     * @return the value of each detail, keyed by its name
+     */
+    default Map<String, String> getCacheInfo() {
+        return Collections.emptyMap();
+    }
+
     /**
      * Gets the number of users online on the platform
      * @return the number of users
@@ -136,6 +136,16 @@ public class DatastoreLink implements Datastore {
             master.getUniqueUsers(checkCallback(callback));
         }
 
+        @Override
+        public void getUsersWithPermission(@NonNull String permission, Callback<Set<UUID>> callback) {
+            master.getUsersWithPermission(permission, checkCallback(callback));
+        }
+
+        @Override
+        public void getGroupMembers(@NonNull String group, Callback<Set<UUID>> callback) {
+            master.getGroupMembers(checkName(group), checkCallback(callback));
+        }
+
         @Override
         public void createAndLoadGroup(@NonNull String name, Callback<Boolean> callback) {
             master.createAndLoadGroup(checkName(name), checkCallback(callback));
@@ -249,6 +259,16 @@ public class DatastoreLink implements Datastore {
             return master.getUniqueUsers();
         }
 
+        @Override
+        public Set<UUID> getUsersWithPermission(@NonNull String permission) {
+            return master.getUsersWithPermission(permission);
+        }
+
+        @Override
+        public Set<UUID> getGroupMembers(@NonNull String group) {
+            return master.getGroupMembers(checkName(group));
+        }
+
         @Override
         public boolean createAndLoadGroup(@NonNull String name) {
             return master.createAndLoadGroup(checkName(name));
@@ -378,6 +398,20 @@ public class DatastoreLink implements Datastore {
             return lpf;
         }
 
+        @Override
+        public java.util.concurrent.Future<Set<UUID>> getUsersWithPermission(@NonNull String permission) {
+            LPFuture<Set<UUID>> lpf = new LPFuture<>();
+            master.getUsersWithPermission(permission, lpf);
+            return lpf;
+        }
+
+        @Override
+        public java.util.concurrent.Future<Set<UUID>> getGroupMembers(@NonNull String group) {
+            LPFuture<Set<UUID>> lpf = new LPFuture<>();
+            master.getGroupMembers(checkName(group), lpf);
+            return lpf;
+        }
+
         @Override
         public java.util.concurrent.Future<Boolean> createAndLoadGroup(@NonNull String name) {
             LPFuture<Boolean> lpf = new LPFuture<>();
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import me.lucko.luckperms.api.context.ContextSet;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Holds a value for each context a user has been checked in, such as by Vault or the Sponge permission service.
+ *
+ * <p>At most {@link #MAX_CONTEXTS} contexts are kept, and contexts which haven't been checked for
+ * {@link #EXPIRE_AFTER_ACCESS} minutes are removed.</p>
+ *
+ * @param <V> the value type
+ */
+public class ContextualCache<V> {
+    private static final int MAX_CONTEXTS = 16;
+    private static final long EXPIRE_AFTER_ACCESS = 10L;
+
+    private final Cache<ContextSet, V> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CONTEXTS)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS, TimeUnit.MINUTES)
+            .recordStats()
+            .build();
+
+    /**
+     * Gets the value for a context, calculating it if it isn't cached
+     * @param context the context
+     * @param loader calculates the value from the context
+     * @return the value
+     */
+    public V get(ContextSet context, Function<Map<String, String>, V> loader) {
+        V value = cache.getIfPresent(context);
+        if (value == null) {
+            value = loader.apply(context.toMap());
+            cache.put(context, value);
+        }
+        return value;
+    }
+
+    public V get(Map<String, String> context, Function<Map<String, String>, V> loader) {
+        return get(ContextSet.of(context), loader);
+    }
+
+    public V getIfPresent(Map<String, String> context) {
+        return cache.getIfPresent(ContextSet.of(context));
+    }
+
+    public void put(Map<String, String> context, V value) {
+        cache.put(ContextSet.of(context), value);
+    }
+
+    /**
+     * Gets the contexts currently cached
+     * @return a copy of the cached contexts
+     */
+    public Set<Map<String, String>> getContexts() {
+        return cache.asMap().keySet().stream()
+                .map(ContextSet::toMap)
+                .collect(Collectors.toSet());
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Gets the hit, miss and eviction counts of this cache
+     * @return the statistics
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Describes the size and statistics of one or more caches, for the info command
+     * @param size the number of cached contexts
+     * @param stats the combined statistics
+     * @return a summary
+     */
+    public static String describe(long size, CacheStats stats) {
+        return String.format("%d contexts, %.1f%% hit rate, %d evictions", size, stats.hitRate() * 100.0, stats.evictionCount());
+    }
+}
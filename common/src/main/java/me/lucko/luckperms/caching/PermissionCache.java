@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.caching;
+
+import me.lucko.luckperms.api.Contexts;
+import me.lucko.luckperms.core.PermissionHolder;
+import me.lucko.luckperms.utils.VersionedCache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the effective permissions of a user or group in each of the contexts they have been calculated in, so that
+ * the platform permission handlers, Vault and Sponge subjects can share the same result.
+ *
+ * <p>Snapshots are immutable, and are recalculated once the holder, or any group they inherit, changes. Only the
+ * most recently used {@link #MAX_SNAPSHOTS} contexts are kept.</p>
+ */
+public class PermissionCache {
+    private static final int MAX_SNAPSHOTS = 16;
+
+    private final PermissionHolder holder;
+    private final Map<Contexts, VersionedCache<Map<String, Boolean>>> snapshots;
+
+    public PermissionCache(PermissionHolder holder) {
+        this.holder = holder;
+        this.snapshots = Collections.synchronizedMap(new LinkedHashMap<Contexts, VersionedCache<Map<String, Boolean>>>(MAX_SNAPSHOTS, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Contexts, VersionedCache<Map<String, Boolean>>> eldest) {
+                return size() > MAX_SNAPSHOTS;
+            }
+        });
+    }
+
+    /**
+     * Gets the effective permissions of the holder, recalculating them if they have changed since they were
+     * last calculated
+     * @param contexts the contexts to calculate permissions in
+     * @return an immutable map of lowercase permissions to their values. The same instance is returned until the
+     *         permissions are recalculated.
+     */
+    public Map<String, Boolean> getPermissions(Contexts contexts) {
+        return getSnapshot(contexts).getFresh();
+    }
+
+    /**
+     * Gets the cache holding the permissions of the holder in the given contexts. Callers which check permissions
+     * often can keep the cache, and read it directly, rather than looking it up each time.
+     * @param contexts the contexts to calculate permissions in
+     * @return the cache
+     */
+    public VersionedCache<Map<String, Boolean>> getSnapshot(Contexts contexts) {
+        VersionedCache<Map<String, Boolean>> snapshot = snapshots.get(contexts);
+        if (snapshot != null) {
+            return snapshot;
+        }
+
+        return snapshots.computeIfAbsent(contexts, c -> new VersionedCache<>(() ->
+                holder.exportNodes(c, Collections.emptyList(), true)
+        ));
+    }
+}
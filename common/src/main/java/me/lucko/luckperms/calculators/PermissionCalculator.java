@@ -42,12 +42,16 @@ public class PermissionCalculator {
     private final Map<String, Tristate> cache = new ConcurrentHashMap<>();
 
     public void invalidateCache() {
+        processors.forEach(PermissionProcessor::updateBacking);
         cache.clear();
     }
 
     public Tristate getPermissionValue(String permission) {
         permission = permission.toLowerCase();
-        Tristate t =  cache.computeIfAbsent(permission, this::lookupPermissionValue);
+        Tristate t = cache.get(permission);
+        if (t == null) {
+            t = cache.computeIfAbsent(permission, this::lookupPermissionValue);
+        }
 
         if (debug) {
             plugin.getLog().info("Checking if " + objectName + " has permission: " + permission + " - (" + t.toString() + ")");
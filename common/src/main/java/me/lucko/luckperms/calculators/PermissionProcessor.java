@@ -28,4 +28,11 @@ public interface PermissionProcessor {
 
     Tristate hasPermission(String permission);
 
+    /**
+     * Called after the backing data of this processor has been changed, and before the calculators cache is cleared.
+     */
+    default void updateBacking() {
+
+    }
+
 }
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.calculators;
+
+import me.lucko.luckperms.api.Tristate;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable trie of permission nodes, split into their dot separated segments.
+ *
+ * <p>Exact, wildcard (<code>a.b.*</code>, <code>'*'</code> and <code>*</code>) and negated nodes are all resolved in a
+ * single walk over the queried permission, without any substring or string concatenation.</p>
+ */
+public class PermissionTrie {
+    public static final PermissionTrie EMPTY = of(new HashMap<>());
+
+    /**
+     * Builds a new trie from a map of permissions
+     * @param map the permissions to include
+     * @return a new trie
+     */
+    public static PermissionTrie of(Map<String, Boolean> map) {
+        MutableNode root = new MutableNode();
+        Tristate rootWildcard = Tristate.UNDEFINED;
+
+        for (Map.Entry<String, Boolean> e : map.entrySet()) {
+            String permission = e.getKey();
+            Tristate value = Tristate.fromBoolean(e.getValue());
+
+            MutableNode node = root;
+            MutableNode parent = null;
+            int start = 0;
+            while (true) {
+                int end = permission.indexOf('.', start);
+                parent = node;
+                node = node.children.computeIfAbsent(end == -1 ? permission.substring(start) : permission.substring(start, end), s -> new MutableNode());
+
+                if (end == -1) {
+                    break;
+                }
+                start = end + 1;
+            }
+            node.value = value;
+
+            // Register "a.b.*" against the "a.b" node, unless the prefix is empty. (e.g. ".*" or "..*")
+            if (permission.endsWith(".*") && !isEmpty(permission, permission.length() - 2)) {
+                parent.wildcardValue = value;
+            }
+        }
+
+        if (map.containsKey("'*'")) {
+            rootWildcard = Tristate.fromBoolean(map.get("'*'"));
+        } else if (map.containsKey("*")) {
+            rootWildcard = Tristate.fromBoolean(map.get("*"));
+        }
+
+        return new PermissionTrie(root.freeze(), rootWildcard);
+    }
+
+    private static boolean isEmpty(String s, int length) {
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final Node root;
+    private final Tristate rootWildcard;
+
+    private PermissionTrie(Node root, Tristate rootWildcard) {
+        this.root = root;
+        this.rootWildcard = rootWildcard;
+    }
+
+    /**
+     * Looks up the value of a permission.
+     * Exact matches take priority over the most specific wildcard, which takes priority over <code>'*'</code> and <code>*</code>.
+     * @param permission the permission to look up
+     * @param applyWildcards if wildcard nodes should be considered
+     * @return the value of the permission, or {@link Tristate#UNDEFINED} if it is not set
+     */
+    public Tristate getValue(String permission, boolean applyWildcards) {
+        return lookup(permission, true, applyWildcards);
+    }
+
+    /**
+     * Looks up the value of a permission, only considering wildcard nodes.
+     * @param permission the permission to look up
+     * @return the value of the most specific matching wildcard, or {@link Tristate#UNDEFINED} if there is none
+     */
+    public Tristate getWildcardValue(String permission) {
+        return lookup(permission, false, true);
+    }
+
+    private Tristate lookup(String permission, boolean exact, boolean wildcards) {
+        Tristate wildcard = Tristate.UNDEFINED;
+        Node node = root;
+
+        int length = permission.length();
+        int start = 0;
+        while (node != null) {
+            int end = permission.indexOf('.', start);
+            if (end == -1) {
+                node = node.getChild(permission, start, length);
+                if (exact && node != null && node.value != Tristate.UNDEFINED) {
+                    return node.value;
+                }
+                break;
+            }
+
+            node = node.getChild(permission, start, end);
+            if (wildcards && node != null && node.wildcardValue != Tristate.UNDEFINED) {
+                // Deeper wildcards override shallower ones
+                wildcard = node.wildcardValue;
+            }
+            start = end + 1;
+        }
+
+        if (!wildcards) {
+            return Tristate.UNDEFINED;
+        }
+
+        return wildcard != Tristate.UNDEFINED ? wildcard : rootWildcard;
+    }
+
+    private static final class MutableNode {
+        private final Map<String, MutableNode> children = new HashMap<>();
+        private Tristate value = Tristate.UNDEFINED;
+        private Tristate wildcardValue = Tristate.UNDEFINED;
+
+        private Node freeze() {
+            if (children.isEmpty()) {
+                return new Node(null, null, null, value, wildcardValue);
+            }
+
+            // Open addressing table, kept at most half full
+            int capacity = Integer.highestOneBit(children.size() * 2 - 1) << 1;
+            String[] keys = new String[capacity];
+            int[] hashes = new int[capacity];
+            Node[] nodes = new Node[capacity];
+
+            for (Map.Entry<String, MutableNode> e : children.entrySet()) {
+                int hash = e.getKey().hashCode();
+                int i = spread(hash) & (capacity - 1);
+                while (keys[i] != null) {
+                    i = (i + 1) & (capacity - 1);
+                }
+
+                keys[i] = e.getKey();
+                hashes[i] = hash;
+                nodes[i] = e.getValue().freeze();
+            }
+
+            return new Node(keys, hashes, nodes, value, wildcardValue);
+        }
+    }
+
+    private static final class Node {
+        private final String[] keys;
+        private final int[] hashes;
+        private final Node[] children;
+        private final Tristate value;
+        private final Tristate wildcardValue;
+
+        private Node(String[] keys, int[] hashes, Node[] children, Tristate value, Tristate wildcardValue) {
+            this.keys = keys;
+            this.hashes = hashes;
+            this.children = children;
+            this.value = value;
+            this.wildcardValue = wildcardValue;
+        }
+
+        /**
+         * Gets the child node for the segment between start and end, without creating a substring
+         */
+        private Node getChild(String s, int start, int end) {
+            if (keys == null) {
+                return null;
+            }
+
+            // Same as String#hashCode, but only over the given region
+            int hash = 0;
+            for (int i = start; i < end; i++) {
+                hash = 31 * hash + s.charAt(i);
+            }
+
+            int len = end - start;
+            int mask = keys.length - 1;
+            for (int i = spread(hash) & mask; keys[i] != null; i = (i + 1) & mask) {
+                if (hashes[i] == hash && keys[i].length() == len && s.regionMatches(start, keys[i], 0, len)) {
+                    return children[i];
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
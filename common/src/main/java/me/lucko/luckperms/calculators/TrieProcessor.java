@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.calculators;
+
+import lombok.Getter;
+import me.lucko.luckperms.api.Tristate;
+
+import java.util.Map;
+
+/**
+ * Resolves exact and wildcard permissions from a single {@link PermissionTrie} walk.
+ * The trie is rebuilt from the backing map each time {@link #updateBacking()} is called.
+ */
+public class TrieProcessor implements PermissionProcessor {
+
+    @Getter
+    private final Map<String, Boolean> map;
+
+    private final boolean applyWildcards;
+
+    private volatile PermissionTrie trie;
+
+    public TrieProcessor(Map<String, Boolean> map, boolean applyWildcards) {
+        this.map = map;
+        this.applyWildcards = applyWildcards;
+        this.trie = PermissionTrie.of(map);
+    }
+
+    @Override
+    public Tristate hasPermission(String permission) {
+        return trie.getValue(permission, applyWildcards);
+    }
+
+    @Override
+    public void updateBacking() {
+        trie = PermissionTrie.of(map);
+    }
+}
@@ -22,59 +22,30 @@
 
 package me.lucko.luckperms.calculators;
 
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 import me.lucko.luckperms.api.Tristate;
 
 import java.util.Map;
 
-@AllArgsConstructor
 public class WildcardProcessor implements PermissionProcessor {
 
     @Getter
     private final Map<String, Boolean> map;
 
-    @Override
-    public Tristate hasPermission(String permission) {
-        String node = permission;
-
-        while (node.contains(".")) {
-            int endIndex = node.lastIndexOf('.');
-            if (endIndex == -1) {
-                break;
-            }
-
-            node = node.substring(0, endIndex);
-            if (!isEmpty(node)) {
-                if (map.containsKey(node + ".*")) {
-                    return Tristate.fromBoolean(map.get(node + ".*"));
-                }
-            }
-        }
-
-        if (map.containsKey("'*'")) {
-            return Tristate.fromBoolean(map.get("'*'"));
-        }
-
-        if (map.containsKey("*")) {
-            return Tristate.fromBoolean(map.get("*"));
-        }
+    private volatile PermissionTrie trie;
 
-        return Tristate.UNDEFINED;
+    public WildcardProcessor(Map<String, Boolean> map) {
+        this.map = map;
+        this.trie = PermissionTrie.of(map);
     }
 
-    private static boolean isEmpty(String s) {
-        if (s.equals("")) {
-            return true;
-        }
-
-        char[] chars = s.toCharArray();
-        for (char c : chars) {
-            if (c != '.') {
-                return false;
-            }
-        }
+    @Override
+    public Tristate hasPermission(String permission) {
+        return trie.getWildcardValue(permission);
+    }
 
-        return true;
+    @Override
+    public void updateBacking() {
+        trie = PermissionTrie.of(map);
     }
 }
@@ -178,7 +178,7 @@ public abstract class SubCommand<T> {
             Message.GROUP_SAVE_ERROR.send(sender);
         }
 
-        plugin.runUpdateTask();
+        plugin.doAsync(() -> plugin.getUserManager().refreshAllUsers());
     }
 
     protected static void save(Track track, Sender sender, LuckPermsPlugin plugin) {
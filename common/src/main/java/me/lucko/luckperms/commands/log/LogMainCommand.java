@@ -30,6 +30,7 @@ import me.lucko.luckperms.commands.SubCommand;
 import me.lucko.luckperms.commands.log.subcommands.*;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.StoredLog;
 
 import java.util.Collections;
 import java.util.List;
@@ -52,10 +53,12 @@ public class LogMainCommand extends MainCommand<Log> {
 
     @Override
     protected Log getTarget(String target, LuckPermsPlugin plugin, Sender sender) {
-        Log log = plugin.getDatastore().getLog();
+        // Entries are read from the datastore as each page is shown, rather than loading the whole log
+        StoredLog log = new StoredLog(plugin.getDatastore());
 
-        if (log == null) {
+        if (!log.isReadable()) {
             Message.LOG_LOAD_ERROR.send(sender);
+            return null;
         }
 
         return log;
@@ -31,6 +31,7 @@ import me.lucko.luckperms.commands.SingleMainCommand;
 import me.lucko.luckperms.constants.Constants;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.constants.Permission;
+import me.lucko.luckperms.data.DataExporter;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.tracks.Track;
@@ -78,6 +79,16 @@ public class ExportCommand extends SingleMainCommand {
             return CommandResult.FAILURE;
         }
 
+        if (DataExporter.isDataFile(f)) {
+            if (!new DataExporter(plugin).export(f)) {
+                Message.LOG_EXPORT_FAILURE.send(sender);
+                return CommandResult.FAILURE;
+            }
+
+            Message.LOG_EXPORT_SUCCESS.send(sender, f.getAbsolutePath());
+            return CommandResult.SUCCESS;
+        }
+
         try (FileWriter fWriter = new FileWriter(f, true); BufferedWriter writer = new BufferedWriter(fWriter)) {
             log.info("Export: Starting export process.");
 
@@ -28,6 +28,8 @@ import me.lucko.luckperms.commands.Sender;
 import me.lucko.luckperms.commands.SingleMainCommand;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.constants.Permission;
+import me.lucko.luckperms.data.DataExporter;
+import me.lucko.luckperms.data.DataImporter;
 import me.lucko.luckperms.data.Importer;
 
 import java.io.File;
@@ -61,6 +63,23 @@ public class ImportCommand extends SingleMainCommand {
             return CommandResult.FAILURE;
         }
 
+        if (DataExporter.isDataFile(f)) {
+            if (!importer.startRun()) {
+                Message.IMPORT_ALREADY_RUNNING.send(sender);
+                return CommandResult.STATE_ERROR;
+            }
+
+            // Data files are read straight into the datastore, rather than being run as commands
+            plugin.doAsync(() -> {
+                try {
+                    new DataImporter(plugin, sender).run(f);
+                } finally {
+                    importer.endRun();
+                }
+            });
+            return CommandResult.SUCCESS;
+        }
+
         List<String> commands;
 
         try {
@@ -31,6 +31,7 @@ import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.constants.Permission;
 
 import java.util.List;
+import java.util.Map;
 
 import static me.lucko.luckperms.commands.Util.formatBoolean;
 
@@ -58,6 +59,13 @@ public class InfoCommand extends SingleMainCommand {
                 formatBoolean(c.isApplyingShorthand())
         );
 
+        for (Map.Entry<String, String> e : plugin.getDatastore().getMeta().entrySet()) {
+            Message.INFO_STORAGE_META.send(sender, e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : plugin.getCacheInfo().entrySet()) {
+            Message.INFO_STORAGE_META.send(sender, e.getKey(), e.getValue());
+        }
+
         return CommandResult.SUCCESS;
     }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.commands.usersbulkedit;
+
+import com.google.common.collect.Iterables;
+import lombok.Getter;
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.Node;
+import me.lucko.luckperms.commands.Sender;
+import me.lucko.luckperms.constants.Message;
+import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
+import me.lucko.luckperms.exceptions.ObjectLacksException;
+import me.lucko.luckperms.storage.Datastore;
+import me.lucko.luckperms.users.User;
+import me.lucko.luckperms.users.UserIdentifier;
+import me.lucko.luckperms.users.UserManager;
+
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Applies a change to the nodes of many stored users.
+ *
+ * Users are loaded a page at a time and transformed on a bounded pool of workers. Changed users in each page are
+ * saved in one batch, and users who were not already loaded are unloaded again once their page is done.
+ */
+public class BulkUserEditor {
+    private static final int PAGE_SIZE = 500;
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private final LuckPermsPlugin plugin;
+    private final Sender sender;
+    private final BiFunction<User, Node, Node> transformer;
+    private final int inFlightPages;
+
+    @Getter
+    private final AtomicInteger processed = new AtomicInteger(0);
+
+    @Getter
+    private final AtomicInteger changed = new AtomicInteger(0);
+
+    @Getter
+    private final AtomicInteger failed = new AtomicInteger(0);
+
+    private final AtomicLong lastProgress = new AtomicLong(0L);
+    private long startTime;
+
+    /**
+     * @param plugin the plugin instance
+     * @param sender the sender to report progress to
+     * @param transformer gets the replacement for one of a users nodes, or null to leave the node unchanged
+     */
+    public BulkUserEditor(LuckPermsPlugin plugin, Sender sender, BiFunction<User, Node, Node> transformer) {
+        this.plugin = plugin;
+        this.sender = sender;
+        this.transformer = transformer;
+        this.inFlightPages = plugin.getWorkerPool().getSize() * 2;
+    }
+
+    /**
+     * Runs the edit, blocking until every page has been processed
+     * @param users the users to edit, or null to edit every unique user
+     * @return true if every page of users could be read
+     */
+    public boolean run(Set<UUID> users) {
+        startTime = System.currentTimeMillis();
+        lastProgress.set(startTime);
+
+        // Limits the number of pages queued or in progress, so the source is never read far ahead of the workers
+        Semaphore inFlight = new Semaphore(inFlightPages);
+
+        boolean success = true;
+        try {
+            if (users == null) {
+                success = plugin.getDatastore().forEachUniqueUserPage(PAGE_SIZE, page -> submit(inFlight, page));
+            } else {
+                for (List<UUID> page : Iterables.partition(users, PAGE_SIZE)) {
+                    if (!submit(inFlight, new ArrayList<>(page))) {
+                        success = false;
+                        break;
+                    }
+                }
+            }
+        } finally {
+            // Every permit is returned once the submitted pages have been processed
+            try {
+                inFlight.acquire(inFlightPages);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                success = false;
+            }
+        }
+
+        return success;
+    }
+
+    private boolean submit(Semaphore inFlight, List<UUID> page) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try {
+            plugin.getWorkerPool().execute(() -> {
+                try {
+                    processPage(page);
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The plugin is shutting down
+            inFlight.release();
+            return false;
+        }
+        return true;
+    }
+
+    private void processPage(List<UUID> page) {
+        Datastore datastore = plugin.getDatastore();
+        UserManager userManager = plugin.getUserManager();
+
+        Set<UUID> alreadyLoaded = new HashSet<>();
+        for (UUID uuid : page) {
+            if (userManager.isLoaded(UserIdentifier.of(uuid, null))) {
+                alreadyLoaded.add(uuid);
+            }
+        }
+
+        try {
+            if (!datastore.loadUsers(page)) {
+                // Saving users which didn't load properly could overwrite their stored data
+                failed.addAndGet(page.size());
+                return;
+            }
+
+            List<User> toSave = new ArrayList<>();
+            for (UUID uuid : page) {
+                User user = userManager.get(uuid);
+                if (user != null && apply(user)) {
+                    toSave.add(user);
+                }
+            }
+
+            if (!toSave.isEmpty()) {
+                if (datastore.saveUsers(toSave)) {
+                    changed.addAndGet(toSave.size());
+                } else {
+                    failed.addAndGet(toSave.size());
+                }
+            }
+        } finally {
+            for (UUID uuid : page) {
+                if (alreadyLoaded.contains(uuid)) {
+                    continue;
+                }
+
+                User user = userManager.get(uuid);
+                if (user != null) {
+                    userManager.cleanup(user);
+                }
+            }
+
+            processed.addAndGet(page.size());
+            reportProgress();
+        }
+    }
+
+    /**
+     * Applies the transformer to each of the users nodes
+     * @return true if any node was changed
+     */
+    private boolean apply(User user) {
+        Map<Node, Node> replacements = new HashMap<>();
+        for (Node node : user.getNodes()) {
+            Node replacement = transformer.apply(user, node);
+            if (replacement != null && !replacement.equals(node)) {
+                replacements.put(node, replacement);
+            }
+        }
+
+        if (replacements.isEmpty()) {
+            return false;
+        }
+
+        replacements.keySet().forEach(n -> {
+            try {
+                user.unsetPermission(n);
+            } catch (ObjectLacksException ignored) {}
+        });
+
+        replacements.values().forEach(n -> {
+            try {
+                user.setPermission(n);
+            } catch (ObjectAlreadyHasException ignored) {}
+        });
+
+        return true;
+    }
+
+    private void reportProgress() {
+        long now = System.currentTimeMillis();
+        long last = lastProgress.get();
+        if (now - last < PROGRESS_INTERVAL || !lastProgress.compareAndSet(last, now)) {
+            return;
+        }
+
+        int count = processed.get();
+        long rate = count * 1000L / Math.max(1L, now - startTime);
+        Message.BULK_CHANGE_PROGRESS.send(sender, count, changed.get(), rate);
+    }
+}
@@ -23,16 +23,15 @@
 package me.lucko.luckperms.commands.usersbulkedit.subcommands;
 
 import me.lucko.luckperms.LuckPermsPlugin;
-import me.lucko.luckperms.api.Node;
 import me.lucko.luckperms.commands.*;
+import me.lucko.luckperms.commands.usersbulkedit.BulkUserEditor;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.constants.Permission;
-import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
-import me.lucko.luckperms.exceptions.ObjectLacksException;
 import me.lucko.luckperms.storage.Datastore;
-import me.lucko.luckperms.users.User;
 
-import java.util.*;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 public class BulkEditPermission extends SubCommand<Datastore> {
     public BulkEditPermission() {
@@ -61,77 +60,52 @@ public class BulkEditPermission extends SubCommand<Datastore> {
             return CommandResult.FAILURE;
         }
 
-        Set<UUID> uuids = datastore.getUniqueUsers();
-
-        for (UUID u : uuids) {
-            plugin.getDatastore().loadUser(u, "null");
-            User user = plugin.getUserManager().get(u);
-            if (user == null) {
-                continue;
+        // When a single node is being edited, only the users holding it need to be loaded
+        Set<UUID> uuids = null;
+        if (!node.equals("null")) {
+            uuids = datastore.getUsersWithPermission(node);
+            if (uuids == null) {
+                Message.LOADING_ERROR.send(sender);
+                return CommandResult.FAILURE;
             }
+        }
 
-            Set<Node> toAdd = new HashSet<>();
-            Set<Node> toRemove = new HashSet<>();
-            Iterator<Node> iterator = user.getNodes().iterator();
-            if (type.equals("world")) {
-                while (iterator.hasNext()) {
-                    Node element = iterator.next();
-
-                    if (element.isGroupNode()) {
-                        continue;
-                    }
-
-                    if (!node.equals("null") && !element.getPermission().equals(node)) {
-                        continue;
-                    }
+        final String finalTo = to;
+        BulkUserEditor editor = new BulkUserEditor(plugin, sender, (user, element) -> {
+            if (element.isGroupNode()) {
+                return null;
+            }
 
-                    String world = element.getWorld().orElse("null");
-                    if (!world.equals(from)) {
-                        continue;
-                    }
+            if (!node.equals("null") && !element.getPermission().equals(node)) {
+                return null;
+            }
 
-                    toRemove.add(element);
-                    toAdd.add(me.lucko.luckperms.core.Node.builderFromExisting(element).setWorld(to).build());
+            if (type.equals("world")) {
+                String world = element.getWorld().orElse("null");
+                if (!world.equals(from)) {
+                    return null;
                 }
-            } else {
-                while (iterator.hasNext()) {
-                    Node element = iterator.next();
-
-                    if (element.isGroupNode()) {
-                        continue;
-                    }
-
-                    if (!node.equals("null") && !element.getPermission().equals(node)) {
-                        continue;
-                    }
-
-                    String server = element.getServer().orElse("global");
-                    if (!server.equals(from)) {
-                        continue;
-                    }
 
-                    toRemove.add(element);
-                    toAdd.add(me.lucko.luckperms.core.Node.builderFromExisting(element).setServer(to).build());
+                return me.lucko.luckperms.core.Node.builderFromExisting(element).setWorld(finalTo).build();
+            } else {
+                String server = element.getServer().orElse("global");
+                if (!server.equals(from)) {
+                    return null;
                 }
-            }
 
-            toRemove.forEach(n -> {
-                try {
-                    user.unsetPermission(n);
-                } catch (ObjectLacksException ignored) {}
-            });
+                return me.lucko.luckperms.core.Node.builderFromExisting(element).setServer(finalTo).build();
+            }
+        });
 
-            toAdd.forEach(n -> {
-                try {
-                    user.setPermission(n);
-                } catch (ObjectAlreadyHasException ignored) {}
-            });
+        if (!editor.run(uuids)) {
+            Message.LOADING_ERROR.send(sender);
+        }
 
-            plugin.getUserManager().cleanup(user);
-            plugin.getDatastore().saveUser(user);
+        if (editor.getFailed().get() != 0) {
+            Message.BULK_CHANGE_ERRORS.send(sender, editor.getFailed().get());
         }
 
-        Message.BULK_CHANGE_SUCCESS.send(sender, uuids.size());
+        Message.BULK_CHANGE_SUCCESS.send(sender, editor.getChanged().get());
         return CommandResult.SUCCESS;
     }
 }
@@ -45,6 +45,7 @@ public abstract class AbstractConfiguration<T extends LuckPermsPlugin> implement
     // Values
     private String server;
     private int syncTime;
+    private int saveDelay;
     private String defaultGroupNode;
     private String defaultGroupName;
     private boolean includingGlobalPerms;
@@ -85,6 +86,7 @@ public abstract class AbstractConfiguration<T extends LuckPermsPlugin> implement
     public void load(String defaultServerName, boolean defaultIncludeGlobal, String defaultStorage) {
         server = getString("server", defaultServerName);
         syncTime = getInt("data.sync-minutes", 3);
+        saveDelay = getInt("data.save-delay-ms", 0);
         defaultGroupNode = "group.default"; // constant since 2.6
         defaultGroupName = "default"; // constant since 2.6
         includingGlobalPerms = getBoolean("include-global", defaultIncludeGlobal);
@@ -109,7 +111,8 @@ public abstract class AbstractConfiguration<T extends LuckPermsPlugin> implement
                 getString("data.address", null),
                 getString("data.database", null),
                 getString("data.username", null),
-                getString("data.password", null)
+                getString("data.password", null),
+                getInt("data.pool-size", 10)
         );
         storageMethod = getString("storage-method", defaultStorage);
         splitStorage = getBoolean("split-storage.enabled", false);
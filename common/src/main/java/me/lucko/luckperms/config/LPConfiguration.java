@@ -32,6 +32,11 @@ public interface LPConfiguration {
 
     int getSyncTime();
 
+    /**
+     * @return the number of milliseconds user and group saves are delayed by, so they can be combined
+     */
+    int getSaveDelay();
+
     /**
      * As of 2.6, this value is a constant
      * @return the default group node
@@ -135,6 +135,7 @@ public enum Message {
             "{PREFIX}&f-> &3Apply Shorthand: &f{12}",
             false
     ),
+    INFO_STORAGE_META("&f-> &3{0}: &f{1}", true),
     DEBUG(
             "{PREFIX}&d&l> &dDebug Info" + "\n" +
             "{PREFIX}&f> &3Online Players: &f{0}" + "\n" +
@@ -220,6 +221,8 @@ public enum Message {
 
     BULK_CHANGE_TYPE_ERROR("Invalid type. Was expecting 'server' or 'world'.", true),
     BULK_CHANGE_SUCCESS("&aApplied bulk change successfully. {0} records were changed.", true),
+    BULK_CHANGE_PROGRESS("&bBulk change: &a{0}&b users processed, &a{1}&b changed. &7({2} users/s)", true),
+    BULK_CHANGE_ERRORS("&c{0} users could not be loaded or saved, and were not changed.", true),
 
     USER_INFO(
             "{PREFIX}&b-> &bUser: &f{0}" + "\n" +
@@ -351,6 +354,8 @@ public enum Message {
 
     IMPORT_END_ERROR_CONTENT("&b(Import) &b-> &c{0}", true),
     IMPORT_END_ERROR_FOOTER("&b(Import) &7<------------------------------------------>", true),
+    IMPORT_DATA_PROGRESS("&b(Import) &b-> &b{0} &frecords imported with &c{1} &ferrors.", true),
+    IMPORT_DATA_END("&b(Import) &a&lCOMPLETED &7- took &b{0} &7seconds - &b{1} &7records imported, &c{2} &7errors.", true),
 
     MIGRATION_NOT_CONSOLE("Migration must be performed from the Console.", true);
 
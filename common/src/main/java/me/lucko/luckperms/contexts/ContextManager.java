@@ -23,8 +23,10 @@
 package me.lucko.luckperms.contexts;
 
 import me.lucko.luckperms.api.context.ContextListener;
+import me.lucko.luckperms.api.context.ContextSet;
 import me.lucko.luckperms.api.context.IContextCalculator;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -54,6 +56,15 @@ public class ContextManager<T> {
         return accumulator;
     }
 
+    /**
+     * Calculates the contexts which currently apply to a subject
+     * @param subject the subject
+     * @return the applicable contexts
+     */
+    public ContextSet getApplicableContext(T subject) {
+        return ContextSet.of(giveApplicableContext(subject, new HashMap<>()));
+    }
+
     public boolean isContextApplicable(T subject, Map.Entry<String, String> context) {
         for (IContextCalculator<T> calculator : calculators) {
             if (calculator.isContextApplicable(subject, context)) {
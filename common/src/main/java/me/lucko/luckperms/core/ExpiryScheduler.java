@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.core;
+
+import lombok.AllArgsConstructor;
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.groups.Group;
+import me.lucko.luckperms.users.User;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes temporary nodes as they expire.
+ *
+ * <p>Each holder is queued once, at the time its next temporary node expires. When that time comes, the holders
+ * expired nodes are removed, and only the holder and the users which inherit from it are refreshed.</p>
+ */
+public class ExpiryScheduler {
+    private final LuckPermsPlugin plugin;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * The queued holders, ordered by the time they're next due
+     */
+    private final NavigableSet<Entry> queue = new TreeSet<>();
+    private final Map<PermissionHolder, Entry> entries = new IdentityHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(0L);
+
+    private ScheduledFuture<?> wakeup = null;
+    private long wakeupAt = Long.MAX_VALUE;
+    private boolean closed = false;
+
+    public ExpiryScheduler(LuckPermsPlugin plugin) {
+        this.plugin = plugin;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "luckperms-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues a holder to be audited once a node expires. If the holder is already queued for an earlier time,
+     * this does nothing.
+     * @param holder the holder
+     * @param expireAt the unix time the node expires at
+     */
+    public synchronized void schedule(PermissionHolder holder, long expireAt) {
+        if (closed) {
+            return;
+        }
+
+        Entry existing = entries.get(holder);
+        if (existing != null) {
+            if (existing.expireAt <= expireAt) {
+                return;
+            }
+            queue.remove(existing);
+        }
+
+        Entry entry = new Entry(expireAt, sequence.incrementAndGet(), holder);
+        entries.put(holder, entry);
+        queue.add(entry);
+        wakeUpBy(expireAt);
+    }
+
+    /**
+     * Removes a holder from the queue, such as when it is unloaded
+     * @param holder the holder
+     */
+    public synchronized void cancel(PermissionHolder holder) {
+        Entry entry = entries.remove(holder);
+        if (entry != null) {
+            queue.remove(entry);
+        }
+    }
+
+    /**
+     * Gets the number of holders waiting for a node to expire
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    public synchronized void shutdown() {
+        closed = true;
+        queue.clear();
+        entries.clear();
+        executor.shutdownNow();
+    }
+
+    private void wakeUpBy(long expireAt) {
+        if (expireAt >= wakeupAt) {
+            return;
+        }
+
+        if (wakeup != null) {
+            wakeup.cancel(false);
+        }
+
+        // Nodes expire once the current time passes their expiry time.
+        long delay = Math.max(0L, (expireAt + 1L) * 1000L - System.currentTimeMillis());
+        wakeupAt = expireAt;
+        wakeup = executor.schedule(this::run, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        List<PermissionHolder> due = new ArrayList<>();
+        synchronized (this) {
+            wakeup = null;
+            wakeupAt = Long.MAX_VALUE;
+
+            long now = System.currentTimeMillis() / 1000L;
+            while (!queue.isEmpty() && queue.first().expireAt < now) {
+                Entry entry = queue.pollFirst();
+                entries.remove(entry.holder);
+                due.add(entry.holder);
+            }
+
+            if (!queue.isEmpty()) {
+                wakeUpBy(queue.first().expireAt);
+            }
+        }
+
+        for (PermissionHolder holder : due) {
+            try {
+                expire(holder);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void expire(PermissionHolder holder) {
+        boolean changed = holder.auditTemporaryPermissions();
+
+        // The expired node may have been replaced or removed since the holder was queued, so queue it again for
+        // whichever node is next to expire.
+        holder.scheduleExpiry();
+        if (!changed) {
+            return;
+        }
+
+        if (holder instanceof User) {
+            ((User) holder).refreshPermissions();
+        } else if (holder instanceof Group) {
+            plugin.getUserManager().getAll().values().stream()
+                    .filter(user -> user.dependsOn(holder))
+                    .forEach(User::refreshPermissions);
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Entry implements Comparable<Entry> {
+        private final long expireAt;
+        private final long sequence;
+        private final PermissionHolder holder;
+
+        @Override
+        public int compareTo(Entry o) {
+            int i = Long.compare(expireAt, o.expireAt);
+            return i != 0 ? i : Long.compare(sequence, o.sequence);
+        }
+    }
+}
@@ -24,48 +24,74 @@ package me.lucko.luckperms.core;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import lombok.*;
 import me.lucko.luckperms.api.Tristate;
 import me.lucko.luckperms.constants.Patterns;
 import me.lucko.luckperms.utils.ArgumentChecker;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 /**
  * An immutable permission node
+ *
+ * Instances built through {@link Builder} are interned, so identical nodes held by different users and groups share
+ * a single instance.
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
-@ToString(exclude = {"isPrefix", "isSuffix", "isMeta"})
-@EqualsAndHashCode(exclude = {"isPrefix", "isSuffix", "isMeta"})
+@ToString(of = {"permission", "value", "override", "server", "world", "expireAt", "extraContexts"})
+@EqualsAndHashCode(of = {"permission", "value", "override", "server", "world", "expireAt", "extraContexts"})
 public class Node implements me.lucko.luckperms.api.Node {
     private static final Pattern PREFIX_PATTERN = Pattern.compile("(?i)prefix\\.-?\\d+\\..*");
     private static final Pattern SUFFIX_PATTERN = Pattern.compile("(?i)suffix\\.-?\\d+\\..*");
     private static final Pattern META_PATTERN = Pattern.compile("meta\\..*\\..*");
 
+    private static final Interner<Node> NODE_INTERNER = Interners.newWeakInterner();
+    private static final Interner<String> STRING_INTERNER = Interners.newWeakInterner();
+
+    /**
+     * Interns a node, returning the shared instance equal to it
+     * @param node the node to intern
+     * @return the interned node
+     */
+    public static Node intern(Node node) {
+        return NODE_INTERNER.intern(node);
+    }
+
+    private static String internString(String s) {
+        return s == null ? null : STRING_INTERNER.intern(s);
+    }
+
     @Getter
     private final String permission;
 
     @Getter
-    private Boolean value;
+    private final Boolean value;
 
     @Getter
-    private boolean override;
+    private final boolean override;
 
-    private String server = null;
-    private String world = null;
+    private final String server;
+    private final String world;
 
-    private long expireAt = 0L;
+    private final long expireAt;
 
-    private final Map<String, String> extraContexts;
+    private final ImmutableMap<String, String> extraContexts;
 
     // Cache the state
-    private Tristate isPrefix = Tristate.UNDEFINED;
-    private Tristate isSuffix = Tristate.UNDEFINED;
-    private Tristate isMeta = Tristate.UNDEFINED;
+    private final String groupName;
+    private final boolean isWildcard;
+    private final boolean isPrefix;
+    private final boolean isSuffix;
+    private final boolean isMeta;
+
+    // Cache the identity keys
+    private Identity identity = null;
+    private Identity identityIgnoringTemp = null;
 
     /**
      * Make an immutable node instance
@@ -93,18 +119,28 @@ public class Node implements me.lucko.luckperms.api.Node {
             server = "global";
         }
 
-        this.permission = permission;
+        this.permission = internString(permission);
         this.value = value;
         this.override = override;
         this.expireAt = expireAt;
-        this.server = server;
-        this.world = world;
+        this.server = internString(server);
+        this.world = internString(world);
 
-        ImmutableMap.Builder<String, String> contexts = ImmutableMap.builder();
-        if (extraContexts != null) {
-            contexts.putAll(extraContexts);
+        if (extraContexts == null || extraContexts.isEmpty()) {
+            this.extraContexts = ImmutableMap.of();
+        } else {
+            ImmutableMap.Builder<String, String> contexts = ImmutableMap.builder();
+            for (Map.Entry<String, String> e : extraContexts.entrySet()) {
+                contexts.put(internString(e.getKey()), internString(e.getValue()));
+            }
+            this.extraContexts = contexts.build();
         }
-        this.extraContexts = contexts.build();
+
+        this.groupName = permission.regionMatches(true, 0, "group.", 0, "group.".length()) ? permission.substring("group.".length()) : null;
+        this.isWildcard = permission.endsWith(".*");
+        this.isPrefix = permission.regionMatches(true, 0, "prefix.", 0, "prefix.".length()) && PREFIX_PATTERN.matcher(permission).matches();
+        this.isSuffix = permission.regionMatches(true, 0, "suffix.", 0, "suffix.".length()) && SUFFIX_PATTERN.matcher(permission).matches();
+        this.isMeta = permission.startsWith("meta.") && META_PATTERN.matcher(permission).matches();
     }
 
     @Override
@@ -178,12 +214,12 @@ public class Node implements me.lucko.luckperms.api.Node {
 
     @Override
     public Map<String, String> getExtraContexts() {
-        return ImmutableMap.copyOf(extraContexts);
+        return extraContexts;
     }
 
     @Override
     public boolean isGroupNode() {
-        return getPermission().toLowerCase().startsWith("group.");
+        return groupName != null;
     }
 
     @Override
@@ -192,12 +228,12 @@ public class Node implements me.lucko.luckperms.api.Node {
             throw new IllegalStateException("Node is not a group node");
         }
 
-        return getPermission().substring("group.".length());
+        return groupName;
     }
 
     @Override
     public boolean isWildcard() {
-        return getPermission().endsWith(".*");
+        return isWildcard;
     }
 
     @Override
@@ -207,11 +243,7 @@ public class Node implements me.lucko.luckperms.api.Node {
 
     @Override
     public boolean isMeta() {
-        if (isMeta == Tristate.UNDEFINED) {
-            isMeta = Tristate.fromBoolean(META_PATTERN.matcher(getPermission()).matches());
-        }
-
-        return isMeta.asBoolean();
+        return isMeta;
     }
 
     @Override
@@ -226,11 +258,7 @@ public class Node implements me.lucko.luckperms.api.Node {
 
     @Override
     public boolean isPrefix() {
-        if (isPrefix == Tristate.UNDEFINED) {
-            isPrefix = Tristate.fromBoolean(PREFIX_PATTERN.matcher(getPermission()).matches());
-        }
-
-        return isPrefix.asBoolean();
+        return isPrefix;
     }
 
     @Override
@@ -246,11 +274,7 @@ public class Node implements me.lucko.luckperms.api.Node {
 
     @Override
     public boolean isSuffix() {
-        if (isSuffix == Tristate.UNDEFINED) {
-            isSuffix = Tristate.fromBoolean(SUFFIX_PATTERN.matcher(getPermission()).matches());
-        }
-
-        return isSuffix.asBoolean();
+        return isSuffix;
     }
 
     @Override
@@ -610,6 +634,48 @@ public class Node implements me.lucko.luckperms.api.Node {
         return true;
     }
 
+    /**
+     * Gets a key which is equal for all nodes that this node {@link #almostEquals(me.lucko.luckperms.api.Node)}
+     * @return the identity key of this node
+     */
+    public Identity getIdentity() {
+        if (identity == null) {
+            identity = new Identity(this, false);
+        }
+
+        return identity;
+    }
+
+    /**
+     * Gets a key which is equal for all nodes that this node {@link #equalsIgnoringValueOrTemp(me.lucko.luckperms.api.Node)}
+     * @return the identity key of this node, ignoring its expiry
+     */
+    public Identity getIdentityIgnoringTemp() {
+        if (identityIgnoringTemp == null) {
+            identityIgnoringTemp = new Identity(this, true);
+        }
+
+        return identityIgnoringTemp;
+    }
+
+    /**
+     * Gets the identity key of any node
+     * @param node the node
+     * @param ignoringTemp if the expiry of the node should be ignored
+     * @return the identity key of the node
+     */
+    public static Identity getIdentity(me.lucko.luckperms.api.Node node, boolean ignoringTemp) {
+        if (node instanceof Node) {
+            return ignoringTemp ? ((Node) node).getIdentityIgnoringTemp() : ((Node) node).getIdentity();
+        }
+
+        if (node instanceof me.lucko.luckperms.utils.LocalizedNode) {
+            return getIdentity(((me.lucko.luckperms.utils.LocalizedNode) node).getNode(), ignoringTemp);
+        }
+
+        return new Identity(node, ignoringTemp);
+    }
+
     @Override
     public Boolean setValue(Boolean value) {
         throw new UnsupportedOperationException();
@@ -620,15 +686,9 @@ public class Node implements me.lucko.luckperms.api.Node {
         return getPermission();
     }
 
-    private static final Map<String, me.lucko.luckperms.api.Node> CACHE = new ConcurrentHashMap<>();
-    private static final Map<String, me.lucko.luckperms.api.Node> CACHE_NEGATED = new ConcurrentHashMap<>();
-
     public static me.lucko.luckperms.api.Node fromSerialisedNode(String s, Boolean b) {
-        if (b) {
-            return CACHE.computeIfAbsent(s, s1 -> builderFromSerialisedNode(s1, true).build());
-        } else {
-            return CACHE_NEGATED.computeIfAbsent(s, s1 -> builderFromSerialisedNode(s1, false).build());
-        }
+        // Built nodes are interned, so there is no need to also cache by the serialized form
+        return builderFromSerialisedNode(s, b).build();
     }
 
     public static me.lucko.luckperms.api.Node.Builder builderFromSerialisedNode(String s, Boolean b) {
@@ -673,6 +733,66 @@ public class Node implements me.lucko.luckperms.api.Node {
         return new Builder(other);
     }
 
+    /**
+     * A canonical key for a node, made up of its case-folded permission, server and world, its extra contexts and
+     * optionally whether it is temporary. Used to de-duplicate nodes by hash lookup.
+     */
+    @Getter
+    @ToString
+    public static final class Identity {
+        private final String permission;
+        private final String server;
+        private final String world;
+        private final Map<String, String> extraContexts;
+        private final Boolean temporary;
+        private final int hashCode;
+
+        private Identity(me.lucko.luckperms.api.Node node, boolean ignoringTemp) {
+            this.permission = fold(node.getPermission());
+            this.server = node.getServer().map(Identity::fold).orElse(null);
+            this.world = node.getWorld().map(Identity::fold).orElse(null);
+            this.extraContexts = node.getExtraContexts();
+            this.temporary = ignoringTemp ? null : node.isTemporary();
+            this.hashCode = Objects.hash(permission, server, world, extraContexts, temporary);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) return true;
+            if (!(o instanceof Identity)) return false;
+            final Identity other = (Identity) o;
+            return this.hashCode == other.hashCode &&
+                    this.permission.equals(other.permission) &&
+                    Objects.equals(this.server, other.server) &&
+                    Objects.equals(this.world, other.world) &&
+                    this.extraContexts.equals(other.extraContexts) &&
+                    Objects.equals(this.temporary, other.temporary);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        /**
+         * Folds the case of a string, consistently with {@link String#equalsIgnoreCase(String)}
+         */
+        private static String fold(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (Character.toLowerCase(Character.toUpperCase(c)) != c) {
+                    char[] chars = s.toCharArray();
+                    for (int j = i; j < chars.length; j++) {
+                        chars[j] = Character.toLowerCase(Character.toUpperCase(chars[j]));
+                    }
+                    return new String(chars);
+                }
+            }
+
+            return s;
+        }
+    }
+
     @RequiredArgsConstructor
     public static class Builder implements me.lucko.luckperms.api.Node.Builder {
         private final String permission;
@@ -789,7 +909,7 @@ public class Node implements me.lucko.luckperms.api.Node {
 
         @Override
         public me.lucko.luckperms.api.Node build() {
-            return new Node(permission, value, override, expireAt, server, world, extraContexts);
+            return intern(new Node(permission, value, override, expireAt, server, world, extraContexts));
         }
     }
 
@@ -33,29 +33,36 @@ import me.lucko.luckperms.api.Contexts;
 import me.lucko.luckperms.api.LocalizedNode;
 import me.lucko.luckperms.api.Node;
 import me.lucko.luckperms.api.Tristate;
+import me.lucko.luckperms.api.context.ContextSet;
 import me.lucko.luckperms.api.event.events.GroupRemoveEvent;
 import me.lucko.luckperms.api.event.events.PermissionNodeExpireEvent;
 import me.lucko.luckperms.api.event.events.PermissionNodeSetEvent;
 import me.lucko.luckperms.api.event.events.PermissionNodeUnsetEvent;
 import me.lucko.luckperms.api.implementation.internal.PermissionHolderLink;
+import me.lucko.luckperms.caching.PermissionCache;
 import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
 import me.lucko.luckperms.exceptions.ObjectLacksException;
 import me.lucko.luckperms.groups.Group;
-import me.lucko.luckperms.utils.Cache;
+import me.lucko.luckperms.utils.Dependencies;
+import me.lucko.luckperms.utils.Versioned;
+import me.lucko.luckperms.utils.VersionedCache;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.function.Supplier;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Represents an object that can hold permissions
  * For example a User or a Group
  */
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
-public abstract class PermissionHolder {
+public abstract class PermissionHolder implements Versioned {
 
     /**
      * The UUID of the user / name of the group.
@@ -70,96 +77,139 @@ public abstract class PermissionHolder {
     @Getter(AccessLevel.PROTECTED)
     private final LuckPermsPlugin plugin;
 
-    private final Set<Node> nodes = new HashSet<>();
-    private final Set<Node> transientNodes = new HashSet<>();
+    /**
+     * The holders nodes. Each write publishes a new immutable snapshot, so readers never block.
+     */
+    private final AtomicReference<ImmutableSet<Node>> nodes = new AtomicReference<>(ImmutableSet.of());
+    private final AtomicReference<ImmutableSet<Node>> transientNodes = new AtomicReference<>(ImmutableSet.of());
 
-    private Cache<ImmutableSortedSet<LocalizedNode>> cache = new Cache<>();
-    private Cache<ImmutableSortedSet<LocalizedNode>> mergedCache = new Cache<>();
-    private Cache<ImmutableSet<Node>> enduringCache = new Cache<>();
-    private Cache<ImmutableSet<Node>> transientCache = new Cache<>();
+    /**
+     * Incremented after each change to the holders nodes is published
+     */
+    private final AtomicLong version = new AtomicLong(0L);
+
+    private final VersionedCache<ImmutableSortedSet<LocalizedNode>> cache = new VersionedCache<>(() -> calculatePermissions(false));
+    private final VersionedCache<ImmutableSortedSet<LocalizedNode>> mergedCache = new VersionedCache<>(() -> calculatePermissions(true));
+
+    /**
+     * The effective permissions of this holder, shared between the platform and its permission hooks
+     */
+    @Getter
+    private final PermissionCache permissionCache = new PermissionCache(this);
 
     @Getter
     private final Lock ioLock = new ReentrantLock();
 
-    private void invalidateCache(boolean enduring) {
-        if (enduring) {
-            enduringCache.invalidate();
-        } else {
-            transientCache.invalidate();
+    /**
+     * Gets the version of this holders nodes. The value changes each time the enduring or transient nodes change,
+     * so can be compared against by caches derived from them.
+     * @return the current version
+     */
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Atomically replaces the enduring or transient node snapshot
+     * @param enduring true to update the enduring nodes, false to update the transient nodes
+     * @param function produces the new snapshot from the current one, returning the same instance if nothing changed
+     * @return the replaced snapshot, or null if nothing changed
+     */
+    private ImmutableSet<Node> updateNodes(boolean enduring, UnaryOperator<ImmutableSet<Node>> function) {
+        AtomicReference<ImmutableSet<Node>> ref = enduring ? nodes : transientNodes;
+
+        ImmutableSet<Node> before;
+        ImmutableSet<Node> after;
+        do {
+            before = ref.get();
+            after = function.apply(before);
+            if (after == before) {
+                return null;
+            }
+        } while (!ref.compareAndSet(before, after));
+
+        version.incrementAndGet();
+
+        // Nodes which were already held have been scheduled before
+        ImmutableSet<Node> replaced = before;
+        after.stream()
+                .filter(Node::isTemporary)
+                .filter(n -> !replaced.contains(n))
+                .mapToLong(Node::getExpiryUnixTime)
+                .min()
+                .ifPresent(this::scheduleExpiry);
+        return before;
+    }
+
+    /**
+     * Schedules this holder to be audited when its next temporary node expires
+     */
+    void scheduleExpiry() {
+        Stream.concat(getNodes().stream(), getTransientNodes().stream())
+                .filter(Node::isTemporary)
+                .mapToLong(Node::getExpiryUnixTime)
+                .min()
+                .ifPresent(this::scheduleExpiry);
+    }
+
+    private void scheduleExpiry(long expireAt) {
+        plugin.getExpiryScheduler().schedule(this, expireAt);
+    }
+
+    private static ImmutableSet<Node> with(ImmutableSet<Node> set, Node node) {
+        return ImmutableSet.<Node>builder().addAll(set).add(node).build();
+    }
+
+    private static ImmutableSet<Node> without(ImmutableSet<Node> set, Predicate<Node> predicate) {
+        ImmutableSet.Builder<Node> builder = ImmutableSet.builder();
+        boolean changed = false;
+        for (Node node : set) {
+            if (predicate.test(node)) {
+                changed = true;
+            } else {
+                builder.add(node);
+            }
         }
-        cache.invalidate();
-        mergedCache.invalidate();
+        return changed ? builder.build() : set;
     }
 
     public Set<Node> getNodes() {
-        synchronized (nodes) {
-            return enduringCache.get(() -> ImmutableSet.copyOf(nodes));
-        }
+        return nodes.get();
     }
 
     public Set<Node> getTransientNodes() {
-        synchronized (transientNodes) {
-            return transientCache.get(() -> ImmutableSet.copyOf(transientNodes));
-        }
+        return transientNodes.get();
     }
 
     public void setNodes(Set<Node> nodes) {
-        synchronized (this.nodes) {
-            if (!this.nodes.equals(nodes)) {
-                invalidateCache(true);
-            }
-
-            this.nodes.clear();
-            this.nodes.addAll(nodes);
-        }
-
+        ImmutableSet<Node> set = ImmutableSet.copyOf(nodes);
+        updateNodes(true, before -> before.equals(set) ? before : set);
         auditTemporaryPermissions();
     }
 
     public void setTransientNodes(Set<Node> nodes) {
-        synchronized (this.transientNodes) {
-            if (!this.transientNodes.equals(nodes)) {
-                invalidateCache(false);
-            }
-
-            this.transientNodes.clear();
-            this.transientNodes.addAll(nodes);
-        }
-
+        ImmutableSet<Node> set = ImmutableSet.copyOf(nodes);
+        updateNodes(false, before -> before.equals(set) ? before : set);
         auditTemporaryPermissions();
     }
 
     @Deprecated
     public void setNodes(Map<String, Boolean> nodes) {
-        synchronized (this.nodes) {
-            if (!this.nodes.equals(nodes)) {
-                invalidateCache(true);
-            }
-
-            this.nodes.clear();
-            this.nodes.addAll(nodes.entrySet().stream()
-                    .map(e -> me.lucko.luckperms.core.Node.fromSerialisedNode(e.getKey(), e.getValue()))
-                    .collect(Collectors.toList()));
-        }
-
-        auditTemporaryPermissions();
+        setNodes(nodes.entrySet().stream()
+                .map(e -> me.lucko.luckperms.core.Node.fromSerialisedNode(e.getKey(), e.getValue()))
+                .collect(Collectors.toSet()));
     }
 
     public void addNodeUnchecked(Node node) {
-        synchronized (nodes) {
-            nodes.add(node);
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> before.contains(node) ? before : with(before, node));
     }
 
     /**
      * Clear all of the holders permission nodes
      */
     public void clearNodes() {
-        synchronized (nodes) {
-            nodes.clear();
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> before.isEmpty() ? before : ImmutableSet.of());
     }
 
     public void clearNodes(String server) {
@@ -168,10 +218,7 @@ public abstract class PermissionHolder {
         }
         String finalServer = server;
 
-        synchronized (nodes) {
-            nodes.removeIf(n -> n.getServer().orElse("global").equalsIgnoreCase(finalServer));
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> without(before, n -> n.getServer().orElse("global").equalsIgnoreCase(finalServer)));
     }
 
     public void clearNodes(String server, String world) {
@@ -185,17 +232,13 @@ public abstract class PermissionHolder {
         }
         String finalWorld = world;
 
-        synchronized (nodes) {
-            nodes.removeIf(n -> n.getServer().orElse("global").equalsIgnoreCase(finalServer) && n.getWorld().orElse("null").equalsIgnoreCase(finalWorld));
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> without(before, n ->
+                n.getServer().orElse("global").equalsIgnoreCase(finalServer) && n.getWorld().orElse("null").equalsIgnoreCase(finalWorld)
+        ));
     }
 
     public void clearMeta() {
-        synchronized (nodes) {
-            nodes.removeIf(n -> n.isMeta() || n.isPrefix() || n.isSuffix());
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> without(before, n -> n.isMeta() || n.isPrefix() || n.isSuffix()));
     }
 
     public void clearMeta(String server) {
@@ -204,12 +247,9 @@ public abstract class PermissionHolder {
         }
         String finalServer = server;
 
-        synchronized (nodes) {
-            nodes.removeIf(n -> (n.isMeta() || n.isPrefix() || n.isSuffix()) &&
-                    n.getServer().orElse("global").equalsIgnoreCase(finalServer)
-            );
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> without(before, n -> (n.isMeta() || n.isPrefix() || n.isSuffix()) &&
+                n.getServer().orElse("global").equalsIgnoreCase(finalServer)
+        ));
     }
 
     public void clearMeta(String server, String world) {
@@ -223,20 +263,14 @@ public abstract class PermissionHolder {
         }
         String finalWorld = world;
 
-        synchronized (nodes) {
-            nodes.removeIf(n -> (n.isMeta() || n.isPrefix() || n.isSuffix()) &&
-                    (n.getServer().orElse("global").equalsIgnoreCase(finalServer) &&
-                            n.getWorld().orElse("null").equalsIgnoreCase(finalWorld))
-            );
-            invalidateCache(true);
-        }
+        updateNodes(true, before -> without(before, n -> (n.isMeta() || n.isPrefix() || n.isSuffix()) &&
+                (n.getServer().orElse("global").equalsIgnoreCase(finalServer) &&
+                        n.getWorld().orElse("null").equalsIgnoreCase(finalWorld))
+        ));
     }
 
     public void clearTransientNodes() {
-        synchronized (transientNodes) {
-            transientNodes.clear();
-            invalidateCache(false);
-        }
+        updateNodes(false, before -> before.isEmpty() ? before : ImmutableSet.of());
     }
 
     /**
@@ -244,34 +278,34 @@ public abstract class PermissionHolder {
      * @return the holders transient and permanent nodes
      */
     public SortedSet<LocalizedNode> getPermissions(boolean mergeTemp) {
-        Supplier<ImmutableSortedSet<LocalizedNode>> supplier = () -> {
-            TreeSet<LocalizedNode> combined = new TreeSet<>(PriorityComparator.reverse());
+        return mergeTemp ? mergedCache.getFresh() : cache.getFresh();
+    }
 
-            getNodes().stream()
-                    .map(n -> me.lucko.luckperms.utils.LocalizedNode.of(n, getObjectName()))
-                    .forEach(combined::add);
+    private ImmutableSortedSet<LocalizedNode> calculatePermissions(boolean mergeTemp) {
+        // Track the version before reading the nodes, so a concurrent write can only cause the result to be recalculated
+        Dependencies.track(this);
 
-            getTransientNodes().stream()
-                    .map(n -> me.lucko.luckperms.utils.LocalizedNode.of(n, getObjectName()))
-                    .forEach(combined::add);
+        TreeSet<LocalizedNode> combined = new TreeSet<>(PriorityComparator.reverse());
 
-            TreeSet<LocalizedNode> permissions = new TreeSet<>(PriorityComparator.reverse());
+        getNodes().stream()
+                .map(n -> me.lucko.luckperms.utils.LocalizedNode.of(n, getObjectName()))
+                .forEach(combined::add);
 
-            combined:
-            for (LocalizedNode node : combined) {
-                for (LocalizedNode other : permissions) {
-                    if (mergeTemp ? node.getNode().equalsIgnoringValueOrTemp(other.getNode()) : node.getNode().almostEquals(other.getNode())) {
-                        continue combined;
-                    }
-                }
+        getTransientNodes().stream()
+                .map(n -> me.lucko.luckperms.utils.LocalizedNode.of(n, getObjectName()))
+                .forEach(combined::add);
 
+        TreeSet<LocalizedNode> permissions = new TreeSet<>(PriorityComparator.reverse());
+        Set<me.lucko.luckperms.core.Node.Identity> identities = new HashSet<>();
+
+        for (LocalizedNode node : combined) {
+            // Higher priority nodes come first, so take precedence
+            if (identities.add(me.lucko.luckperms.core.Node.getIdentity(node.getNode(), mergeTemp))) {
                 permissions.add(node);
             }
+        }
 
-            return ImmutableSortedSet.copyOfSorted(permissions);
-        };
-
-        return mergeTemp ? mergedCache.get(supplier) : cache.get(supplier);
+        return ImmutableSortedSet.copyOfSorted(permissions);
     }
 
     /**
@@ -279,38 +313,20 @@ public abstract class PermissionHolder {
      * @return true if permissions had expired and were removed
      */
     public boolean auditTemporaryPermissions() {
-        boolean work = false;
-        final PermissionHolder instance = this;
-
-        synchronized (nodes) {
-            boolean w = nodes.removeIf(node -> {
-                if (node.hasExpired()) {
-                    plugin.getApiProvider().fireEventAsync(new PermissionNodeExpireEvent(new PermissionHolderLink(instance), node));
-                    return true;
-                }
-                return false;
-            });
-            if (w) {
-                invalidateCache(true);
-                work = true;
-            }
-        }
+        return auditTemporaryPermissions(true) | auditTemporaryPermissions(false);
+    }
 
-        synchronized (transientNodes) {
-            boolean w = transientNodes.removeIf(node -> {
-                if (node.hasExpired()) {
-                    plugin.getApiProvider().fireEventAsync(new PermissionNodeExpireEvent(new PermissionHolderLink(instance), node));
-                    return true;
-                }
-                return false;
-            });
-            if (w) {
-                invalidateCache(false);
-                work = true;
-            }
+    private boolean auditTemporaryPermissions(boolean enduring) {
+        ImmutableSet<Node> before = updateNodes(enduring, set -> without(set, Node::hasExpired));
+        if (before == null) {
+            return false;
         }
 
-        return work;
+        Set<Node> after = enduring ? getNodes() : getTransientNodes();
+        before.stream()
+                .filter(node -> !after.contains(node))
+                .forEach(node -> plugin.getApiProvider().fireEventAsync(new PermissionNodeExpireEvent(new PermissionHolderLink(this), node)));
+        return true;
     }
 
     /**
@@ -320,54 +336,82 @@ public abstract class PermissionHolder {
      * @return a set of nodes
      */
     public SortedSet<LocalizedNode> getAllNodes(List<String> excludedGroups, Contexts context) {
+        Set<String> excluded = new HashSet<>();
+        if (excludedGroups != null) {
+            excludedGroups.stream().map(String::toLowerCase).forEach(excluded::add);
+        }
+
+        return new TreeSet<>(resolveAllNodes(excluded, new HashSet<>(), context));
+    }
+
+    /**
+     * Resolves this holders own and inherited nodes
+     * @param excludedGroups the groups which should not be inherited, including those currently being resolved
+     * @param hitExcludedGroups populated with the excluded groups which would otherwise have been inherited
+     * @param context context to decide if groups should be applied
+     * @return a set of nodes
+     */
+    protected SortedSet<LocalizedNode> resolveAllNodes(Set<String> excludedGroups, Set<String> hitExcludedGroups, Contexts context) {
         SortedSet<LocalizedNode> all = new TreeSet<>((SortedSet<LocalizedNode>) getPermissions(true));
+        Set<me.lucko.luckperms.core.Node.Identity> identities = all.stream()
+                .map(n -> me.lucko.luckperms.core.Node.getIdentity(n.getNode(), false))
+                .collect(Collectors.toCollection(HashSet::new));
+
+        String name = getObjectName().toLowerCase();
+        boolean added = excludedGroups.add(name);
+
+        try {
+            // The set of loaded groups decides which parents can be inherited
+            Dependencies.track(plugin.getGroupManager());
+
+            for (Node parent : getApplicableParents(context)) {
+                Group group = plugin.getGroupManager().get(parent.getGroupName());
+                if (group == null) {
+                    continue;
+                }
 
-        if (excludedGroups == null) {
-            excludedGroups = new ArrayList<>();
+                if (excludedGroups.contains(group.getObjectName())) {
+                    hitExcludedGroups.add(group.getObjectName());
+                    continue;
+                }
+
+                for (LocalizedNode inherited : ((PermissionHolder) group).resolveAllNodes(excludedGroups, hitExcludedGroups, context)) {
+                    if (identities.add(me.lucko.luckperms.core.Node.getIdentity(inherited.getNode(), false))) {
+                        all.add(inherited);
+                    }
+                }
+            }
+        } finally {
+            if (added) {
+                excludedGroups.remove(name);
+            }
         }
 
-        excludedGroups.add(getObjectName().toLowerCase());
+        return all;
+    }
 
+    /**
+     * Gets the group nodes held by this holder which apply in the given context
+     * @param context context to decide if groups should be applied
+     * @return a set of group nodes
+     */
+    protected Set<Node> getApplicableParents(Contexts context) {
         Set<Node> parents = getPermissions(true).stream()
                 .map(LocalizedNode::getNode)
                 .filter(Node::isGroupNode)
                 .collect(Collectors.toSet());
 
-        Map<String, String> contexts = new HashMap<>(context.getContext());
-        String server = contexts.get("server");
-        String world = contexts.get("world");
-        contexts.remove("server");
-        contexts.remove("world");
+        ContextSet contexts = context.getContextSet();
+        String server = contexts.getServer();
+        String world = contexts.getWorld();
 
         parents.removeIf(node ->
                 !node.shouldApplyOnServer(server, context.isApplyGlobalGroups(), plugin.getConfiguration().isApplyingRegex()) ||
                 !node.shouldApplyOnWorld(world, context.isApplyGlobalWorldGroups(), plugin.getConfiguration().isApplyingRegex()) ||
-                !node.shouldApplyWithContext(contexts, false)
+                !node.shouldApplyWithContext(contexts.getOther(), false)
         );
 
-        for (Node parent : parents) {
-            Group group = plugin.getGroupManager().get(parent.getGroupName());
-            if (group == null) {
-                continue;
-            }
-
-            if (excludedGroups.contains(group.getObjectName())) {
-                continue;
-            }
-
-            inherited:
-            for (LocalizedNode inherited : group.getAllNodes(excludedGroups, context)) {
-                for (LocalizedNode existing : all) {
-                    if (existing.getNode().almostEquals(inherited.getNode())) {
-                        continue inherited;
-                    }
-                }
-
-                all.add(inherited);
-            }
-        }
-
-        return all;
+        return parents;
     }
 
     /**
@@ -384,30 +428,24 @@ public abstract class PermissionHolder {
             allNodes = new TreeSet<>((SortedSet<LocalizedNode>) getPermissions(true));
         }
 
-        Map<String, String> contexts = new HashMap<>(context.getContext());
-        String server = contexts.get("server");
-        String world = contexts.get("world");
-        contexts.remove("server");
-        contexts.remove("world");
+        ContextSet contexts = context.getContextSet();
+        String server = contexts.getServer();
+        String world = contexts.getWorld();
 
         allNodes.removeIf(node ->
                 !node.shouldApplyOnServer(server, context.isIncludeGlobal(), plugin.getConfiguration().isApplyingRegex()) ||
                 !node.shouldApplyOnWorld(world, context.isIncludeGlobalWorld(), plugin.getConfiguration().isApplyingRegex()) ||
-                !node.shouldApplyWithContext(contexts, false)
+                !node.shouldApplyWithContext(contexts.getOther(), false)
         );
 
-        Set<LocalizedNode> perms = ConcurrentHashMap.newKeySet();
+        Set<LocalizedNode> perms = new HashSet<>();
+        Set<String> permissions = new HashSet<>();
 
-        all:
         for (LocalizedNode ln : allNodes) {
             // Force higher priority nodes to override
-            for (LocalizedNode alreadyIn : perms) {
-                if (ln.getNode().getPermission().equals(alreadyIn.getNode().getPermission())) {
-                    continue all;
-                }
+            if (permissions.add(ln.getNode().getPermission())) {
+                perms.add(ln);
             }
-
-            perms.add(ln);
         }
 
         return perms;
@@ -461,7 +499,11 @@ public abstract class PermissionHolder {
      * @return a tristate
      */
     public Tristate hasPermission(Node node, boolean t) {
-        for (Node n : t ? getTransientNodes() : getNodes()) {
+        return hasPermission(t ? getTransientNodes() : getNodes(), node);
+    }
+
+    private static Tristate hasPermission(Set<Node> nodes, Node node) {
+        for (Node n : nodes) {
             if (n.almostEquals(node)) {
                 return n.getTristate();
             }
@@ -552,15 +594,10 @@ public abstract class PermissionHolder {
      * @throws ObjectAlreadyHasException if the holder has this permission already
      */
     public void setPermission(Node node) throws ObjectAlreadyHasException {
-        if (hasPermission(node, false) != Tristate.UNDEFINED) {
+        if (updateNodes(true, before -> hasPermission(before, node) != Tristate.UNDEFINED ? before : with(before, node)) == null) {
             throw new ObjectAlreadyHasException();
         }
 
-        synchronized (nodes) {
-            nodes.add(node);
-            invalidateCache(true);
-        }
-
         plugin.getApiProvider().fireEventAsync(new PermissionNodeSetEvent(new PermissionHolderLink(this), node));
     }
 
@@ -570,15 +607,10 @@ public abstract class PermissionHolder {
      * @throws ObjectAlreadyHasException if the holder has this permission already
      */
     public void setTransientPermission(Node node) throws ObjectAlreadyHasException {
-        if (hasPermission(node, true) != Tristate.UNDEFINED) {
+        if (updateNodes(false, before -> hasPermission(before, node) != Tristate.UNDEFINED ? before : with(before, node)) == null) {
             throw new ObjectAlreadyHasException();
         }
 
-        synchronized (transientNodes) {
-            transientNodes.add(node);
-            invalidateCache(false);
-        }
-
         plugin.getApiProvider().fireEventAsync(new PermissionNodeSetEvent(new PermissionHolderLink(this), node));
     }
 
@@ -612,15 +644,10 @@ public abstract class PermissionHolder {
      * @throws ObjectLacksException if the holder doesn't have this node already
      */
     public void unsetPermission(Node node) throws ObjectLacksException {
-        if (hasPermission(node, false) == Tristate.UNDEFINED) {
+        if (updateNodes(true, before -> without(before, e -> e.almostEquals(node))) == null) {
             throw new ObjectLacksException();
         }
 
-        synchronized (nodes) {
-            nodes.removeIf(e -> e.almostEquals(node));
-            invalidateCache(true);
-        }
-
         if (node.isGroupNode()) {
             plugin.getApiProvider().fireEventAsync(new GroupRemoveEvent(new PermissionHolderLink(this),
                     node.getGroupName(), node.getServer().orElse(null), node.getWorld().orElse(null), node.isTemporary()));
@@ -635,15 +662,10 @@ public abstract class PermissionHolder {
      * @throws ObjectLacksException if the holder doesn't have this node already
      */
     public void unsetTransientPermission(Node node) throws ObjectLacksException {
-        if (hasPermission(node, true) == Tristate.UNDEFINED) {
+        if (updateNodes(false, before -> without(before, e -> e.almostEquals(node))) == null) {
             throw new ObjectLacksException();
         }
 
-        synchronized (transientNodes) {
-            transientNodes.removeIf(e -> e.almostEquals(node));
-            invalidateCache(false);
-        }
-
         if (node.isGroupNode()) {
             plugin.getApiProvider().fireEventAsync(new GroupRemoveEvent(new PermissionHolderLink(this),
                     node.getGroupName(), node.getServer().orElse(null), node.getWorld().orElse(null), node.isTemporary()));
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.core;
+
+import lombok.Getter;
+
+import java.util.concurrent.*;
+
+/**
+ * A fixed number of threads shared by bulk storage tasks, such as loading many users at once, the bulk user editor
+ * and imports.
+ *
+ * <p>Tasks running on the pool shouldn't wait for other tasks they submit to it, as every thread could end up
+ * waiting. {@link #isWorkerThread()} can be used to run nested work inline instead.</p>
+ */
+public class WorkerPool {
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * The number of threads in the pool
+     */
+    @Getter
+    private final int size;
+    private final ExecutorService executor;
+
+    public WorkerPool() {
+        this.size = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        this.executor = Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(() -> {
+                WORKER.set(true);
+                r.run();
+            }, "luckperms-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a task on the pool
+     * @param task the task
+     * @throws RejectedExecutionException if the pool has been shut down
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * Runs a task on the pool
+     * @param task the task
+     * @param <T> the result type
+     * @return the result of the task
+     * @throws RejectedExecutionException if the pool has been shut down
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Checks whether the calling thread belongs to a worker pool
+     * @return true if the current thread is a worker
+     */
+    public static boolean isWorkerThread() {
+        return WORKER.get();
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
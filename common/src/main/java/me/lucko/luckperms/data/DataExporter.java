@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import lombok.RequiredArgsConstructor;
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.Logger;
+import me.lucko.luckperms.groups.Group;
+import me.lucko.luckperms.storage.Datastore;
+import me.lucko.luckperms.tracks.Track;
+import me.lucko.luckperms.users.User;
+import me.lucko.luckperms.users.UserIdentifier;
+import me.lucko.luckperms.users.UserManager;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static me.lucko.luckperms.core.PermissionHolder.exportToLegacy;
+
+/**
+ * Writes all groups, tracks and users to a newline delimited JSON file, one record per line.
+ *
+ * Users are read from the datastore a page at a time, so the export never holds more than one page of users in memory.
+ */
+@RequiredArgsConstructor
+public class DataExporter {
+    public static final int FORMAT_VERSION = 1;
+    private static final int PAGE_SIZE = 500;
+
+    private final LuckPermsPlugin plugin;
+
+    /**
+     * Gets if a file should be read or written in the data format, rather than as a list of commands
+     * @param file the file
+     * @return true if the file name ends in .ndjson or .ndjson.gz
+     */
+    public static boolean isDataFile(File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".ndjson") || name.endsWith(".ndjson.gz");
+    }
+
+    static BufferedReader openReader(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 65536);
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 65536);
+    }
+
+    static BufferedWriter openWriter(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        if (file.getName().toLowerCase().endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 65536);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 65536);
+    }
+
+    static JsonObject writeNodes(Map<String, Boolean> nodes) {
+        JsonObject object = new JsonObject();
+        nodes.forEach(object::addProperty);
+        return object;
+    }
+
+    /**
+     * Exports everything in the datastore to a file
+     * @param file the file to write to
+     * @return true if the export completed successfully
+     */
+    public boolean export(File file) {
+        final Logger log = plugin.getLog();
+        final Datastore datastore = plugin.getDatastore();
+        final Gson gson = new Gson();
+
+        try (BufferedWriter writer = openWriter(file)) {
+            log.info("Export: Starting export process.");
+
+            JsonObject header = new JsonObject();
+            header.addProperty("type", "header");
+            header.addProperty("version", FORMAT_VERSION);
+            write(gson, writer, header);
+
+            datastore.loadAllGroups();
+            for (Group group : plugin.getGroupManager().getAll().values()) {
+                JsonObject record = new JsonObject();
+                record.addProperty("type", "group");
+                record.addProperty("name", group.getName());
+                record.add("nodes", writeNodes(exportToLegacy(group.getNodes())));
+                write(gson, writer, record);
+            }
+            log.info("Export: Exported " + plugin.getGroupManager().getAll().size() + " groups.");
+
+            datastore.loadAllTracks();
+            for (Track track : plugin.getTrackManager().getAll().values()) {
+                JsonObject record = new JsonObject();
+                record.addProperty("type", "track");
+                record.addProperty("name", track.getName());
+                record.add("groups", gson.toJsonTree(track.getGroups()));
+                write(gson, writer, record);
+            }
+            log.info("Export: Exported " + plugin.getTrackManager().getAll().size() + " tracks.");
+
+            UserManager userManager = plugin.getUserManager();
+            AtomicInteger userCount = new AtomicInteger(0);
+            boolean success = datastore.forEachUniqueUserPage(PAGE_SIZE, page -> {
+                Set<UUID> alreadyLoaded = new HashSet<>();
+                for (UUID uuid : page) {
+                    if (userManager.isLoaded(UserIdentifier.of(uuid, null))) {
+                        alreadyLoaded.add(uuid);
+                    }
+                }
+
+                try {
+                    if (!datastore.loadUsers(page)) {
+                        return false;
+                    }
+
+                    for (UUID uuid : page) {
+                        User user = userManager.get(uuid);
+                        if (user == null) {
+                            continue;
+                        }
+
+                        JsonObject record = new JsonObject();
+                        record.addProperty("type", "user");
+                        record.addProperty("uuid", user.getUuid().toString());
+                        record.addProperty("name", user.getName());
+                        record.addProperty("primaryGroup", user.getPrimaryGroup());
+                        record.add("nodes", writeNodes(exportToLegacy(user.getNodes())));
+                        write(gson, writer, record);
+                        userCount.incrementAndGet();
+                    }
+                    return true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return false;
+                } finally {
+                    for (UUID uuid : page) {
+                        User user = userManager.get(uuid);
+                        if (user != null && !alreadyLoaded.contains(uuid)) {
+                            userManager.cleanup(user);
+                        }
+                    }
+                }
+            });
+            log.info("Export: Exported " + userCount.get() + " users.");
+
+            writer.flush();
+            return success;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private static void write(Gson gson, BufferedWriter writer, JsonObject record) throws IOException {
+        gson.toJson(record, writer);
+        writer.write('\n');
+    }
+}
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.data;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import lombok.RequiredArgsConstructor;
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.commands.Sender;
+import me.lucko.luckperms.constants.Message;
+import me.lucko.luckperms.groups.Group;
+import me.lucko.luckperms.storage.Datastore;
+import me.lucko.luckperms.tracks.Track;
+import me.lucko.luckperms.users.User;
+import me.lucko.luckperms.users.UserIdentifier;
+import me.lucko.luckperms.users.UserManager;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads a file written by {@link DataExporter} straight into the datastore.
+ *
+ * Groups and tracks are imported as they are read. Users are collected into batches, which are saved in parallel.
+ */
+@RequiredArgsConstructor
+public class DataImporter {
+    private static final int BATCH_SIZE = 500;
+    private static final long PROGRESS_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    private final LuckPermsPlugin plugin;
+    private final Sender sender;
+
+    private final AtomicInteger imported = new AtomicInteger(0);
+    private final AtomicInteger errors = new AtomicInteger(0);
+    private long lastProgress = 0L;
+
+    /**
+     * Imports the contents of a file, blocking until every record has been saved
+     * @param file the file to read from
+     */
+    public void run(File file) {
+        long startTime = System.currentTimeMillis();
+        lastProgress = startTime;
+        Message.IMPORT_START.send(sender);
+
+        // Limits the number of batches waiting to be saved, so the file is never read far ahead of the workers
+        int inFlightBatches = plugin.getWorkerPool().getSize() * 2;
+        Semaphore inFlight = new Semaphore(inFlightBatches);
+
+        try (BufferedReader reader = DataExporter.openReader(file)) {
+            JsonParser parser = new JsonParser();
+            List<JsonObject> batch = new ArrayList<>(BATCH_SIZE);
+
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                JsonObject record;
+                try {
+                    record = parser.parse(line).getAsJsonObject();
+                } catch (Exception e) {
+                    plugin.getLog().warn("Import: Unable to read line " + lineNumber + ": " + e.getMessage());
+                    errors.incrementAndGet();
+                    continue;
+                }
+
+                String type = record.has("type") ? record.get("type").getAsString() : "";
+                switch (type) {
+                    case "header":
+                        int version;
+                        try {
+                            version = getRequired(record, "version").getAsInt();
+                        } catch (Exception e) {
+                            plugin.getLog().severe("Import: Invalid header on line " + lineNumber + ": " + e.getMessage());
+                            errors.incrementAndGet();
+                            return;
+                        }
+
+                        if (version > DataExporter.FORMAT_VERSION) {
+                            plugin.getLog().severe("Import: Unsupported data version " + version + ".");
+                            errors.incrementAndGet();
+                            return;
+                        }
+                        break;
+                    case "group":
+                        count(importGroup(record, lineNumber));
+                        break;
+                    case "track":
+                        count(importTrack(record, lineNumber));
+                        break;
+                    case "user":
+                        batch.add(record);
+                        if (batch.size() >= BATCH_SIZE) {
+                            submit(inFlight, batch);
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                        break;
+                    default:
+                        plugin.getLog().warn("Import: Unknown record type '" + type + "' on line " + lineNumber + ".");
+                        errors.incrementAndGet();
+                        break;
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                submit(inFlight, batch);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            Message.IMPORT_LOG_FAILURE.send(sender);
+            errors.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.incrementAndGet();
+        } finally {
+            // Every permit is returned once the submitted batches have been saved
+            try {
+                inFlight.acquire(inFlightBatches);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            plugin.runUpdateTask();
+
+            double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+            Message.IMPORT_DATA_END.send(sender, seconds, imported.get(), errors.get());
+        }
+    }
+
+    private void count(boolean success) {
+        if (success) {
+            imported.incrementAndGet();
+        } else {
+            errors.incrementAndGet();
+        }
+        reportProgress();
+    }
+
+    private boolean importGroup(JsonObject record, int lineNumber) {
+        String name;
+        Map<String, Boolean> nodes;
+        try {
+            name = getRequired(record, "name").getAsString();
+            nodes = readNodes(record);
+        } catch (Exception e) {
+            plugin.getLog().warn("Import: Invalid group on line " + lineNumber + ": " + e.getMessage());
+            return false;
+        }
+
+        Datastore datastore = plugin.getDatastore();
+        if (!datastore.createAndLoadGroup(name)) {
+            return false;
+        }
+
+        Group group = plugin.getGroupManager().get(name);
+        if (group == null) {
+            return false;
+        }
+
+        group.setNodes(nodes);
+        return datastore.saveGroup(group);
+    }
+
+    private boolean importTrack(JsonObject record, int lineNumber) {
+        String name;
+        List<String> groups = new ArrayList<>();
+        try {
+            name = getRequired(record, "name").getAsString();
+            for (JsonElement group : getRequired(record, "groups").getAsJsonArray()) {
+                groups.add(group.getAsString());
+            }
+        } catch (Exception e) {
+            plugin.getLog().warn("Import: Invalid track on line " + lineNumber + ": " + e.getMessage());
+            return false;
+        }
+
+        Datastore datastore = plugin.getDatastore();
+        if (!datastore.createAndLoadTrack(name)) {
+            return false;
+        }
+
+        Track track = plugin.getTrackManager().get(name);
+        if (track == null) {
+            return false;
+        }
+
+        track.setGroups(groups);
+        return datastore.saveTrack(track);
+    }
+
+    private void submit(Semaphore inFlight, List<JsonObject> batch) throws InterruptedException {
+        inFlight.acquire();
+        try {
+            plugin.getWorkerPool().execute(() -> {
+                try {
+                    importUsers(batch);
+                } catch (Exception e) {
+                    // Records are counted by importUsers as they are processed
+                    e.printStackTrace();
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The plugin is shutting down
+            inFlight.release();
+            errors.addAndGet(batch.size());
+        }
+    }
+
+    private void importUsers(List<JsonObject> batch) {
+        UserManager userManager = plugin.getUserManager();
+        Set<UUID> alreadyLoaded = new HashSet<>();
+        List<User> users = new ArrayList<>(batch.size());
+
+        try {
+            for (JsonObject record : batch) {
+                // Read the whole record before touching the user, so an invalid record is skipped on its own
+                UUID uuid;
+                String name;
+                String primaryGroup;
+                Map<String, Boolean> nodes;
+                try {
+                    uuid = UUID.fromString(getRequired(record, "uuid").getAsString());
+                    name = record.has("name") ? record.get("name").getAsString() : "null";
+                    primaryGroup = getRequired(record, "primaryGroup").getAsString();
+                    nodes = readNodes(record);
+                } catch (Exception e) {
+                    plugin.getLog().warn("Import: Invalid user record: " + e.getMessage());
+                    errors.incrementAndGet();
+                    continue;
+                }
+
+                if (userManager.isLoaded(UserIdentifier.of(uuid, name))) {
+                    alreadyLoaded.add(uuid);
+                }
+
+                User user = userManager.getOrMake(UserIdentifier.of(uuid, name));
+                users.add(user);
+                user.setNodes(nodes);
+                user.setPrimaryGroup(primaryGroup);
+            }
+
+            boolean saved;
+            try {
+                saved = plugin.getDatastore().saveUsers(users);
+            } catch (Exception e) {
+                e.printStackTrace();
+                saved = false;
+            }
+
+            if (saved) {
+                imported.addAndGet(users.size());
+            } else {
+                errors.addAndGet(users.size());
+            }
+        } finally {
+            for (User user : users) {
+                if (alreadyLoaded.contains(user.getUuid())) {
+                    user.refreshPermissions();
+                } else {
+                    userManager.cleanup(user);
+                }
+            }
+            reportProgress();
+        }
+    }
+
+    private synchronized void reportProgress() {
+        long now = System.currentTimeMillis();
+        if (now - lastProgress < PROGRESS_INTERVAL) {
+            return;
+        }
+
+        lastProgress = now;
+        Message.IMPORT_DATA_PROGRESS.send(sender, imported.get(), errors.get());
+    }
+
+    private static JsonElement getRequired(JsonObject record, String key) {
+        JsonElement element = record.get(key);
+        if (element == null || element.isJsonNull()) {
+            throw new IllegalArgumentException("Missing '" + key + "'");
+        }
+        return element;
+    }
+
+    private static Map<String, Boolean> readNodes(JsonObject record) {
+        Map<String, Boolean> nodes = new HashMap<>();
+        if (record.has("nodes")) {
+            for (Map.Entry<String, JsonElement> e : record.getAsJsonObject("nodes").entrySet()) {
+                nodes.put(e.getKey(), e.getValue().getAsBoolean());
+            }
+        }
+        return nodes;
+    }
+}
@@ -62,6 +62,10 @@ public class Importer {
         return true;
     }
 
+    public synchronized void endRun() {
+        running = false;
+    }
+
     public void start(Sender executor, List<String> commands) {
         this.executor = executor;
         this.commands = commands.stream()
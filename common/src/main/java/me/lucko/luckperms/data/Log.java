@@ -23,7 +23,6 @@
 package me.lucko.luckperms.data;
 
 import com.google.common.collect.ImmutableSortedSet;
-import lombok.Getter;
 import me.lucko.luckperms.api.LogEntry;
 
 import java.util.*;
@@ -34,111 +33,108 @@ public class Log {
         return new Builder();
     }
 
-    private static final int PAGE_ENTRIES = 5;
+    static final int PAGE_ENTRIES = 5;
 
-    @Getter
     private final SortedSet<LogEntry> content;
 
     public Log(SortedSet<LogEntry> content) {
         this.content = ImmutableSortedSet.copyOf(content);
     }
 
-    public SortedSet<LogEntry> getRecent() {
+    public SortedSet<LogEntry> getContent() {
         return content;
     }
 
+    public SortedSet<LogEntry> getRecent() {
+        return getContent();
+    }
+
     public SortedMap<Integer, LogEntry> getRecent(int pageNo) {
-        return getPage(content, pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.all(), pageNo);
     }
 
     public int getRecentMaxPages() {
-        return getMaxPages(content.size(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.all()), PAGE_ENTRIES);
     }
 
     public SortedSet<LogEntry> getRecent(UUID actor) {
-        return content.stream()
-                .filter(e -> e.getActor().equals(actor))
-                .collect(Collectors.toCollection(TreeSet::new));
+        return filter(LogFilter.byActor(actor));
     }
 
     public SortedMap<Integer, LogEntry> getRecent(int pageNo, UUID actor) {
-        return getPage(getRecent(actor), pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.byActor(actor), pageNo);
     }
 
     public int getRecentMaxPages(UUID actor) {
-        return getMaxPages(content.stream()
-                .filter(e -> e.getActor().equals(actor))
-                .count(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.byActor(actor)), PAGE_ENTRIES);
     }
 
     public SortedSet<LogEntry> getUserHistory(UUID uuid) {
-        return content.stream()
-                .filter(e -> e.getType() == 'U')
-                .filter(e -> e.getActed().equals(uuid))
-                .collect(Collectors.toCollection(TreeSet::new));
+        return filter(LogFilter.userHistory(uuid));
     }
 
     public SortedMap<Integer, LogEntry> getUserHistory(int pageNo, UUID uuid) {
-        return getPage(getUserHistory(uuid), pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.userHistory(uuid), pageNo);
     }
 
     public int getUserHistoryMaxPages(UUID uuid) {
-        return getMaxPages(content.stream()
-                .filter(e -> e.getType() == 'U')
-                .filter(e -> e.getActed().equals(uuid))
-                .count(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.userHistory(uuid)), PAGE_ENTRIES);
     }
 
     public SortedSet<LogEntry> getGroupHistory(String name) {
-        return content.stream()
-                .filter(e -> e.getType() == 'G')
-                .filter(e -> e.getActedName().equals(name))
-                .collect(Collectors.toCollection(TreeSet::new));
+        return filter(LogFilter.groupHistory(name));
     }
 
     public SortedMap<Integer, LogEntry> getGroupHistory(int pageNo, String name) {
-        return getPage(getGroupHistory(name), pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.groupHistory(name), pageNo);
     }
 
     public int getGroupHistoryMaxPages(String name) {
-        return getMaxPages(content.stream()
-                .filter(e -> e.getType() == 'G')
-                .filter(e -> e.getActedName().equals(name))
-                .count(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.groupHistory(name)), PAGE_ENTRIES);
     }
 
     public SortedSet<LogEntry> getTrackHistory(String name) {
-        return content.stream()
-                .filter(e -> e.getType() == 'T')
-                .filter(e -> e.getActedName().equals(name))
-                .collect(Collectors.toCollection(TreeSet::new));
+        return filter(LogFilter.trackHistory(name));
     }
 
     public SortedMap<Integer, LogEntry> getTrackHistory(int pageNo, String name) {
-        return getPage(getTrackHistory(name), pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.trackHistory(name), pageNo);
     }
 
     public int getTrackHistoryMaxPages(String name) {
-        return getMaxPages(content.stream()
-                .filter(e -> e.getType() == 'T')
-                .filter(e -> e.getActedName().equals(name))
-                .count(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.trackHistory(name)), PAGE_ENTRIES);
     }
 
     public SortedSet<LogEntry> getSearch(String query) {
-        return content.stream()
-                .filter(e -> e.matchesSearch(query))
-                .collect(Collectors.toCollection(TreeSet::new));
+        return filter(LogFilter.search(query));
     }
 
     public SortedMap<Integer, LogEntry> getSearch(int pageNo, String query) {
-        return getPage(getSearch(query), pageNo, PAGE_ENTRIES);
+        return getPage(LogFilter.search(query), pageNo);
     }
 
     public int getSearchMaxPages(String query) {
-        return getMaxPages(content.stream()
-                .filter(e -> e.matchesSearch(query))
-                .count(), PAGE_ENTRIES);
+        return getMaxPages(count(LogFilter.search(query)), PAGE_ENTRIES);
+    }
+
+    private SortedSet<LogEntry> filter(LogFilter filter) {
+        return getContent().stream()
+                .filter(filter::matches)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    /**
+     * Counts the entries matching a filter
+     */
+    protected int count(LogFilter filter) {
+        return (int) getContent().stream().filter(filter::matches).count();
+    }
+
+    /**
+     * Gets a page of the entries matching a filter, keyed by their position in the filtered log
+     */
+    protected SortedMap<Integer, LogEntry> getPage(LogFilter filter, int pageNo) {
+        return getPage(filter(filter), pageNo, PAGE_ENTRIES);
     }
 
     private static SortedMap<Integer, LogEntry> getPage(Set<LogEntry> set, int pageNo, int entries) {
@@ -173,10 +169,6 @@ public class Log {
         return (int) Math.ceil((double) size / entries);
     }
 
-    private static int getMaxPages(long size, int entries) {
-        return (int) Math.ceil((double) size / entries);
-    }
-
     @SuppressWarnings("WeakerAccess")
     public static class Builder {
         private final SortedSet<LogEntry> content = new TreeSet<>();
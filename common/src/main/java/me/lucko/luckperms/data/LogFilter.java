@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.data;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import me.lucko.luckperms.api.LogEntry;
+
+import java.util.UUID;
+
+/**
+ * Selects the action log entries which match every condition set. Unset conditions are null, and match any entry.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class LogFilter {
+    private static final LogFilter ALL = new LogFilter(null, null, null, null, null, 0L, Long.MAX_VALUE);
+
+    public static LogFilter all() {
+        return ALL;
+    }
+
+    public static LogFilter byActor(UUID actor) {
+        return new LogFilter(actor, null, null, null, null, 0L, Long.MAX_VALUE);
+    }
+
+    public static LogFilter userHistory(UUID uuid) {
+        return new LogFilter(null, 'U', uuid, null, null, 0L, Long.MAX_VALUE);
+    }
+
+    public static LogFilter groupHistory(String name) {
+        return new LogFilter(null, 'G', null, name, null, 0L, Long.MAX_VALUE);
+    }
+
+    public static LogFilter trackHistory(String name) {
+        return new LogFilter(null, 'T', null, name, null, 0L, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param query text to find in the actor name, acted name or action, ignoring case
+     */
+    public static LogFilter search(String query) {
+        return new LogFilter(null, null, null, null, query, 0L, Long.MAX_VALUE);
+    }
+
+    private final UUID actor;
+    private final Character type;
+    private final UUID acted;
+    private final String actedName;
+    private final String search;
+
+    /**
+     * The earliest timestamp to include
+     */
+    private final long after;
+
+    /**
+     * The timestamp to include entries up to, but not including
+     */
+    private final long before;
+
+    /**
+     * Gets a copy of this filter, which also only matches entries within a time range
+     * @param after the earliest timestamp to include
+     * @param before the timestamp to include entries up to, but not including
+     * @return the new filter
+     */
+    public LogFilter between(long after, long before) {
+        return new LogFilter(actor, type, acted, actedName, search, after, before);
+    }
+
+    public boolean matches(LogEntry entry) {
+        return (actor == null || actor.equals(entry.getActor())) &&
+                (type == null || type == entry.getType()) &&
+                (acted == null || acted.equals(entry.getActed())) &&
+                (actedName == null || actedName.equals(entry.getActedName())) &&
+                (search == null || entry.matchesSearch(search)) &&
+                entry.getTimestamp() >= after && entry.getTimestamp() < before;
+    }
+}
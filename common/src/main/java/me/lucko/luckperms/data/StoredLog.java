@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.data;
+
+import me.lucko.luckperms.api.LogEntry;
+import me.lucko.luckperms.storage.Datastore;
+
+import java.util.*;
+
+/**
+ * A log which reads only the entries it is asked for from the datastore, instead of loading every entry up front.
+ *
+ * Counts are remembered for the life of the instance, so each should only be used for a single command.
+ */
+public class StoredLog extends Log {
+    private final Datastore datastore;
+    private final Map<LogFilter, Integer> counts = new HashMap<>();
+    private SortedSet<LogEntry> content = null;
+
+    public StoredLog(Datastore datastore) {
+        super(Collections.emptySortedSet());
+        this.datastore = datastore;
+    }
+
+    /**
+     * Checks that the log can be read from the datastore
+     * @return true if the log could be read
+     */
+    public boolean isReadable() {
+        return count(LogFilter.all()) != -1;
+    }
+
+    /**
+     * Gets every entry in the log, reading the full log from the datastore the first time it is called
+     */
+    @Override
+    public synchronized SortedSet<LogEntry> getContent() {
+        if (content == null) {
+            Log log = datastore.getLog();
+            content = log == null ? Collections.emptySortedSet() : log.getContent();
+        }
+        return content;
+    }
+
+    @Override
+    protected synchronized int count(LogFilter filter) {
+        Integer count = counts.get(filter);
+        if (count == null) {
+            count = datastore.getLogCount(filter);
+            counts.put(filter, count);
+        }
+        return count;
+    }
+
+    @Override
+    protected SortedMap<Integer, LogEntry> getPage(LogFilter filter, int pageNo) {
+        if (pageNo < 1) {
+            throw new IllegalArgumentException("pageNo cannot be less than 1: " + pageNo);
+        }
+
+        int count = count(filter);
+        int offset = (pageNo - 1) * PAGE_ENTRIES;
+        if (count <= offset) {
+            throw new IllegalStateException("Log does not contain that many entries. " +
+                    "Requested: " + (offset + 1) + ", Log Count: " + count);
+        }
+
+        // Pages in the newer half of the log are read from the newest entry, so the datastore skips fewer rows.
+        int limit = Math.min(PAGE_ENTRIES, count - offset);
+        boolean newestFirst = offset > count / 2;
+        List<LogEntry> entries = newestFirst ?
+                datastore.getLogEntries(filter, true, count - offset - limit, limit) :
+                datastore.getLogEntries(filter, false, offset, limit);
+
+        SortedMap<Integer, LogEntry> page = new TreeMap<>();
+        if (entries == null) {
+            return page;
+        }
+
+        if (newestFirst) {
+            entries = new ArrayList<>(entries);
+            Collections.reverse(entries);
+        }
+
+        int index = offset;
+        for (LogEntry entry : entries) {
+            page.put(++index, entry);
+        }
+        return page;
+    }
+}
@@ -22,21 +22,34 @@
 
 package me.lucko.luckperms.groups;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedSet;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.Contexts;
+import me.lucko.luckperms.api.LocalizedNode;
 import me.lucko.luckperms.api.event.events.GroupAddEvent;
 import me.lucko.luckperms.api.implementation.internal.GroupLink;
 import me.lucko.luckperms.api.implementation.internal.PermissionHolderLink;
 import me.lucko.luckperms.core.PermissionHolder;
 import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
 import me.lucko.luckperms.exceptions.ObjectLacksException;
+import me.lucko.luckperms.utils.Dependencies;
 import me.lucko.luckperms.utils.Identifiable;
 
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.concurrent.TimeUnit;
+
 @ToString(of = {"name"})
 @EqualsAndHashCode(of = {"name"}, callSuper = false)
 public class Group extends PermissionHolder implements Identifiable<String> {
+    private static final int MAX_RESOLVED_CONTEXTS = 64;
+    private static final long EXPIRE_AFTER_ACCESS = 10L;
 
     /**
      * The name of the group
@@ -44,6 +57,17 @@ public class Group extends PermissionHolder implements Identifiable<String> {
     @Getter
     private final String name;
 
+    /**
+     * The fully resolved nodes of this group, mapped by the context they were resolved in.
+     * Entries are recalculated once any holder they were resolved from changes. Groups are shared by every user, so
+     * more contexts are kept than for a single user, but contexts which haven't been used for
+     * {@link #EXPIRE_AFTER_ACCESS} minutes are removed.
+     */
+    private final Cache<Contexts, Dependencies.Tracked<SortedSet<LocalizedNode>>> inheritanceCache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_RESOLVED_CONTEXTS)
+            .expireAfterAccess(EXPIRE_AFTER_ACCESS, TimeUnit.MINUTES)
+            .build();
+
     Group(String name, LuckPermsPlugin plugin) {
         super(name, plugin);
         this.name = name;
@@ -54,6 +78,30 @@ public class Group extends PermissionHolder implements Identifiable<String> {
         return name;
     }
 
+    @Override
+    protected SortedSet<LocalizedNode> resolveAllNodes(Set<String> excludedGroups, Set<String> hitExcludedGroups, Contexts context) {
+        Dependencies.Tracked<SortedSet<LocalizedNode>> cached = inheritanceCache.getIfPresent(context);
+        if (cached != null && cached.isCurrent()) {
+            Dependencies.track(cached.getDependencies());
+            return cached.getValue();
+        }
+
+        Set<String> hit = new HashSet<>();
+        Dependencies.Tracked<SortedSet<LocalizedNode>> resolved = Dependencies.record(() ->
+                ImmutableSortedSet.copyOfSorted(super.resolveAllNodes(excludedGroups, hit, context))
+        );
+        hit.remove(getObjectName());
+
+        // If a group further up the inheritance tree was skipped, the result depends on where it was resolved from.
+        if (!hit.isEmpty()) {
+            hitExcludedGroups.addAll(hit);
+            return resolved.getValue();
+        }
+
+        inheritanceCache.put(context, resolved);
+        return resolved.getValue();
+    }
+
     public String getRawDisplayName() {
         return getPlugin().getConfiguration().getGroupNameRewrites().getOrDefault(name, name);
     }
@@ -25,11 +25,38 @@ package me.lucko.luckperms.groups;
 import lombok.RequiredArgsConstructor;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.utils.AbstractManager;
+import me.lucko.luckperms.utils.Versioned;
+
+import java.util.concurrent.atomic.AtomicLong;
 
 @RequiredArgsConstructor
-public class GroupManager extends AbstractManager<String, Group> {
+public class GroupManager extends AbstractManager<String, Group> implements Versioned {
     private final LuckPermsPlugin plugin;
 
+    /**
+     * Incremented each time a group is loaded or unloaded
+     */
+    private final AtomicLong version = new AtomicLong(0L);
+
+    /**
+     * Gets the version of the set of loaded groups. The value changes each time a group is loaded or unloaded.
+     * @return the current version
+     */
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
+    @Override
+    protected void preUnload(Group group) {
+        version.incrementAndGet();
+    }
+
+    @Override
+    protected void postUnload(Group group) {
+        plugin.getExpiryScheduler().cancel(group);
+    }
+
     /**
      * Makes a new group object
      * @param name The name of the group
@@ -37,6 +64,7 @@ public class GroupManager extends AbstractManager<String, Group> {
      */
     @Override
     public Group apply(String name) {
+        version.incrementAndGet();
         return new Group(name, plugin);
     }
 }
\ No newline at end of file
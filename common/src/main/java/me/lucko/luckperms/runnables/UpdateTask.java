@@ -26,11 +26,26 @@ import lombok.AllArgsConstructor;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.event.events.PostSyncEvent;
 import me.lucko.luckperms.api.event.events.PreSyncEvent;
+import me.lucko.luckperms.storage.Change;
+import me.lucko.luckperms.storage.Datastore;
+import me.lucko.luckperms.users.UserIdentifier;
+
+import java.util.*;
+import java.util.stream.Collectors;
 
 @AllArgsConstructor
 public class UpdateTask implements Runnable {
     private final LuckPermsPlugin plugin;
 
+    /**
+     * If only the data changed by other servers should be reloaded, rather than everything
+     */
+    private final boolean incremental;
+
+    public UpdateTask(LuckPermsPlugin plugin) {
+        this(plugin, false);
+    }
+
     /**
      * Called ASYNC
      */
@@ -40,19 +55,70 @@ public class UpdateTask implements Runnable {
         plugin.getApiProvider().fireEvent(event);
         if (event.isCancelled()) return;
 
+        List<Change> changes = incremental ? plugin.getDatastore().pollChanges() : null;
+        if (changes == null) {
+            reloadAll();
+        } else if (!changes.isEmpty()) {
+            reloadChanged(changes);
+        }
+
+        plugin.getApiProvider().fireEvent(new PostSyncEvent());
+    }
+
+    private void reloadAll() {
         // Reload all groups
         plugin.getDatastore().loadAllGroups();
-        String defaultGroup = plugin.getConfiguration().getDefaultGroupName();
-        if (!plugin.getGroupManager().isLoaded(defaultGroup)) {
-            plugin.getDatastore().createAndLoadGroup(defaultGroup);
-        }
+        loadDefaultGroup();
 
         // Reload all tracks
         plugin.getDatastore().loadAllTracks();
 
         // Refresh all online users.
         plugin.getUserManager().updateAllUsers();
+    }
 
-        plugin.getApiProvider().fireEvent(new PostSyncEvent());
+    private void reloadChanged(List<Change> changes) {
+        Datastore datastore = plugin.getDatastore();
+
+        // A group or track which can't be loaded may have been deleted, which only a full reload will pick up.
+        Set<String> groups = getNames(changes, Change.GROUP);
+        if (!groups.isEmpty()) {
+            if (!groups.stream().allMatch(datastore::loadGroup)) {
+                datastore.loadAllGroups();
+            }
+            loadDefaultGroup();
+        }
+
+        Set<String> tracks = getNames(changes, Change.TRACK);
+        if (!tracks.isEmpty() && !tracks.stream().allMatch(datastore::loadTrack)) {
+            datastore.loadAllTracks();
+        }
+
+        Set<UUID> users = getNames(changes, Change.USER).stream()
+                .map(UUID::fromString)
+                .filter(uuid -> plugin.getUserManager().isLoaded(UserIdentifier.of(uuid, null)))
+                .collect(Collectors.toSet());
+        if (!users.isEmpty()) {
+            datastore.loadUsers(users);
+        }
+
+        // Users inherit from the changed groups, so all of them may need recalculating.
+        if (!groups.isEmpty()) {
+            plugin.getUserManager().refreshAllUsers();
+        }
+    }
+
+    private void loadDefaultGroup() {
+        String defaultGroup = plugin.getConfiguration().getDefaultGroupName();
+        if (!plugin.getGroupManager().isLoaded(defaultGroup)) {
+            plugin.getDatastore().createAndLoadGroup(defaultGroup);
+        }
+    }
+
+    private static Set<String> getNames(List<Change> changes, char type) {
+        return changes.stream()
+                .filter(c -> c.getType() == type)
+                .map(Change::getName)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
     }
 }
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage;
+
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.LogEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Buffers action log entries in memory, and writes them to a datastore in batches, so that each command does not
+ * have to wait for its own write.
+ *
+ * <p>Buffered entries are written every {@link #FLUSH_INTERVAL} milliseconds, or as soon as a full batch is waiting.
+ * If the buffer fills up, the thread adding an entry writes the backlog itself before continuing.</p>
+ *
+ * <p>A batch which fails to be written is kept, and retried before any newer entries are written. Whilst it keeps
+ * failing, new entries stay in the buffer, and once that is full, entries are written directly by the thread adding
+ * them, so the failure is reported back to the caller. Entries are only dropped if they still can't be written when
+ * the plugin shuts down.</p>
+ */
+public class ActionLogWriter {
+    private static final int CAPACITY = 10000;
+    private static final int BATCH_SIZE = 500;
+    private static final long FLUSH_INTERVAL = 1000L;
+
+    private final LuckPermsPlugin plugin;
+    private final Predicate<List<LogEntry>> writer;
+    private final BlockingQueue<LogEntry> buffer = new ArrayBlockingQueue<>(CAPACITY);
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Held whilst writing buffered entries, so flushes run one at a time and entries are written in order
+     */
+    private final Lock flushLock = new ReentrantLock();
+    private final AtomicBoolean batchFlushQueued = new AtomicBoolean(false);
+
+    /**
+     * The entries which failed to be written by the last flush, in order. Only replaced whilst holding the flush lock.
+     */
+    private volatile List<LogEntry> failed = Collections.emptyList();
+    private volatile boolean closed = false;
+
+    /**
+     * @param plugin the plugin
+     * @param writer writes a batch of entries to the datastore, returning true if successful
+     */
+    public ActionLogWriter(LuckPermsPlugin plugin, Predicate<List<LogEntry>> writer) {
+        this.plugin = plugin;
+        this.writer = writer;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "luckperms-action-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::scheduledFlush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds an entry to the buffer
+     * @param entry the entry to write
+     * @return true if the entry was buffered, or written successfully
+     */
+    public boolean submit(LogEntry entry) {
+        if (closed) {
+            return writer.test(Collections.singletonList(entry));
+        }
+
+        if (!buffer.offer(entry)) {
+            // The datastore is falling behind. Slow down whatever is producing the entries by writing the
+            // backlog on this thread.
+            flush();
+            if (!buffer.offer(entry)) {
+                return writer.test(Collections.singletonList(entry));
+            }
+        }
+
+        if (buffer.size() >= BATCH_SIZE && batchFlushQueued.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    batchFlushQueued.set(false);
+                    scheduledFlush();
+                });
+            } catch (RejectedExecutionException e) {
+                batchFlushQueued.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes every entry in the buffer to the datastore
+     * @return true if all entries were written successfully
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            // Entries are written in order, so nothing newer is written until the failed entries have been.
+            if (!failed.isEmpty()) {
+                if (!writer.test(failed)) {
+                    plugin.getLog().severe("Error occurred whilst writing " + failed.size() + " entries to the action log. They will be retried.");
+                    return false;
+                }
+                failed = Collections.emptyList();
+            }
+
+            List<LogEntry> batch = new ArrayList<>(BATCH_SIZE);
+
+            // Only write the entries buffered so far, so a caller isn't kept busy by entries added whilst writing.
+            int remaining = buffer.size();
+            while (remaining > 0 && buffer.drainTo(batch, Math.min(remaining, BATCH_SIZE)) > 0) {
+                remaining -= batch.size();
+                if (!writer.test(batch)) {
+                    plugin.getLog().severe("Error occurred whilst writing " + batch.size() + " entries to the action log. They will be retried.");
+                    failed = batch;
+                    return false;
+                }
+                batch.clear();
+            }
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            flush();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getBufferedCount() {
+        return failed.size() + buffer.size();
+    }
+
+    /**
+     * Stops the scheduled flushes and writes any buffered entries. Entries submitted afterwards are written
+     * immediately.
+     */
+    public void shutdown() {
+        closed = true;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!flush()) {
+            plugin.getLog().severe(getBufferedCount() + " action log entries could not be written, and have been lost.");
+        }
+    }
+}
@@ -20,34 +20,43 @@
  *  SOFTWARE.
  */
 
-package me.lucko.luckperms.runnables;
+package me.lucko.luckperms.storage;
 
 import lombok.AllArgsConstructor;
-import me.lucko.luckperms.LuckPermsPlugin;
-import me.lucko.luckperms.core.PermissionHolder;
-import me.lucko.luckperms.groups.Group;
-import me.lucko.luckperms.users.User;
+import lombok.Getter;
+import lombok.ToString;
 
+/**
+ * A record that a user, group or track was written to a datastore, used by other servers sharing the datastore to
+ * find out what they need to reload
+ */
+@Getter
+@ToString
 @AllArgsConstructor
-public class ExpireTemporaryTask implements Runnable {
-    private final LuckPermsPlugin plugin;
-
-    @Override
-    public void run() {
-        boolean changes = false;
-        for (Group group : plugin.getGroupManager().getAll().values()) {
-            if (group.auditTemporaryPermissions()) {
-                changes = true;
-            }
-        }
-
-        if (changes) {
-            plugin.runUpdateTask();
-            return;
-        }
-
-        plugin.getUserManager().getAll().values().stream()
-                .filter(PermissionHolder::auditTemporaryPermissions)
-                .forEach(User::refreshPermissions);
-    }
-}
\ No newline at end of file
+public class Change {
+    public static final char USER = 'U';
+    public static final char GROUP = 'G';
+    public static final char TRACK = 'T';
+
+    /**
+     * The position of the change in the datastores change feed
+     */
+    private final long id;
+
+    /**
+     * When the change was written, in unix seconds
+     */
+    private final long time;
+
+    /**
+     * Identifies the datastore instance which wrote the change
+     */
+    private final String origin;
+
+    private final char type;
+
+    /**
+     * The uuid of the user, or the name of the group or track
+     */
+    private final String name;
+}
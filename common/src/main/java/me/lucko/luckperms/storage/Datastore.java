@@ -22,6 +22,7 @@
 
 package me.lucko.luckperms.storage;
 
+import com.google.common.collect.Iterables;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -30,12 +31,14 @@ import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.LogEntry;
 import me.lucko.luckperms.api.data.Callback;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.tracks.Track;
 import me.lucko.luckperms.users.User;
 
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor(access = AccessLevel.PROTECTED)
 public abstract class Datastore {
@@ -72,6 +75,7 @@ public abstract class Datastore {
     public abstract boolean logAction(LogEntry entry);
     public abstract Log getLog();
     public abstract boolean loadUser(UUID uuid, String username);
+    public abstract boolean loadUsers(Collection<UUID> uuids);
     public abstract boolean saveUser(User user);
     public abstract boolean cleanupUsers();
     public abstract Set<UUID> getUniqueUsers();
@@ -89,6 +93,131 @@ public abstract class Datastore {
     public abstract UUID getUUID(String username);
     public abstract String getName(UUID uuid);
 
+    /*
+        Writes several objects at once. By default, each object is written in turn. Datastores which are able to write
+        multiple objects in a single operation should override these.
+     */
+    public boolean logActions(Collection<LogEntry> entries) {
+        boolean success = true;
+        for (LogEntry entry : entries) {
+            if (!logAction(entry)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    public boolean saveUsers(Collection<User> users) {
+        boolean success = true;
+        for (User user : users) {
+            if (!saveUser(user)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    public boolean saveGroups(Collection<Group> groups) {
+        boolean success = true;
+        for (Group group : groups) {
+            if (!saveGroup(group)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Passes the unique users to the consumer a page at a time, so they never all have to be held at once.
+     * By default, every unique user is read and then split into pages.
+     * @param pageSize the maximum number of users in each page
+     * @param consumer called with each page, returning false to stop
+     * @return true if every page was read and passed to the consumer, or false if a read failed or the consumer stopped
+     */
+    public boolean forEachUniqueUserPage(int pageSize, Predicate<List<UUID>> consumer) {
+        Set<UUID> users = getUniqueUsers();
+        if (users == null) {
+            return false;
+        }
+
+        for (List<UUID> page : Iterables.partition(users, pageSize)) {
+            if (!consumer.test(page)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the users which have a stored node for the given permission, in any context and with any value.
+     * Answered from an index, without loading the users. Permissions are matched exactly.
+     * @param permission the permission to look up
+     * @return the uuids of the matching users, or null if the lookup failed
+     */
+    public abstract Set<UUID> getUsersWithPermission(String permission);
+
+    /**
+     * Counts the action log entries matching a filter.
+     * By default, the whole log is read and filtered. Datastores which can filter the log in a query should override this.
+     * @param filter the entries to count
+     * @return the number of matching entries, or -1 if the log could not be read
+     */
+    public int getLogCount(LogFilter filter) {
+        Log log = getLog();
+        if (log == null) {
+            return -1;
+        }
+
+        return (int) log.getContent().stream().filter(filter::matches).count();
+    }
+
+    /**
+     * Gets a page of the action log entries matching a filter.
+     * By default, the whole log is read and filtered. Datastores which can filter the log in a query should override this.
+     * @param filter the entries to include
+     * @param newestFirst if the entries should be paged from the newest, rather than the oldest
+     * @param offset the number of matching entries to skip
+     * @param limit the maximum number of entries to return
+     * @return the entries in the order they were paged, or null if the log could not be read
+     */
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        Log log = getLog();
+        if (log == null) {
+            return null;
+        }
+
+        List<LogEntry> entries = log.getContent().stream().filter(filter::matches).collect(Collectors.toList());
+        if (newestFirst) {
+            Collections.reverse(entries);
+        }
+        return entries.stream().skip(offset).limit(limit).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets details about the current state of the datastore, such as connection pool usage, shown by the info command
+     * @return the value of each detail, keyed by its name
+     */
+    public Map<String, String> getMeta() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Gets the users, groups and tracks written by other servers since the last call. By default, changes are not
+     * tracked. Datastores shared between servers should override this.
+     * @return the changes in the order they were written, or null if they are unknown and everything should be reloaded
+     */
+    public List<Change> pollChanges() {
+        return null;
+    }
+
+    /**
+     * Gets the users which have a stored node for the given group
+     * @param group the name of the group
+     * @return the uuids of the matching users, or null if the lookup failed
+     */
+    public Set<UUID> getGroupMembers(String group) {
+        return getUsersWithPermission("group." + group.toLowerCase());
+    }
 
 
     /*
@@ -116,6 +245,13 @@ public abstract class Datastore {
         });
     }
 
+    public void loadUsers(Collection<UUID> uuids, Callback<Boolean> callback) {
+        doAsync(() -> {
+            boolean result = loadUsers(uuids);
+            doSync(() -> callback.onComplete(result));
+        });
+    }
+
     public void saveUser(User user, Callback<Boolean> callback) {
         doAsync(() -> {
             boolean result = saveUser(user);
@@ -137,6 +273,20 @@ public abstract class Datastore {
         });
     }
 
+    public void getUsersWithPermission(String permission, Callback<Set<UUID>> callback) {
+        doAsync(() -> {
+            Set<UUID> result = getUsersWithPermission(permission);
+            doSync(() -> callback.onComplete(result));
+        });
+    }
+
+    public void getGroupMembers(String group, Callback<Set<UUID>> callback) {
+        doAsync(() -> {
+            Set<UUID> result = getGroupMembers(group);
+            doSync(() -> callback.onComplete(result));
+        });
+    }
+
     public void createAndLoadGroup(String name, Callback<Boolean> callback) {
         doAsync(() -> {
             boolean result = createAndLoadGroup(name);
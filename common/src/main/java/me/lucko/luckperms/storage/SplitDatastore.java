@@ -26,13 +26,13 @@ import com.google.common.collect.ImmutableMap;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.LogEntry;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.tracks.Track;
 import me.lucko.luckperms.users.User;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.UUID;
+import java.util.*;
+import java.util.function.Predicate;
 
 public class SplitDatastore extends Datastore {
     private final Map<String, Datastore> backing;
@@ -61,26 +61,81 @@ public class SplitDatastore extends Datastore {
         backing.values().forEach(Datastore::shutdown);
     }
 
+    @Override
+    public Map<String, String> getMeta() {
+        Map<String, String> meta = new LinkedHashMap<>();
+        backing.forEach((method, ds) -> ds.getMeta().forEach((key, value) -> meta.put(method + " " + key, value)));
+        return meta;
+    }
+
+    @Override
+    public List<Change> pollChanges() {
+        List<Change> changes = new ArrayList<>();
+
+        // Each datastore is polled once, keeping the types of change it stores in this setup.
+        for (Map.Entry<String, Datastore> e : backing.entrySet()) {
+            Set<Character> stored = new HashSet<>();
+            if (e.getKey().equals(types.get("user"))) stored.add(Change.USER);
+            if (e.getKey().equals(types.get("group"))) stored.add(Change.GROUP);
+            if (e.getKey().equals(types.get("track"))) stored.add(Change.TRACK);
+            if (stored.isEmpty()) {
+                continue;
+            }
+
+            List<Change> polled = e.getValue().pollChanges();
+            if (polled == null) {
+                return null;
+            }
+            polled.stream().filter(c -> stored.contains(c.getType())).forEach(changes::add);
+        }
+        return changes;
+    }
+
     @Override
     public boolean logAction(LogEntry entry) {
         return backing.get(types.get("log")).logAction(entry);
     }
 
+    @Override
+    public boolean logActions(Collection<LogEntry> entries) {
+        return backing.get(types.get("log")).logActions(entries);
+    }
+
     @Override
     public Log getLog() {
         return backing.get(types.get("log")).getLog();
     }
 
+    @Override
+    public int getLogCount(LogFilter filter) {
+        return backing.get(types.get("log")).getLogCount(filter);
+    }
+
+    @Override
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        return backing.get(types.get("log")).getLogEntries(filter, newestFirst, offset, limit);
+    }
+
     @Override
     public boolean loadUser(UUID uuid, String username) {
         return backing.get(types.get("user")).loadUser(uuid, username);
     }
 
+    @Override
+    public boolean loadUsers(Collection<UUID> uuids) {
+        return backing.get(types.get("user")).loadUsers(uuids);
+    }
+
     @Override
     public boolean saveUser(User user) {
         return backing.get(types.get("user")).saveUser(user);
     }
 
+    @Override
+    public boolean saveUsers(Collection<User> users) {
+        return backing.get(types.get("user")).saveUsers(users);
+    }
+
     @Override
     public boolean cleanupUsers() {
         return backing.get(types.get("user")).cleanupUsers();
@@ -91,6 +146,16 @@ public class SplitDatastore extends Datastore {
         return backing.get(types.get("user")).getUniqueUsers();
     }
 
+    @Override
+    public boolean forEachUniqueUserPage(int pageSize, Predicate<List<UUID>> consumer) {
+        return backing.get(types.get("user")).forEachUniqueUserPage(pageSize, consumer);
+    }
+
+    @Override
+    public Set<UUID> getUsersWithPermission(String permission) {
+        return backing.get(types.get("user")).getUsersWithPermission(permission);
+    }
+
     @Override
     public boolean createAndLoadGroup(String name) {
         return backing.get(types.get("group")).createAndLoadGroup(name);
@@ -111,6 +176,11 @@ public class SplitDatastore extends Datastore {
         return backing.get(types.get("group")).saveGroup(group);
     }
 
+    @Override
+    public boolean saveGroups(Collection<Group> groups) {
+        return backing.get(types.get("group")).saveGroups(groups);
+    }
+
     @Override
     public boolean deleteGroup(Group group) {
         return backing.get(types.get("group")).deleteGroup(group);
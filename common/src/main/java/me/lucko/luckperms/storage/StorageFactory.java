@@ -76,6 +76,12 @@ public class StorageFactory {
             plugin.getLog().info("Using " + datastore.getName() + " as storage method.");
         }
 
+        int saveDelay = plugin.getConfiguration().getSaveDelay();
+        if (saveDelay > 0) {
+            plugin.getLog().info("Delaying user and group saves by " + saveDelay + "ms.");
+            datastore = new WriteBehindDatastore(plugin, datastore, saveDelay);
+        }
+
         plugin.getLog().info("Initialising datastore...");
         datastore.init();
         return datastore;
@@ -86,9 +92,9 @@ public class StorageFactory {
             case "mysql":
                 return new MySQLDatastore(plugin, plugin.getConfiguration().getDatabaseValues());
             case "sqlite":
-                return new SQLiteDatastore(plugin, new File(plugin.getDataFolder(), "luckperms.sqlite"));
+                return new SQLiteDatastore(plugin, new File(plugin.getDataFolder(), "luckperms.sqlite"), plugin.getConfiguration().getDatabaseValues());
             case "h2":
-                return new H2Datastore(plugin, new File(plugin.getDataFolder(), "luckperms.db"));
+                return new H2Datastore(plugin, new File(plugin.getDataFolder(), "luckperms.db"), plugin.getConfiguration().getDatabaseValues());
             case "mongodb":
                 return new MongoDBDatastore(plugin, plugin.getConfiguration().getDatabaseValues());
             case "yaml":
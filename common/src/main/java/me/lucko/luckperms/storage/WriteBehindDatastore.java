@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.storage;
+
+import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.LogEntry;
+import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
+import me.lucko.luckperms.groups.Group;
+import me.lucko.luckperms.tracks.Track;
+import me.lucko.luckperms.users.User;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Wraps a datastore, delaying user and group saves so that repeated saves of the same object are combined into a
+ * single write. Pending saves are written together using {@link Datastore#saveUsers(Collection)} and
+ * {@link Datastore#saveGroups(Collection)}.
+ *
+ * <p>Saves are always written in the order they were made - an object saved whilst a flush is running is written by
+ * the next flush. Pending saves of an object are written before it is loaded or deleted, and before shutdown.</p>
+ *
+ * <p>Saves which fail to be written are queued again, and retried with an increasing delay, up to
+ * {@link #MAX_RETRY_DELAY} milliseconds apart. Whilst an object has a save which couldn't be written, loading it
+ * fails, rather than replacing its unsaved changes with the stored state.</p>
+ */
+public class WriteBehindDatastore extends Datastore {
+    private static final long MIN_RETRY_DELAY = 1000L;
+    private static final long MAX_RETRY_DELAY = 60000L;
+
+    private final Datastore backing;
+    private final long delay;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Held whilst writing pending saves, so flushes run one at a time
+     */
+    private final Lock flushLock = new ReentrantLock();
+
+    // Guarded by "pending"
+    private final Object pending = new Object();
+    private final Map<UUID, User> pendingUsers = new LinkedHashMap<>();
+    private final Map<String, Group> pendingGroups = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    /**
+     * The number of flushes in a row which failed
+     */
+    private int failures = 0;
+
+    protected WriteBehindDatastore(LuckPermsPlugin plugin, Datastore backing, long delay) {
+        super(plugin, backing.getName());
+        this.backing = backing;
+        this.delay = delay;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "luckperms-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Writes all pending saves to the backing datastore
+     * @return true if all saves were successful
+     */
+    public boolean flush() {
+        flushLock.lock();
+        try {
+            return writePending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private boolean writePending() {
+        List<User> users;
+        List<Group> groups;
+        synchronized (pending) {
+            users = new ArrayList<>(pendingUsers.values());
+            groups = new ArrayList<>(pendingGroups.values());
+            pendingUsers.clear();
+            pendingGroups.clear();
+            flushScheduled = false;
+        }
+
+        boolean usersSaved = users.isEmpty() || backing.saveUsers(users);
+        boolean groupsSaved = groups.isEmpty() || backing.saveGroups(groups);
+
+        synchronized (pending) {
+            if (usersSaved && groupsSaved) {
+                failures = 0;
+                return true;
+            }
+
+            // Queue the failed saves again. Objects saved again since the flush started are already queued.
+            if (!usersSaved) {
+                users.forEach(u -> pendingUsers.putIfAbsent(u.getUuid(), u));
+            }
+            if (!groupsSaved) {
+                groups.forEach(g -> pendingGroups.putIfAbsent(g.getName(), g));
+            }
+
+            failures++;
+            if (!scheduleFlush()) {
+                plugin.getLog().severe("Unable to retry " + (pendingUsers.size() + pendingGroups.size()) + " failed saves, as the datastore is shutting down.");
+            }
+            return false;
+        }
+    }
+
+    private void scheduledFlush() {
+        try {
+            if (!flush()) {
+                plugin.getLog().severe("Error occurred whilst writing delayed saves to the datastore. They will be retried.");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Schedules a flush if one is not already scheduled. Must be called whilst holding the "pending" lock.
+     * @return false if the flush could not be scheduled, as the datastore is shutting down
+     */
+    private boolean scheduleFlush() {
+        if (flushScheduled) {
+            return true;
+        }
+
+        long wait = delay;
+        if (failures > 0) {
+            wait = Math.min(Math.max(delay, MIN_RETRY_DELAY) << Math.min(failures - 1, 6), MAX_RETRY_DELAY);
+        }
+
+        try {
+            executor.schedule(this::scheduledFlush, wait, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+
+        flushScheduled = true;
+        return true;
+    }
+
+    /**
+     * Waits for any running flush to finish, then writes the pending saves if any match the given condition
+     * @param condition checks whether any pending saves need to be written
+     * @return false if pending saves had to be written, and failed. They remain queued, so loading the objects
+     *         they belong to would replace their unsaved changes with the stored state.
+     */
+    private boolean flushIf(PendingCondition condition) {
+        flushLock.lock();
+        try {
+            boolean needed;
+            synchronized (pending) {
+                needed = condition.test(pendingUsers, pendingGroups);
+            }
+
+            return !needed || writePending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void init() {
+        backing.init();
+        setAcceptingLogins(backing.isAcceptingLogins());
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+        flush();
+        backing.shutdown();
+    }
+
+    @Override
+    public Map<String, String> getMeta() {
+        Map<String, String> meta = new LinkedHashMap<>(backing.getMeta());
+        synchronized (pending) {
+            meta.put("Pending Saves", Integer.toString(pendingUsers.size() + pendingGroups.size()));
+        }
+        return meta;
+    }
+
+    @Override
+    public boolean logAction(LogEntry entry) {
+        return backing.logAction(entry);
+    }
+
+    @Override
+    public boolean logActions(Collection<LogEntry> entries) {
+        return backing.logActions(entries);
+    }
+
+    @Override
+    public Log getLog() {
+        return backing.getLog();
+    }
+
+    @Override
+    public int getLogCount(LogFilter filter) {
+        return backing.getLogCount(filter);
+    }
+
+    @Override
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        return backing.getLogEntries(filter, newestFirst, offset, limit);
+    }
+
+    @Override
+    public List<Change> pollChanges() {
+        return backing.pollChanges();
+    }
+
+    @Override
+    public boolean loadUser(UUID uuid, String username) {
+        if (!flushIf((users, groups) -> users.containsKey(uuid))) {
+            return false;
+        }
+        return backing.loadUser(uuid, username);
+    }
+
+    @Override
+    public boolean loadUsers(Collection<UUID> uuids) {
+        if (!flushIf((users, groups) -> uuids.stream().anyMatch(users::containsKey))) {
+            return false;
+        }
+        return backing.loadUsers(uuids);
+    }
+
+    @Override
+    public boolean saveUser(User user) {
+        synchronized (pending) {
+            pendingUsers.put(user.getUuid(), user);
+            if (scheduleFlush()) {
+                return true;
+            }
+            pendingUsers.remove(user.getUuid());
+        }
+
+        return backing.saveUser(user);
+    }
+
+    @Override
+    public boolean saveUsers(Collection<User> users) {
+        boolean success = true;
+        for (User user : users) {
+            if (!saveUser(user)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean cleanupUsers() {
+        flushIf((users, groups) -> !users.isEmpty());
+        return backing.cleanupUsers();
+    }
+
+    @Override
+    public Set<UUID> getUniqueUsers() {
+        flushIf((users, groups) -> !users.isEmpty());
+        return backing.getUniqueUsers();
+    }
+
+    @Override
+    public boolean forEachUniqueUserPage(int pageSize, Predicate<List<UUID>> consumer) {
+        flushIf((users, groups) -> !users.isEmpty());
+        return backing.forEachUniqueUserPage(pageSize, consumer);
+    }
+
+    @Override
+    public Set<UUID> getUsersWithPermission(String permission) {
+        flushIf((users, groups) -> !users.isEmpty());
+        return backing.getUsersWithPermission(permission);
+    }
+
+    @Override
+    public boolean createAndLoadGroup(String name) {
+        if (!flushIf((users, groups) -> groups.containsKey(name))) {
+            return false;
+        }
+        return backing.createAndLoadGroup(name);
+    }
+
+    @Override
+    public boolean loadGroup(String name) {
+        if (!flushIf((users, groups) -> groups.containsKey(name))) {
+            return false;
+        }
+        return backing.loadGroup(name);
+    }
+
+    @Override
+    public boolean loadAllGroups() {
+        if (!flushIf((users, groups) -> !groups.isEmpty())) {
+            return false;
+        }
+        return backing.loadAllGroups();
+    }
+
+    @Override
+    public boolean saveGroup(Group group) {
+        synchronized (pending) {
+            pendingGroups.put(group.getName(), group);
+            if (scheduleFlush()) {
+                return true;
+            }
+            pendingGroups.remove(group.getName());
+        }
+
+        return backing.saveGroup(group);
+    }
+
+    @Override
+    public boolean saveGroups(Collection<Group> groups) {
+        boolean success = true;
+        for (Group group : groups) {
+            if (!saveGroup(group)) {
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean deleteGroup(Group group) {
+        // Hold the lock until the group is deleted, so a delayed save can't be written afterwards.
+        flushLock.lock();
+        try {
+            synchronized (pending) {
+                pendingGroups.remove(group.getName());
+            }
+            return backing.deleteGroup(group);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean createAndLoadTrack(String name) {
+        return backing.createAndLoadTrack(name);
+    }
+
+    @Override
+    public boolean loadTrack(String name) {
+        return backing.loadTrack(name);
+    }
+
+    @Override
+    public boolean loadAllTracks() {
+        return backing.loadAllTracks();
+    }
+
+    @Override
+    public boolean saveTrack(Track track) {
+        return backing.saveTrack(track);
+    }
+
+    @Override
+    public boolean deleteTrack(Track track) {
+        return backing.deleteTrack(track);
+    }
+
+    @Override
+    public boolean saveUUIDData(String username, UUID uuid) {
+        return backing.saveUUIDData(username, uuid);
+    }
+
+    @Override
+    public UUID getUUID(String username) {
+        return backing.getUUID(username);
+    }
+
+    @Override
+    public String getName(UUID uuid) {
+        return backing.getName(uuid);
+    }
+
+    @FunctionalInterface
+    private interface PendingCondition {
+        boolean test(Map<UUID, User> users, Map<String, Group> groups);
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage.methods;
+
+import lombok.Getter;
+import me.lucko.luckperms.storage.Change;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the position of a datastore instance in a change feed shared with other servers.
+ *
+ * <p>Changes are read by id, but an id can become visible after a higher one if the write that claimed it commits
+ * later. So each poll also reads back the changes written in the last {@link #GRACE_PERIOD} seconds, skipping those
+ * already seen.</p>
+ */
+class ChangeFeed {
+
+    /**
+     * How long changes are kept for, in seconds. Servers which haven't polled for half of this reload everything.
+     */
+    static final long RETENTION = TimeUnit.HOURS.toSeconds(6);
+    private static final long GRACE_PERIOD = 60L;
+
+    /**
+     * Written with each change, so this instance can skip its own changes
+     */
+    @Getter
+    private final String origin = UUID.randomUUID().toString();
+
+    /**
+     * The highest id read so far, or -1 if the position in the feed is unknown
+     */
+    @Getter
+    private long cursor = -1L;
+
+    private long lastPoll = 0L;
+
+    /**
+     * The ids read which were written within the grace period, mapped to the time they were written
+     */
+    private final Map<Long, Long> recent = new HashMap<>();
+
+    static long now() {
+        return System.currentTimeMillis() / 1000L;
+    }
+
+    synchronized boolean isStarted() {
+        return cursor != -1L;
+    }
+
+    /**
+     * Starts reading the feed after a change
+     * @param latestId the id of the latest change, or 0 if the feed is empty
+     */
+    synchronized void start(long latestId) {
+        cursor = latestId;
+        lastPoll = now();
+        recent.clear();
+    }
+
+    /**
+     * Gets the earliest time of the changes which have to be read back by the next poll
+     */
+    synchronized long getWindowStart() {
+        return lastPoll - GRACE_PERIOD;
+    }
+
+    /**
+     * Checks if changes may have been removed from the feed before they were read
+     */
+    synchronized boolean isExpired() {
+        return now() - lastPoll > RETENTION / 2;
+    }
+
+    /**
+     * Moves past the changes read by a poll
+     * @param changes the changes with an id above the cursor, or written since the window start
+     * @return the changes not already read, which were written by other datastore instances
+     */
+    synchronized List<Change> accept(List<Change> changes) {
+        long now = now();
+        List<Change> unread = changes.stream()
+                .filter(c -> !recent.containsKey(c.getId()))
+                .collect(Collectors.toList());
+
+        for (Change change : changes) {
+            cursor = Math.max(cursor, change.getId());
+            recent.put(change.getId(), change.getTime());
+        }
+        recent.values().removeIf(time -> time < now - GRACE_PERIOD);
+        lastPoll = now;
+
+        return unread.stream()
+                .filter(c -> !c.getOrigin().equals(origin))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage.methods;
+
+import me.lucko.luckperms.api.LogEntry;
+import me.lucko.luckperms.api.Logger;
+import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Stores the action log of flatfile datastores as a series of append-only segment files.
+ *
+ * <p>Each segment is a pair of files. The ".dat" file holds the entries as records with a fixed size header (the
+ * length of the record body and its timestamp), followed by the body. The ".idx" file holds a fixed size entry for
+ * each record, with its offset, timestamp, type and the hashes of its actor and acted object. Filters are matched
+ * against the index, so only the records of matching entries are read. A new segment is started once the current
+ * one reaches {@link #MAX_SEGMENT_SIZE}.</p>
+ *
+ * <p>Entries are kept in the order they were written. Segments are read through memory mapped buffers.</p>
+ *
+ * <p>The log can't be read or written to until it has been opened successfully, so a failure to read the existing
+ * segments never leads to them being overwritten.</p>
+ */
+class FlatfileActionLog {
+    private static final long MAX_SEGMENT_SIZE = 16L * 1024 * 1024;
+
+    private static final int RECORD_HEADER_SIZE = 12;
+
+    // offset (8), timestamp (8), record length (4), actor hash (4), acted hash (4), acted name hash (4), type (2), padding (6)
+    private static final int INDEX_ENTRY_SIZE = 40;
+
+    private final Logger log;
+    private final File dir;
+    private final List<Segment> segments = new ArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by "lock"
+    private boolean opened = false;
+
+    FlatfileActionLog(Logger log, File dir) {
+        this.log = log;
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the existing segments, discarding any partly written entries at the end of them
+     * @return true if the segments were opened successfully
+     */
+    boolean open() {
+        lock.writeLock().lock();
+        try {
+            opened = false;
+            segments.clear();
+
+            dir.mkdirs();
+            File[] files = dir.listFiles((d, name) -> name.endsWith(".dat"));
+            if (files == null) {
+                return false;
+            }
+
+            for (File file : files) {
+                int id = parseSegmentId(file.getName());
+                if (id <= 0) {
+                    log.warn("Ignoring unexpected file in the action log directory: " + file.getName());
+                    continue;
+                }
+
+                Segment segment = new Segment(id);
+                segment.recover();
+                segments.add(segment);
+            }
+            segments.sort(Comparator.comparingInt(segment -> segment.id));
+
+            opened = true;
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Appends entries to the end of the log
+     * @param entries the entries to write
+     * @return true if the entries were written successfully
+     */
+    boolean append(Collection<LogEntry> entries) {
+        lock.writeLock().lock();
+        try {
+            if (!opened) {
+                return false;
+            }
+
+            Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (segment == null || segment.dataSize >= MAX_SEGMENT_SIZE) {
+                segment = new Segment(segment == null ? 1 : segment.id + 1);
+                segments.add(segment);
+            }
+
+            List<ByteBuffer> records = new ArrayList<>(entries.size());
+            int size = 0;
+            for (LogEntry entry : entries) {
+                ByteBuffer record = encode(entry);
+                records.add(record);
+                size += record.remaining();
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(size);
+            ByteBuffer index = ByteBuffer.allocate(records.size() * INDEX_ENTRY_SIZE);
+            Iterator<LogEntry> it = entries.iterator();
+            for (ByteBuffer record : records) {
+                LogEntry entry = it.next();
+                index.putLong(segment.dataSize + data.position())
+                        .putLong(entry.getTimestamp())
+                        .putInt(record.remaining())
+                        .putInt(entry.getActor().hashCode())
+                        .putInt(entry.getActed() == null ? 0 : entry.getActed().hashCode())
+                        .putInt(entry.getActedName().hashCode())
+                        .putChar(entry.getType())
+                        .put(new byte[6]);
+                data.put(record);
+            }
+            data.flip();
+            index.flip();
+
+            // The records are written before their index entries, so an index entry never points past the data.
+            segment.write(data, index, records.size());
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    Log getLog() {
+        Log.Builder log = Log.builder();
+        List<LogEntry> entries = getEntries(LogFilter.all(), false, 0, Integer.MAX_VALUE);
+        if (entries == null) {
+            return null;
+        }
+        entries.forEach(log::add);
+        return log.build();
+    }
+
+    /**
+     * Counts the entries matching a filter
+     * @return the count, or -1 if the log could not be read
+     */
+    int count(LogFilter filter) {
+        lock.readLock().lock();
+        try {
+            if (!opened) {
+                return -1;
+            }
+
+            int count = 0;
+            for (Segment segment : segments) {
+                if (isUnfiltered(filter)) {
+                    count += segment.count;
+                    continue;
+                }
+
+                ByteBuffer index = segment.index();
+                ByteBuffer data = segment.data();
+                for (int i = 0; i < segment.count; i++) {
+                    if (matches(filter, index, data, i * INDEX_ENTRY_SIZE)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets a range of the entries matching a filter
+     * @param filter the filter
+     * @param newestFirst if the entries should be counted from the end of the log, rather than the start
+     * @param offset the number of matching entries to skip
+     * @param limit the maximum number of entries to return
+     * @return the entries, in the order given by newestFirst, or null if the log could not be read
+     */
+    List<LogEntry> getEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        lock.readLock().lock();
+        try {
+            if (!opened) {
+                return null;
+            }
+
+            List<LogEntry> entries = new ArrayList<>();
+            int skip = offset;
+            for (int s = 0; s < segments.size() && entries.size() < limit; s++) {
+                Segment segment = segments.get(newestFirst ? segments.size() - 1 - s : s);
+
+                // Without conditions to check, whole segments can be skipped, and the first entry of the page found
+                // directly.
+                if (isUnfiltered(filter) && skip >= segment.count) {
+                    skip -= segment.count;
+                    continue;
+                }
+
+                ByteBuffer index = segment.index();
+                ByteBuffer data = segment.data();
+                int i = isUnfiltered(filter) ? skip : 0;
+                if (isUnfiltered(filter)) {
+                    skip = 0;
+                }
+
+                for (; i < segment.count && entries.size() < limit; i++) {
+                    int position = (newestFirst ? segment.count - 1 - i : i) * INDEX_ENTRY_SIZE;
+                    if (!matches(filter, index, data, position)) {
+                        continue;
+                    }
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    entries.add(decode(data, (int) index.getLong(position)));
+                }
+            }
+            return entries;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void close() {
+        lock.writeLock().lock();
+        try {
+            opened = false;
+            segments.forEach(Segment::unmap);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the id of a segment from the name of its data file
+     * @return the id, or -1 if the name isn't one written by this class
+     */
+    private static int parseSegmentId(String fileName) {
+        String name = fileName.substring(0, fileName.length() - 4);
+        int id;
+        try {
+            id = Integer.parseInt(name);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+
+        // Segment files are always named with their zero padded id, so anything else would be a different file.
+        return id > 0 && String.format("%06d", id).equals(name) ? id : -1;
+    }
+
+    private static boolean isUnfiltered(LogFilter filter) {
+        return filter.getActor() == null && filter.getType() == null && filter.getActed() == null &&
+                filter.getActedName() == null && filter.getSearch() == null &&
+                filter.getAfter() <= 0L && filter.getBefore() == Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks the index entry at a position against a filter, only reading the record if the index can't rule it out
+     */
+    private static boolean matches(LogFilter filter, ByteBuffer index, ByteBuffer data, int position) {
+        long timestamp = index.getLong(position + 8);
+        if (timestamp < filter.getAfter() || timestamp >= filter.getBefore()) {
+            return false;
+        }
+        if (filter.getType() != null && filter.getType() != index.getChar(position + 32)) {
+            return false;
+        }
+        if (filter.getActor() != null && filter.getActor().hashCode() != index.getInt(position + 20)) {
+            return false;
+        }
+        if (filter.getActed() != null && filter.getActed().hashCode() != index.getInt(position + 24)) {
+            return false;
+        }
+        if (filter.getActedName() != null && filter.getActedName().hashCode() != index.getInt(position + 28)) {
+            return false;
+        }
+
+        // Hashes can collide, and there's no index for searches.
+        if (filter.getActor() == null && filter.getActed() == null && filter.getActedName() == null && filter.getSearch() == null) {
+            return true;
+        }
+        return filter.matches(decode(data, (int) index.getLong(position)));
+    }
+
+    private static ByteBuffer encode(LogEntry entry) {
+        byte[] actorName = entry.getActorName().getBytes(StandardCharsets.UTF_8);
+        byte[] actedName = entry.getActedName().getBytes(StandardCharsets.UTF_8);
+        byte[] action = entry.getAction().getBytes(StandardCharsets.UTF_8);
+
+        int bodySize = 16 + 2 + 1 + (entry.getActed() == null ? 0 : 16) + 12 + actorName.length + actedName.length + action.length;
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + bodySize);
+        buffer.putInt(bodySize).putLong(entry.getTimestamp());
+
+        buffer.putLong(entry.getActor().getMostSignificantBits()).putLong(entry.getActor().getLeastSignificantBits());
+        buffer.putChar(entry.getType());
+        if (entry.getActed() == null) {
+            buffer.put((byte) 0);
+        } else {
+            buffer.put((byte) 1);
+            buffer.putLong(entry.getActed().getMostSignificantBits()).putLong(entry.getActed().getLeastSignificantBits());
+        }
+        buffer.putInt(actorName.length).put(actorName);
+        buffer.putInt(actedName.length).put(actedName);
+        buffer.putInt(action.length).put(action);
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static LogEntry decode(ByteBuffer data, int offset) {
+        ByteBuffer buffer = data.duplicate();
+        buffer.position(offset + 4);
+
+        long timestamp = buffer.getLong();
+        UUID actor = new UUID(buffer.getLong(), buffer.getLong());
+        char type = buffer.getChar();
+        UUID acted = buffer.get() == 0 ? null : new UUID(buffer.getLong(), buffer.getLong());
+        String actorName = readString(buffer);
+        String actedName = readString(buffer);
+        String action = readString(buffer);
+        return new LogEntry(timestamp, actor, actorName, type, acted, actedName, action);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private final class Segment {
+        private final int id;
+        private final File dataFile;
+        private final File indexFile;
+
+        private long dataSize = 0L;
+        private int count = 0;
+
+        // Mapped on first read, and again after writes
+        private MappedByteBuffer data = null;
+        private MappedByteBuffer index = null;
+
+        private Segment(int id) {
+            this.id = id;
+            this.dataFile = new File(dir, String.format("%06d.dat", id));
+            this.indexFile = new File(dir, String.format("%06d.idx", id));
+        }
+
+        /**
+         * Reads the size of the segment, truncating records which were only partly written, and rebuilding the index
+         * if it is missing or behind the data file
+         */
+        private void recover() throws IOException {
+            try (FileChannel dataChannel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+                long fileSize = dataChannel.size();
+                count = (int) (indexChannel.size() / INDEX_ENTRY_SIZE);
+                dataSize = 0L;
+
+                // Drop index entries which point past the end of the data.
+                ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+                while (count > 0) {
+                    entry.clear();
+                    indexChannel.read(entry, (long) (count - 1) * INDEX_ENTRY_SIZE);
+                    long end = entry.getLong(0) + entry.getInt(16);
+                    if (end <= fileSize) {
+                        dataSize = end;
+                        break;
+                    }
+                    count--;
+                }
+
+                // Index records written after the last index entry.
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+                ByteBuffer missing = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+                while (dataSize + RECORD_HEADER_SIZE <= fileSize) {
+                    header.clear();
+                    dataChannel.read(header, dataSize);
+                    int length = RECORD_HEADER_SIZE + header.getInt(0);
+                    if (header.getInt(0) < 0 || dataSize + length > fileSize) {
+                        break;
+                    }
+
+                    ByteBuffer record = ByteBuffer.allocate(length);
+                    dataChannel.read(record, dataSize);
+                    LogEntry e = decode(record, 0);
+
+                    missing.clear();
+                    missing.putLong(dataSize)
+                            .putLong(e.getTimestamp())
+                            .putInt(length)
+                            .putInt(e.getActor().hashCode())
+                            .putInt(e.getActed() == null ? 0 : e.getActed().hashCode())
+                            .putInt(e.getActedName().hashCode())
+                            .putChar(e.getType())
+                            .put(new byte[6]);
+                    missing.flip();
+                    indexChannel.write(missing, (long) count * INDEX_ENTRY_SIZE);
+
+                    dataSize += length;
+                    count++;
+                }
+
+                dataChannel.truncate(dataSize);
+                indexChannel.truncate((long) count * INDEX_ENTRY_SIZE);
+            }
+        }
+
+        private void write(ByteBuffer records, ByteBuffer indexEntries, int entries) throws IOException {
+            long size = records.remaining();
+            try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.position(dataSize);
+                while (records.hasRemaining()) {
+                    channel.write(records);
+                }
+            }
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.position((long) count * INDEX_ENTRY_SIZE);
+                while (indexEntries.hasRemaining()) {
+                    channel.write(indexEntries);
+                }
+            }
+
+            dataSize += size;
+            count += entries;
+            unmap();
+        }
+
+        private synchronized ByteBuffer data() throws IOException {
+            if (data == null) {
+                data = map(dataFile, dataSize);
+            }
+            return data;
+        }
+
+        private synchronized ByteBuffer index() throws IOException {
+            if (index == null) {
+                index = map(indexFile, (long) count * INDEX_ENTRY_SIZE);
+            }
+            return index;
+        }
+
+        private MappedByteBuffer map(File file, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+
+        private synchronized void unmap() {
+            data = null;
+            index = null;
+        }
+    }
+}
@@ -22,28 +22,35 @@
 
 package me.lucko.luckperms.storage.methods;
 
-import lombok.Cleanup;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.LogEntry;
-import me.lucko.luckperms.constants.Constants;
+import me.lucko.luckperms.core.Node;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
+import me.lucko.luckperms.storage.ActionLogWriter;
 import me.lucko.luckperms.storage.Datastore;
+import me.lucko.luckperms.users.User;
 
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.logging.*;
-import java.util.logging.Formatter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 abstract class FlatfileDatastore extends Datastore {
-    private static final String LOG_FORMAT = "%s(%s): [%s] %s(%s) --> %s";
+    private final ActionLogWriter actionLogWriter;
+    private final UserPermissionIndex userIndex = new UserPermissionIndex();
 
-    private final Logger actionLogger = Logger.getLogger("lp_actions");
-    private Map<String, String> uuidCache = new ConcurrentHashMap<>();
+    /**
+     * When the loaded user index was written, or -1 if it has to be rebuilt from the user files
+     */
+    private long userIndexTime = -1L;
 
     private final File pluginDir;
-    private File uuidData;
-    private File actionLog;
+    private UuidNameStore uuidCache;
+    private FlatfileActionLog actionLog;
+    private File userIndexFile;
     File usersDir;
     File groupsDir;
     File tracksDir;
@@ -51,6 +58,7 @@ abstract class FlatfileDatastore extends Datastore {
     FlatfileDatastore(LuckPermsPlugin plugin, String name, File pluginDir) {
         super(plugin, name);
         this.pluginDir = pluginDir;
+        this.actionLogWriter = new ActionLogWriter(plugin, this::logActions);
     }
 
     @Override
@@ -62,22 +70,18 @@ abstract class FlatfileDatastore extends Datastore {
             return;
         }
 
-        uuidCache.putAll(getUUIDCache());
+        uuidCache.load();
 
-        try {
-            FileHandler fh = new FileHandler(actionLog.getAbsolutePath(), 0, 1, true);
-            fh.setFormatter(new Formatter() {
-                @Override
-                public String format(LogRecord record) {
-                    return new Date(record.getMillis()).toString() + ": " + record.getMessage() + "\n";
-                }
-            });
-            actionLogger.addHandler(fh);
-            actionLogger.setUseParentHandlers(false);
-            actionLogger.setLevel(Level.ALL);
-            actionLogger.setFilter(record -> true);
-        } catch (Exception e) {
-            e.printStackTrace();
+        // The index is removed once read, and written again on shutdown. If the server stops without shutting down
+        // the datastore, the index is missing on the next start and gets rebuilt.
+        long indexTime = userIndexFile.lastModified();
+        if (userIndex.load(userIndexFile)) {
+            userIndexTime = indexTime;
+        }
+        userIndexFile.delete();
+
+        if (!actionLog.open()) {
+            plugin.getLog().severe("Error occurred whilst opening the action log. Actions will not be logged, and the log can't be viewed.");
         }
 
         cleanupUsers();
@@ -97,91 +101,154 @@ abstract class FlatfileDatastore extends Datastore {
         tracksDir = new File(data, "tracks");
         tracksDir.mkdir();
 
-        uuidData = new File(data, "uuidcache.txt");
+        File uuidData = new File(data, "uuidcache.txt");
         uuidData.createNewFile();
+        uuidCache = new UuidNameStore(uuidData, new File(data, "uuidcache.journal"));
+
+        actionLog = new FlatfileActionLog(plugin.getLog(), new File(data, "actions"));
 
-        actionLog = new File(data, "actions.log");
-        actionLog.createNewFile();
+        userIndexFile = new File(data, "user-index.json");
     }
 
     @Override
     public void shutdown() {
-        saveUUIDCache(uuidCache);
+        actionLogWriter.shutdown();
+        actionLog.close();
+        uuidCache.compact();
+        userIndex.save(userIndexFile);
+    }
+
+    @Override
+    public Set<UUID> getUsersWithPermission(String permission) {
+        return userIndex.getUsers(permission);
+    }
+
+    /**
+     * Gets the user files which need to be read when cleaning up users. If the user index was loaded, only files
+     * changed since it was written, and files of users which only hold the default group, are returned. Otherwise,
+     * every file is returned so that the index can be rebuilt.
+     * @param extension the extension of user files
+     * @return the files to read, or null if the users directory could not be listed
+     */
+    File[] getUserFilesToScan(String extension) {
+        File[] files = usersDir.listFiles((dir, name) -> name.endsWith(extension));
+        if (files == null || userIndexTime == -1L) {
+            return files;
+        }
+
+        Set<UUID> present = new HashSet<>();
+        List<File> toScan = new ArrayList<>();
+        for (File file : files) {
+            UUID uuid = getUserUuid(file, extension);
+            present.add(uuid);
+
+            if (file.lastModified() > userIndexTime || userIndex.getPermissions(uuid).equals(Collections.singleton("group.default"))) {
+                toScan.add(file);
+            }
+        }
+
+        // Files removed while the server was offline
+        userIndex.retain(present);
+        return toScan.toArray(new File[toScan.size()]);
+    }
+
+    static UUID getUserUuid(File file, String extension) {
+        String name = file.getName();
+        return UUID.fromString(name.substring(0, name.length() - extension.length()));
+    }
+
+    void indexUser(UUID uuid, Map<String, Boolean> nodes) {
+        Set<String> permissions = new HashSet<>();
+        for (String node : nodes.keySet()) {
+            permissions.add(Node.fromSerialisedNode(node, true).getPermission());
+        }
+        userIndex.update(uuid, permissions);
+    }
+
+    void indexUser(User user) {
+        userIndex.update(user.getUuid(), user.getNodes().stream()
+                .map(me.lucko.luckperms.api.Node::getPermission)
+                .collect(Collectors.toSet()));
+    }
+
+    void unindexUser(UUID uuid) {
+        userIndex.remove(uuid);
     }
 
     @Override
     public boolean logAction(LogEntry entry) {
-        actionLogger.info(String.format(LOG_FORMAT,
-                (entry.getActor().equals(Constants.getConsoleUUID()) ? "" : entry.getActor() + " "),
-                entry.getActorName(),
-                Character.toString(entry.getType()),
-                (entry.getActed() == null ? "" : entry.getActed().toString() + " "),
-                entry.getActedName(),
-                entry.getAction())
-        );
-        return true;
+        return actionLogWriter.submit(entry);
     }
 
     @Override
-    public Log getLog() {
-        // Flatfile doesn't support viewing log data from in-game. You can just read the file in a text editor.
-        return Log.builder().build();
+    public boolean logActions(Collection<LogEntry> entries) {
+        return actionLog.append(entries);
     }
 
-    private Map<String, String> getUUIDCache() {
-        Map<String, String> cache = new HashMap<>();
+    @Override
+    public boolean loadUsers(Collection<UUID> uuids) {
+        // Each user is stored in a separate file, so they can be read in parallel. Callers already running on the
+        // worker pool, such as the bulk editor, load their users in parallel themselves.
+        if (uuids.size() <= 1 || WorkerPool.isWorkerThread()) {
+            boolean success = true;
+            for (UUID uuid : uuids) {
+                success &= loadUser(uuid, "null");
+            }
+            return success;
+        }
 
         try {
-            @Cleanup FileReader fileReader = new FileReader(uuidData);
-            @Cleanup BufferedReader bufferedReader = new BufferedReader(fileReader);
-
-            Properties props = new Properties();
-            props.load(bufferedReader);
-            for (String key : props.stringPropertyNames()) {
-                cache.put(key, props.getProperty(key));
+            List<Future<Boolean>> results = new ArrayList<>(uuids.size());
+            for (UUID uuid : uuids) {
+                results.add(plugin.getWorkerPool().submit(() -> loadUser(uuid, "null")));
             }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+            boolean success = true;
+            for (Future<Boolean> result : results) {
+                try {
+                    success &= result.get();
+                } catch (ExecutionException e) {
+                    e.printStackTrace();
+                    success = false;
+                }
+            }
+            return success;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
         }
-        return cache;
     }
 
-    private void saveUUIDCache(Map<String, String> cache) {
-        try {
-            @Cleanup FileWriter fileWriter = new FileWriter(uuidData);
-            @Cleanup BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
+    @Override
+    public Log getLog() {
+        actionLogWriter.flush();
+        return actionLog.getLog();
+    }
 
-            Properties properties = new Properties();
-            properties.putAll(cache);
-            properties.store(bufferedWriter, null);
+    @Override
+    public int getLogCount(LogFilter filter) {
+        actionLogWriter.flush();
+        return actionLog.count(filter);
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    @Override
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        actionLogWriter.flush();
+        return actionLog.getEntries(filter, newestFirst, offset, limit);
     }
 
     @Override
     public boolean saveUUIDData(String username, UUID uuid) {
-        username = username.toLowerCase();
-        uuidCache.put(username, uuid.toString());
-        return true;
+        return uuidCache.save(username.toLowerCase(), uuid);
     }
 
     @Override
     public UUID getUUID(String username) {
-        username = username.toLowerCase();
-        if (uuidCache.get(username) == null) return null;
-        return UUID.fromString(uuidCache.get(username));
+        return uuidCache.getUuid(username.toLowerCase());
     }
 
     @Override
     public String getName(UUID uuid) {
-        for (Map.Entry<String, String> e : uuidCache.entrySet()) {
-            if (e.getValue().equalsIgnoreCase(uuid.toString())) {
-                return e.getKey();
-            }
-        }
-        return null;
+        return uuidCache.getName(uuid);
     }
 }
@@ -22,32 +22,56 @@
 
 package me.lucko.luckperms.storage.methods;
 
-import lombok.Cleanup;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.storage.DatastoreConfiguration;
 
 import java.io.File;
-import java.sql.*;
+import java.sql.Connection;
+import java.sql.SQLException;
 
 public class H2Datastore extends SQLDatastore {
 
     private static final String CREATETABLE_UUID = "CREATE TABLE IF NOT EXISTS `lp_uuid` (`name` VARCHAR(16) NOT NULL, `uuid` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
+    // Legacy, only read when migrating to lp_players and lp_user_permissions
     private static final String CREATETABLE_USERS = "CREATE TABLE IF NOT EXISTS `lp_users` (`uuid` VARCHAR(36) NOT NULL, `name` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, `perms` TEXT NOT NULL, PRIMARY KEY (`uuid`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_PLAYERS = "CREATE TABLE IF NOT EXISTS `lp_players` (`uuid` VARCHAR(36) NOT NULL, `username` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, PRIMARY KEY (`uuid`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_USER_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_user_permissions` (`id` INT AUTO_INCREMENT NOT NULL, `uuid` VARCHAR(36) NOT NULL, `permission` VARCHAR NOT NULL, `value` BOOL NOT NULL, `server` VARCHAR NOT NULL, `world` VARCHAR NOT NULL, `expiry` BIGINT NOT NULL, `contexts` VARCHAR NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_GROUP_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_group_permissions` (`id` INT AUTO_INCREMENT NOT NULL, `name` VARCHAR(36) NOT NULL, `permission` VARCHAR NOT NULL, `value` BOOL NOT NULL, `server` VARCHAR NOT NULL, `world` VARCHAR NOT NULL, `expiry` BIGINT NOT NULL, `contexts` VARCHAR NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATEINDEX_USER_PERMISSIONS_UUID = "CREATE INDEX IF NOT EXISTS `lp_user_permissions_uuid` ON `lp_user_permissions` (`uuid`);";
+    private static final String CREATEINDEX_USER_PERMISSIONS_PERMISSION = "CREATE INDEX IF NOT EXISTS `lp_user_permissions_permission` ON `lp_user_permissions` (`permission`);";
+    private static final String CREATEINDEX_GROUP_PERMISSIONS_NAME = "CREATE INDEX IF NOT EXISTS `lp_group_permissions_name` ON `lp_group_permissions` (`name`);";
+    private static final String CREATEINDEX_GROUP_PERMISSIONS_PERMISSION = "CREATE INDEX IF NOT EXISTS `lp_group_permissions_permission` ON `lp_group_permissions` (`permission`);";
     private static final String CREATETABLE_GROUPS = "CREATE TABLE IF NOT EXISTS `lp_groups` (`name` VARCHAR(36) NOT NULL, `perms` TEXT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
     private static final String CREATETABLE_TRACKS = "CREATE TABLE IF NOT EXISTS `lp_tracks` (`name` VARCHAR(36) NOT NULL, `groups` TEXT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
     private static final String CREATETABLE_ACTION = "CREATE TABLE IF NOT EXISTS `lp_actions` (`id` INT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(16) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(256) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_CHANGES = "CREATE TABLE IF NOT EXISTS `lp_changes` (`id` BIGINT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `origin` VARCHAR(36) NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
 
     private final File file;
-    private Connection connection = null;
-    private final Object connectionLock = new Object();
+    private final DatastoreConfiguration configuration;
+    private HikariDataSource hikari;
 
-    public H2Datastore(LuckPermsPlugin plugin, File file) {
+    public H2Datastore(LuckPermsPlugin plugin, File file, DatastoreConfiguration configuration) {
         super(plugin, "H2");
         this.file = file;
+        this.configuration = configuration;
     }
 
     @Override
     public void init() {
-        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_GROUPS, CREATETABLE_TRACKS, CREATETABLE_ACTION)) {
+        HikariConfig config = new HikariConfig();
+
+        // MVCC lets reads (e.g. the action log) run alongside writes, instead of waiting on a table lock.
+        // H2 caches prepared statements per connection, so each pooled connection reuses its own.
+        config.setMaximumPoolSize(configuration.getPoolSize());
+        config.setPoolName("luckperms");
+        config.setDriverClassName("org.h2.Driver");
+        config.setJdbcUrl("jdbc:h2:" + file.getAbsolutePath() + ";MVCC=TRUE;QUERY_CACHE_SIZE=64");
+
+        hikari = new HikariDataSource(config);
+
+        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_PLAYERS, CREATETABLE_USER_PERMISSIONS, CREATETABLE_GROUPS, CREATETABLE_GROUP_PERMISSIONS, CREATEINDEX_USER_PERMISSIONS_UUID, CREATEINDEX_USER_PERMISSIONS_PERMISSION, CREATEINDEX_GROUP_PERMISSIONS_NAME, CREATEINDEX_GROUP_PERMISSIONS_PERMISSION, CREATETABLE_TRACKS, CREATETABLE_ACTION, CREATETABLE_CHANGES)) {
             plugin.getLog().severe("Error occurred whilst initialising the database.");
             shutdown();
         } else {
@@ -56,68 +80,26 @@ public class H2Datastore extends SQLDatastore {
     }
 
     @Override
-    boolean runQuery(String query, QueryPS queryPS) {
-        boolean success = false;
-        try {
-            Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
-            }
-
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
-            queryPS.onRun(preparedStatement);
-            preparedStatement.execute();
-
-            success = true;
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return success;
+    String upsert(String table, String key, String... columns) {
+        return "MERGE INTO " + table + "(" + String.join(", ", columns) + ") KEY(" + key + ") VALUES" + placeholders(columns.length);
     }
 
     @Override
-    boolean runQuery(String query, QueryPS queryPS, QueryRS queryRS) {
-        boolean success = false;
-        try {
-            Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
-            }
-
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
-            queryPS.onRun(preparedStatement);
-
-            @Cleanup ResultSet resultSet = preparedStatement.executeQuery();
-            success = queryRS.onResult(resultSet);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return success;
+    String insertIfAbsent(String table, String key) {
+        // Only the key column is given, so an existing row is left unchanged.
+        return "MERGE INTO " + table + "(" + key + ") KEY(" + key + ") VALUES(?)";
     }
 
     @Override
     public void shutdown() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        actionLog.shutdown();
+        if (hikari != null) {
+            hikari.close();
         }
     }
 
     @Override
     Connection getConnection() throws SQLException {
-        synchronized (connectionLock) {
-            if (connection == null || connection.isClosed()) {
-                try {
-                    Class.forName("org.h2.Driver");
-                } catch (ClassNotFoundException ignored) {}
-
-                connection = DriverManager.getConnection("jdbc:h2:" + file.getAbsolutePath());
-            }
-        }
-
-        return connection;
+        return hikari.getConnection();
     }
 }
@@ -127,9 +127,11 @@ public class JSONDatastore extends FlatfileDatastore {
                                 return true;
                             });
                         }
+                        indexUser(user);
                         return true;
                     });
                 } else {
+                    unindexUser(uuid);
                     if (plugin.getUserManager().shouldSave(user)) {
                         user.clearNodes();
                         user.setPrimaryGroup(null);
@@ -154,6 +156,7 @@ public class JSONDatastore extends FlatfileDatastore {
                     if (userFile.exists()) {
                         userFile.delete();
                     }
+                    unindexUser(user.getUuid());
                     return true;
                 }
 
@@ -166,7 +169,7 @@ public class JSONDatastore extends FlatfileDatastore {
                     }
                 }
 
-                return doWrite(userFile, writer -> {
+                boolean success = doWrite(userFile, writer -> {
                     writer.beginObject();
                     writer.name("uuid").value(user.getUuid().toString());
                     writer.name("name").value(user.getName());
@@ -180,6 +183,11 @@ public class JSONDatastore extends FlatfileDatastore {
                     writer.endObject();
                     return true;
                 });
+
+                if (success) {
+                    indexUser(user);
+                }
+                return success;
             }, false);
         } finally {
             user.getIoLock().unlock();
@@ -189,7 +197,7 @@ public class JSONDatastore extends FlatfileDatastore {
     @Override
     public boolean cleanupUsers() {
         return call(() -> {
-            File[] files = usersDir.listFiles((dir, name1) -> name1.endsWith(".json"));
+            File[] files = getUserFilesToScan(".json");
             if (files == null) return false;
 
             for (File file : files) {
@@ -223,8 +231,12 @@ public class JSONDatastore extends FlatfileDatastore {
                     }
                 }
 
+                UUID uuid = getUserUuid(file, ".json");
                 if (shouldDelete) {
                     file.delete();
+                    unindexUser(uuid);
+                } else {
+                    indexUser(uuid, nodes);
                 }
             }
             return true;
@@ -28,12 +28,16 @@ import com.mongodb.ServerAddress;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.InsertOneOptions;
+import com.mongodb.client.model.*;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.LogEntry;
+import me.lucko.luckperms.api.Node;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.groups.GroupManager;
+import me.lucko.luckperms.storage.ActionLogWriter;
+import me.lucko.luckperms.storage.Change;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.storage.DatastoreConfiguration;
 import me.lucko.luckperms.tracks.Track;
@@ -41,23 +45,33 @@ import me.lucko.luckperms.tracks.TrackManager;
 import me.lucko.luckperms.users.User;
 import me.lucko.luckperms.users.UserIdentifier;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static me.lucko.luckperms.core.PermissionHolder.exportToLegacy;
 
 @SuppressWarnings("unchecked")
 public class MongoDBDatastore extends Datastore {
+    private static final int UUID_CACHE_SIZE = 10000;
+    // Other servers sharing the datastore may change a mapping, so cached entries are re-read after a while
+    private static final long UUID_CACHE_EXPIRY_MINUTES = 10L;
 
     private final DatastoreConfiguration configuration;
+    private final ActionLogWriter actionLog;
+    private final UuidNameCache uuidCache = new UuidNameCache(UUID_CACHE_SIZE, UUID_CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES);
+    private final ChangeFeed changeFeed = new ChangeFeed();
     private MongoClient mongoClient;
     private MongoDatabase database;
 
     public MongoDBDatastore(LuckPermsPlugin plugin, DatastoreConfiguration configuration) {
         super(plugin, "MongoDB");
         this.configuration = configuration;
+        this.actionLog = new ActionLogWriter(plugin, this::logActions);
     }
 
     @Override
@@ -75,11 +89,88 @@ public class MongoDBDatastore extends Datastore {
 
         mongoClient = new MongoClient(address, Collections.singletonList(credential));
         database = mongoClient.getDatabase(configuration.getDatabase());
+
+        if (!setupPermissionsIndex()) {
+            plugin.getLog().severe("Error occurred whilst indexing user permissions.");
+        }
+        if (!setupActionIndexes()) {
+            plugin.getLog().severe("Error occurred whilst indexing the action log.");
+        }
+        if (!setupChangeFeed()) {
+            plugin.getLog().severe("Error occurred whilst setting up the change feed.");
+        }
         setAcceptingLogins(true);
     }
 
+    /**
+     * Indexes the fields the action log is filtered and ordered by, and the names in the uuid cache
+     */
+    private boolean setupActionIndexes() {
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("action");
+            c.createIndex(Indexes.ascending("timestamp"));
+            c.createIndex(Indexes.ascending("actor"));
+            c.createIndex(Indexes.ascending("acted"));
+            c.createIndex(Indexes.ascending("type", "actedName"));
+
+            database.getCollection("uuid").createIndex(Indexes.ascending("name"));
+            return true;
+        }, false);
+    }
+
+    private boolean setupChangeFeed() {
+        return call(() -> {
+            database.getCollection("changes").createIndex(Indexes.ascending("time"));
+            return startChangeFeed();
+        }, false);
+    }
+
+    /**
+     * Starts reading the change feed after the latest change
+     */
+    private boolean startChangeFeed() {
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("counters");
+            try (MongoCursor<Document> cursor = c.find(new Document("_id", "changes")).iterator()) {
+                changeFeed.start(cursor.hasNext() ? ((Number) cursor.next().get("n")).longValue() : 0L);
+            }
+            return true;
+        }, false);
+    }
+
+    /**
+     * Indexes the permissions array of user documents, and fills it in for documents written before it existed
+     */
+    private boolean setupPermissionsIndex() {
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("users");
+            c.createIndex(Indexes.ascending("permissions"));
+
+            List<WriteModel<Document>> writes = new ArrayList<>();
+            try (MongoCursor<Document> cursor = c.find(Filters.exists("permissions", false)).iterator()) {
+                while (cursor.hasNext()) {
+                    Document d = cursor.next();
+                    Map<String, Boolean> perms = revert((Map<String, Boolean>) d.get("perms"));
+                    List<String> permissions = perms.entrySet().stream()
+                            .map(e -> me.lucko.luckperms.core.Node.fromSerialisedNode(e.getKey(), e.getValue()).getPermission())
+                            .distinct()
+                            .collect(Collectors.toList());
+
+                    writes.add(new UpdateOneModel<>(new Document("_id", d.get("_id")), new Document("$set", new Document("permissions", permissions))));
+                }
+            }
+
+            if (!writes.isEmpty()) {
+                plugin.getLog().info("Indexing the permissions of " + writes.size() + " users.");
+                c.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            }
+            return true;
+        }, false);
+    }
+
     @Override
     public void shutdown() {
+        actionLog.shutdown();
         if (mongoClient != null) {
             mongoClient.close();
         }
@@ -87,58 +178,128 @@ public class MongoDBDatastore extends Datastore {
 
     @Override
     public boolean logAction(LogEntry entry) {
+        return actionLog.submit(entry);
+    }
+
+    @Override
+    public boolean logActions(Collection<LogEntry> entries) {
         return call(() -> {
             MongoCollection<Document> c = database.getCollection("action");
 
-            Document doc = new Document()
-                    .append("timestamp", entry.getTimestamp())
-                    .append("actor", entry.getActor())
-                    .append("actorName", entry.getActorName())
-                    .append("type", Character.toString(entry.getType()))
-                    .append("actedName", entry.getActedName())
-                    .append("action", entry.getAction());
-
-            if (entry.getActed() != null) {
-                doc.append("acted", entry.getActed());
+            List<Document> docs = new ArrayList<>(entries.size());
+            for (LogEntry entry : entries) {
+                Document doc = new Document()
+                        .append("timestamp", entry.getTimestamp())
+                        .append("actor", entry.getActor())
+                        .append("actorName", entry.getActorName())
+                        .append("type", Character.toString(entry.getType()))
+                        .append("actedName", entry.getActedName())
+                        .append("action", entry.getAction());
+
+                if (entry.getActed() != null) {
+                    doc.append("acted", entry.getActed());
+                }
+                docs.add(doc);
             }
 
-            c.insertOne(doc, new InsertOneOptions());
+            c.insertMany(docs, new InsertManyOptions().ordered(true));
             return true;
         }, false);
     }
 
     @Override
     public Log getLog() {
+        actionLog.flush();
         return call(() -> {
             final Log.Builder log = Log.builder();
             MongoCollection<Document> c = database.getCollection("action");
 
             try (MongoCursor<Document> cursor = c.find().iterator()) {
                 while (cursor.hasNext()) {
-                    Document d = cursor.next();
+                    log.add(readLogEntry(cursor.next()));
+                }
+            }
 
-                    UUID actedUuid = null;
-                    if (d.containsKey("acted")) {
-                        actedUuid = d.get("acted", UUID.class);
-                    }
+            return log.build();
+        }, null);
+    }
+
+    @Override
+    public int getLogCount(LogFilter filter) {
+        actionLog.flush();
+        return call(() -> (int) database.getCollection("action").count(logQuery(filter)), -1);
+    }
 
-                    LogEntry e = new LogEntry(
-                            d.getLong("timestamp"),
-                            d.get("actor", UUID.class),
-                            d.getString("actorName"),
-                            d.getString("type").toCharArray()[0],
-                            actedUuid,
-                            d.getString("actedName"),
-                            d.getString("action")
-                    );
-                    log.add(e);
+    @Override
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        actionLog.flush();
+        return call(() -> {
+            List<LogEntry> entries = new ArrayList<>();
+            MongoCollection<Document> c = database.getCollection("action");
+
+            try (MongoCursor<Document> cursor = c.find(logQuery(filter))
+                    .sort(newestFirst ? Sorts.descending("timestamp", "_id") : Sorts.ascending("timestamp", "_id"))
+                    .skip(offset)
+                    .limit(limit)
+                    .iterator()) {
+                while (cursor.hasNext()) {
+                    entries.add(readLogEntry(cursor.next()));
                 }
             }
 
-            return log.build();
+            return entries;
         }, null);
     }
 
+    private static Bson logQuery(LogFilter filter) {
+        List<Bson> conditions = new ArrayList<>();
+        if (filter.getActor() != null) {
+            conditions.add(Filters.eq("actor", filter.getActor()));
+        }
+        if (filter.getType() != null) {
+            conditions.add(Filters.eq("type", filter.getType().toString()));
+        }
+        if (filter.getActed() != null) {
+            conditions.add(Filters.eq("acted", filter.getActed()));
+        }
+        if (filter.getActedName() != null) {
+            conditions.add(Filters.eq("actedName", filter.getActedName()));
+        }
+        if (filter.getSearch() != null) {
+            String pattern = Pattern.quote(filter.getSearch());
+            conditions.add(Filters.or(
+                    Filters.regex("actorName", pattern, "i"),
+                    Filters.regex("actedName", pattern, "i"),
+                    Filters.regex("action", pattern, "i")
+            ));
+        }
+        if (filter.getAfter() > 0L) {
+            conditions.add(Filters.gte("timestamp", filter.getAfter()));
+        }
+        if (filter.getBefore() != Long.MAX_VALUE) {
+            conditions.add(Filters.lt("timestamp", filter.getBefore()));
+        }
+
+        return conditions.isEmpty() ? new Document() : Filters.and(conditions);
+    }
+
+    private static LogEntry readLogEntry(Document d) {
+        UUID actedUuid = null;
+        if (d.containsKey("acted")) {
+            actedUuid = d.get("acted", UUID.class);
+        }
+
+        return new LogEntry(
+                d.getLong("timestamp"),
+                d.get("actor", UUID.class),
+                d.getString("actorName"),
+                d.getString("type").toCharArray()[0],
+                actedUuid,
+                d.getString("actedName"),
+                d.getString("action")
+        );
+    }
+
     @Override
     public boolean loadUser(UUID uuid, String username) {
         User user = plugin.getUserManager().getOrMake(UserIdentifier.of(uuid, username));
@@ -150,29 +311,11 @@ public class MongoDBDatastore extends Datastore {
                 try (MongoCursor<Document> cursor = c.find(new Document("_id", user.getUuid())).iterator()) {
                     if (cursor.hasNext()) {
                         // User exists, let's load.
-                        Document d = cursor.next();
-                        user.setNodes(revert((Map<String, Boolean>) d.get("perms")));
-                        user.setPrimaryGroup(d.getString("primaryGroup"));
-
-                        boolean save = plugin.getUserManager().giveDefaultIfNeeded(user, false);
-
-                        if (user.getName().equalsIgnoreCase("null")) {
-                            user.setName(d.getString("name"));
-                        } else {
-                            if (!d.getString("name").equals(user.getName())) {
-                                save = true;
-                            }
-                        }
-
-                        if (save) {
+                        if (loadUserData(user, cursor.next())) {
                             c.replaceOne(new Document("_id", user.getUuid()), fromUser(user));
                         }
                     } else {
-                        if (plugin.getUserManager().shouldSave(user)) {
-                            user.clearNodes();
-                            user.setPrimaryGroup(null);
-                            plugin.getUserManager().giveDefaultIfNeeded(user, false);
-                        }
+                        clearUserData(user);
                     }
                 }
                 return true;
@@ -183,6 +326,95 @@ public class MongoDBDatastore extends Datastore {
         }
     }
 
+    @Override
+    public boolean loadUsers(Collection<UUID> uuids) {
+        Map<UUID, User> users = new LinkedHashMap<>();
+        for (UUID uuid : uuids) {
+            users.put(uuid, plugin.getUserManager().getOrMake(UserIdentifier.of(uuid, "null")));
+        }
+
+        try {
+            return call(() -> {
+                MongoCollection<Document> c = database.getCollection("users");
+                Set<UUID> found = new HashSet<>();
+                List<WriteModel<Document>> toSave = new ArrayList<>();
+
+                Document query = new Document("_id", new Document("$in", new ArrayList<>(users.keySet())));
+                try (MongoCursor<Document> cursor = c.find(query).iterator()) {
+                    while (cursor.hasNext()) {
+                        Document d = cursor.next();
+                        UUID uuid = d.get("_id", UUID.class);
+                        User user = users.get(uuid);
+                        if (user == null || !found.add(uuid)) {
+                            continue;
+                        }
+
+                        user.getIoLock().lock();
+                        try {
+                            if (loadUserData(user, d)) {
+                                toSave.add(new ReplaceOneModel<>(new Document("_id", user.getUuid()), fromUser(user)));
+                            }
+                        } finally {
+                            user.getIoLock().unlock();
+                        }
+                    }
+                }
+
+                for (Map.Entry<UUID, User> e : users.entrySet()) {
+                    if (found.contains(e.getKey())) {
+                        continue;
+                    }
+
+                    User user = e.getValue();
+                    user.getIoLock().lock();
+                    try {
+                        clearUserData(user);
+                    } finally {
+                        user.getIoLock().unlock();
+                    }
+                }
+
+                if (!toSave.isEmpty()) {
+                    c.bulkWrite(toSave, new BulkWriteOptions().ordered(false));
+                }
+                return true;
+            }, false);
+        } finally {
+            users.values().forEach(User::refreshPermissions);
+        }
+    }
+
+    /**
+     * Applies the data from a user document
+     * @param user the user to load into
+     * @param d the document
+     * @return true if the stored document should be updated
+     */
+    private boolean loadUserData(User user, Document d) {
+        user.setNodes(revert((Map<String, Boolean>) d.get("perms")));
+        user.setPrimaryGroup(d.getString("primaryGroup"));
+
+        boolean save = plugin.getUserManager().giveDefaultIfNeeded(user, false);
+
+        if (user.getName().equalsIgnoreCase("null")) {
+            user.setName(d.getString("name"));
+        } else {
+            if (!d.getString("name").equals(user.getName())) {
+                save = true;
+            }
+        }
+
+        return save;
+    }
+
+    private void clearUserData(User user) {
+        if (plugin.getUserManager().shouldSave(user)) {
+            user.clearNodes();
+            user.setPrimaryGroup(null);
+            plugin.getUserManager().giveDefaultIfNeeded(user, false);
+        }
+    }
+
     @Override
     public boolean saveUser(User user) {
         if (!plugin.getUserManager().shouldSave(user)) {
@@ -191,7 +423,7 @@ public class MongoDBDatastore extends Datastore {
                 return call(() -> {
                     MongoCollection<Document> c = database.getCollection("users");
                     return c.deleteOne(new Document("_id", user.getUuid())).wasAcknowledged();
-                }, false);
+                }, false) && recordChanges(Change.USER, Collections.singletonList(user.getObjectName()));
             } finally {
                 user.getIoLock().unlock();
             }
@@ -209,12 +441,39 @@ public class MongoDBDatastore extends Datastore {
                     }
                 }
                 return true;
-            }, false);
+            }, false) && recordChanges(Change.USER, Collections.singletonList(user.getObjectName()));
         } finally {
             user.getIoLock().unlock();
         }
     }
 
+    @Override
+    public boolean saveUsers(Collection<User> users) {
+        if (users.isEmpty()) {
+            return true;
+        }
+
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("users");
+
+            List<WriteModel<Document>> writes = new ArrayList<>();
+            for (User user : users) {
+                user.getIoLock().lock();
+                try {
+                    if (plugin.getUserManager().shouldSave(user)) {
+                        writes.add(new ReplaceOneModel<>(new Document("_id", user.getUuid()), fromUser(user), new UpdateOptions().upsert(true)));
+                    } else {
+                        writes.add(new DeleteOneModel<>(new Document("_id", user.getUuid())));
+                    }
+                } finally {
+                    user.getIoLock().unlock();
+                }
+            }
+
+            return c.bulkWrite(writes, new BulkWriteOptions().ordered(false)).wasAcknowledged();
+        }, false) && recordChanges(Change.USER, users.stream().map(User::getObjectName).collect(Collectors.toList()));
+    }
+
     @Override
     public boolean cleanupUsers() {
         return true; // TODO
@@ -239,6 +498,24 @@ public class MongoDBDatastore extends Datastore {
         return success ? uuids : null;
     }
 
+    @Override
+    public Set<UUID> getUsersWithPermission(String permission) {
+        Set<UUID> uuids = new HashSet<>();
+        boolean success = call(() -> {
+            MongoCollection<Document> c = database.getCollection("users");
+
+            try (MongoCursor<Document> cursor = c.find(Filters.eq("permissions", permission)).projection(Projections.include("_id")).iterator()) {
+                while (cursor.hasNext()) {
+                    uuids.add(cursor.next().get("_id", UUID.class));
+                }
+            }
+
+            return true;
+        }, false);
+
+        return success ? uuids : null;
+    }
+
     @Override
     public boolean createAndLoadGroup(String name) {
         Group group = plugin.getGroupManager().getOrMake(name);
@@ -254,6 +531,7 @@ public class MongoDBDatastore extends Datastore {
                         group.setNodes(revert((Map<String, Boolean>) d.get("perms")));
                     } else {
                         c.insertOne(fromGroup(group));
+                        return recordChanges(Change.GROUP, Collections.singletonList(group.getName()));
                     }
                 }
                 return true;
@@ -320,12 +598,35 @@ public class MongoDBDatastore extends Datastore {
             return call(() -> {
                 MongoCollection<Document> c = database.getCollection("groups");
                 return c.replaceOne(new Document("_id", group.getName()), fromGroup(group)).wasAcknowledged();
-            }, false);
+            }, false) && recordChanges(Change.GROUP, Collections.singletonList(group.getName()));
         } finally {
             group.getIoLock().unlock();
         }
     }
 
+    @Override
+    public boolean saveGroups(Collection<Group> groups) {
+        if (groups.isEmpty()) {
+            return true;
+        }
+
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("groups");
+
+            List<WriteModel<Document>> writes = new ArrayList<>();
+            for (Group group : groups) {
+                group.getIoLock().lock();
+                try {
+                    writes.add(new ReplaceOneModel<>(new Document("_id", group.getName()), fromGroup(group)));
+                } finally {
+                    group.getIoLock().unlock();
+                }
+            }
+
+            return c.bulkWrite(writes, new BulkWriteOptions().ordered(false)).wasAcknowledged();
+        }, false) && recordChanges(Change.GROUP, groups.stream().map(Group::getName).collect(Collectors.toList()));
+    }
+
     @Override
     public boolean deleteGroup(Group group) {
         group.getIoLock().lock();
@@ -334,7 +635,7 @@ public class MongoDBDatastore extends Datastore {
             success = call(() -> {
                 MongoCollection<Document> c = database.getCollection("groups");
                 return c.deleteOne(new Document("_id", group.getName())).wasAcknowledged();
-            }, false);
+            }, false) && recordChanges(Change.GROUP, Collections.singletonList(group.getName()));
         } finally {
             group.getIoLock().unlock();
         }
@@ -354,6 +655,7 @@ public class MongoDBDatastore extends Datastore {
                 try (MongoCursor<Document> cursor = c.find(new Document("_id", track.getName())).iterator()) {
                     if (!cursor.hasNext()) {
                         c.insertOne(fromTrack(track));
+                        return recordChanges(Change.TRACK, Collections.singletonList(track.getName()));
                     } else {
                         Document d = cursor.next();
                         track.setGroups((List<String>) d.get("groups"));
@@ -423,7 +725,7 @@ public class MongoDBDatastore extends Datastore {
             return call(() -> {
                 MongoCollection<Document> c = database.getCollection("tracks");
                 return c.replaceOne(new Document("_id", track.getName()), fromTrack(track)).wasAcknowledged();
-            }, false);
+            }, false) && recordChanges(Change.TRACK, Collections.singletonList(track.getName()));
         } finally {
             track.getIoLock().unlock();
         }
@@ -437,7 +739,7 @@ public class MongoDBDatastore extends Datastore {
             success = call(() -> {
                 MongoCollection<Document> c = database.getCollection("tracks");
                 return c.deleteOne(new Document("_id", track.getName())).wasAcknowledged();
-            }, false);
+            }, false) && recordChanges(Change.TRACK, Collections.singletonList(track.getName()));
         } finally {
             track.getIoLock().unlock();
         }
@@ -447,30 +749,100 @@ public class MongoDBDatastore extends Datastore {
     }
 
     @Override
-    public boolean saveUUIDData(String username, UUID uuid) {
-        return call(() -> {
-            MongoCollection<Document> c = database.getCollection("uuid");
+    public List<Change> pollChanges() {
+        if (!changeFeed.isStarted()) {
+            startChangeFeed();
+            return null;
+        }
 
-            try (MongoCursor<Document> cursor = c.find(new Document("_id", uuid)).iterator()) {
-                if (cursor.hasNext()) {
-                    c.replaceOne(new Document("_id", uuid), new Document("_id", uuid).append("name", username.toLowerCase()));
-                } else {
-                    c.insertOne(new Document("_id", uuid).append("name", username.toLowerCase()));
+        boolean expired = changeFeed.isExpired();
+        List<Change> changes = call(() -> {
+            MongoCollection<Document> c = database.getCollection("changes");
+
+            List<Change> read = new ArrayList<>();
+            Bson query = Filters.or(Filters.gt("_id", changeFeed.getCursor()), Filters.gte("time", changeFeed.getWindowStart()));
+            try (MongoCursor<Document> cursor = c.find(query).sort(Sorts.ascending("_id")).iterator()) {
+                while (cursor.hasNext()) {
+                    Document d = cursor.next();
+                    read.add(new Change(
+                            ((Number) d.get("_id")).longValue(),
+                            ((Number) d.get("time")).longValue(),
+                            d.getString("origin"),
+                            d.getString("type").charAt(0),
+                            d.getString("name")
+                    ));
                 }
             }
 
+            c.deleteMany(Filters.lt("time", ChangeFeed.now() - ChangeFeed.RETENTION));
+            return read;
+        }, null);
+
+        if (changes == null) {
+            return null;
+        }
+
+        List<Change> unread = changeFeed.accept(changes);
+        return expired ? null : unread;
+    }
+
+    private boolean recordChanges(char type, Collection<String> names) {
+        if (names.isEmpty()) {
+            return true;
+        }
+
+        return call(() -> {
+            // Claim a block of ids from the counter, so the feed can be read in the order changes were made.
+            Document counter = database.getCollection("counters").findOneAndUpdate(
+                    new Document("_id", "changes"),
+                    new Document("$inc", new Document("n", (long) names.size())),
+                    new FindOneAndUpdateOptions().upsert(true).returnDocument(ReturnDocument.AFTER)
+            );
+
+            long id = ((Number) counter.get("n")).longValue() - names.size();
+            long time = ChangeFeed.now();
+            List<Document> changes = new ArrayList<>();
+            for (String name : names) {
+                changes.add(new Document("_id", ++id)
+                        .append("time", time)
+                        .append("origin", changeFeed.getOrigin())
+                        .append("type", Character.toString(type))
+                        .append("name", name)
+                );
+            }
+
+            database.getCollection("changes").insertMany(changes);
+            return true;
+        }, false);
+    }
+
+    @Override
+    public boolean saveUUIDData(String username, UUID uuid) {
+        String name = username.toLowerCase();
+        return call(() -> {
+            MongoCollection<Document> c = database.getCollection("uuid");
+            c.replaceOne(new Document("_id", uuid), new Document("_id", uuid).append("name", name), new UpdateOptions().upsert(true));
+            uuidCache.put(name, uuid);
             return true;
         }, false);
     }
 
     @Override
     public UUID getUUID(String username) {
+        String name = username.toLowerCase();
+        UUID cached = uuidCache.getUuid(name);
+        if (cached != null) {
+            return cached;
+        }
+
         return call(() -> {
             MongoCollection<Document> c = database.getCollection("uuid");
 
-            try (MongoCursor<Document> cursor = c.find(new Document("name", username.toLowerCase())).iterator()) {
+            try (MongoCursor<Document> cursor = c.find(new Document("name", name)).iterator()) {
                 if (cursor.hasNext()) {
-                    return cursor.next().get("_id", UUID.class);
+                    UUID uuid = cursor.next().get("_id", UUID.class);
+                    uuidCache.put(name, uuid);
+                    return uuid;
                 }
             }
             return null;
@@ -479,12 +851,19 @@ public class MongoDBDatastore extends Datastore {
 
     @Override
     public String getName(UUID uuid) {
+        String cached = uuidCache.getName(uuid);
+        if (cached != null) {
+            return cached;
+        }
+
         return call(() -> {
             MongoCollection<Document> c = database.getCollection("uuid");
 
             try (MongoCursor<Document> cursor = c.find(new Document("_id", uuid)).iterator()) {
                 if (cursor.hasNext()) {
-                    return cursor.next().get("name", String.class);
+                    String name = cursor.next().get("name", String.class);
+                    uuidCache.put(name, uuid);
+                    return name;
                 }
             }
             return null;
@@ -524,6 +903,12 @@ public class MongoDBDatastore extends Datastore {
         }
 
         main.append("perms", perms);
+
+        // Indexed, so users can be found by permission without reading every document
+        main.append("permissions", user.getNodes().stream()
+                .map(Node::getPermission)
+                .distinct()
+                .collect(Collectors.toList()));
         return main;
     }
 
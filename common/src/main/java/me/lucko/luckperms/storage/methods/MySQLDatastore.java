@@ -24,22 +24,26 @@ package me.lucko.luckperms.storage.methods;
 
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
-import lombok.Cleanup;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.storage.DatastoreConfiguration;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 public class MySQLDatastore extends SQLDatastore {
 
     private static final String CREATETABLE_UUID = "CREATE TABLE IF NOT EXISTS `lp_uuid` (`name` VARCHAR(16) NOT NULL, `uuid` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
+    // Legacy, only read when migrating to lp_players and lp_user_permissions
     private static final String CREATETABLE_USERS = "CREATE TABLE IF NOT EXISTS `lp_users` (`uuid` VARCHAR(36) NOT NULL, `name` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, `perms` TEXT NOT NULL, PRIMARY KEY (`uuid`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_PLAYERS = "CREATE TABLE IF NOT EXISTS `lp_players` (`uuid` VARCHAR(36) NOT NULL, `username` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, PRIMARY KEY (`uuid`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_USER_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_user_permissions` (`id` INT AUTO_INCREMENT NOT NULL, `uuid` VARCHAR(36) NOT NULL, `permission` TEXT NOT NULL, `value` BOOL NOT NULL, `server` TEXT NOT NULL, `world` TEXT NOT NULL, `expiry` BIGINT NOT NULL, `contexts` TEXT NOT NULL, PRIMARY KEY (`id`), KEY `uuid` (`uuid`), KEY `permission` (`permission`(191))) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_GROUP_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_group_permissions` (`id` INT AUTO_INCREMENT NOT NULL, `name` VARCHAR(36) NOT NULL, `permission` TEXT NOT NULL, `value` BOOL NOT NULL, `server` TEXT NOT NULL, `world` TEXT NOT NULL, `expiry` BIGINT NOT NULL, `contexts` TEXT NOT NULL, PRIMARY KEY (`id`), KEY `name` (`name`), KEY `permission` (`permission`(191))) DEFAULT CHARSET=utf8;";
     private static final String CREATETABLE_GROUPS = "CREATE TABLE IF NOT EXISTS `lp_groups` (`name` VARCHAR(36) NOT NULL, `perms` TEXT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
     private static final String CREATETABLE_TRACKS = "CREATE TABLE IF NOT EXISTS `lp_tracks` (`name` VARCHAR(36) NOT NULL, `groups` TEXT NULL, PRIMARY KEY (`name`)) DEFAULT CHARSET=utf8;";
     private static final String CREATETABLE_ACTION = "CREATE TABLE IF NOT EXISTS `lp_actions` (`id` INT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(16) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(256) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
+    private static final String CREATETABLE_CHANGES = "CREATE TABLE IF NOT EXISTS `lp_changes` (`id` BIGINT AUTO_INCREMENT NOT NULL, `time` BIGINT NOT NULL, `origin` VARCHAR(36) NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL, PRIMARY KEY (`id`)) DEFAULT CHARSET=utf8;";
+
+    private static final String INDEX_SELECT = "SELECT 1 FROM information_schema.statistics WHERE table_schema=DATABASE() AND table_name=? AND index_name=? LIMIT 1";
 
     private final DatastoreConfiguration configuration;
     private HikariDataSource hikari;
@@ -58,7 +62,7 @@ public class MySQLDatastore extends SQLDatastore {
         final String username = configuration.getUsername();
         final String password = configuration.getPassword();
 
-        config.setMaximumPoolSize(10);
+        config.setMaximumPoolSize(configuration.getPoolSize());
         config.setPoolName("luckperms");
         config.setDataSourceClassName("com.mysql.jdbc.jdbc2.optional.MysqlDataSource");
         config.addDataSourceProperty("serverName", address.split(":")[0]);
@@ -78,7 +82,7 @@ public class MySQLDatastore extends SQLDatastore {
 
         hikari = new HikariDataSource(config);
 
-        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_GROUPS, CREATETABLE_TRACKS, CREATETABLE_ACTION)) {
+        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_PLAYERS, CREATETABLE_USER_PERMISSIONS, CREATETABLE_GROUPS, CREATETABLE_GROUP_PERMISSIONS, CREATETABLE_TRACKS, CREATETABLE_ACTION, CREATETABLE_CHANGES)) {
             plugin.getLog().severe("Error occurred whilst initialising the database.");
             shutdown();
         } else {
@@ -87,47 +91,50 @@ public class MySQLDatastore extends SQLDatastore {
     }
 
     @Override
-    boolean runQuery(String query, QueryPS queryPS) {
-        boolean success = false;
-        try {
-            @Cleanup Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
+    String upsert(String table, String key, String... columns) {
+        StringBuilder sb = new StringBuilder("INSERT INTO ").append(table).append("(").append(String.join(", ", columns))
+                .append(") VALUES").append(placeholders(columns.length)).append(" ON DUPLICATE KEY UPDATE ");
+
+        boolean first = true;
+        for (String column : columns) {
+            if (column.equals(key)) {
+                continue;
             }
-
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
-            queryPS.onRun(preparedStatement);
-            preparedStatement.execute();
-
-            success = true;
-        } catch (SQLException e) {
-            e.printStackTrace();
+            if (!first) {
+                sb.append(", ");
+            }
+            sb.append(column).append("=VALUES(").append(column).append(")");
+            first = false;
         }
-        return success;
+        return sb.toString();
     }
 
     @Override
-    boolean runQuery(String query, QueryPS queryPS, QueryRS queryRS) {
-        boolean success = false;
-        try {
-            @Cleanup Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
-            }
-
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
-            queryPS.onRun(preparedStatement);
+    boolean createIndex(String name, String table, String columns) {
+        // MySQL has no CREATE INDEX IF NOT EXISTS, so check for the index first.
+        final boolean[] exists = {false};
+        boolean success = runQuery(INDEX_SELECT,
+                preparedStatement -> {
+                    preparedStatement.setString(1, table);
+                    preparedStatement.setString(2, name);
+                },
+                resultSet -> {
+                    exists[0] = resultSet.next();
+                    return true;
+                }
+        );
+
+        return success && (exists[0] || runQuery("CREATE INDEX " + name + " ON " + table + " (" + columns + ")"));
+    }
 
-            @Cleanup ResultSet resultSet = preparedStatement.executeQuery();
-            success = queryRS.onResult(resultSet);
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        return success;
+    @Override
+    String insertIfAbsent(String table, String key) {
+        return "INSERT IGNORE INTO " + table + "(" + key + ") VALUES(?)";
     }
 
     @Override
     public void shutdown() {
+        actionLog.shutdown();
         if (hikari != null) {
             hikari.close();
         }
@@ -22,13 +22,25 @@
 
 package me.lucko.luckperms.storage.methods;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import me.lucko.luckperms.LuckPermsPlugin;
 import me.lucko.luckperms.api.LogEntry;
+import me.lucko.luckperms.api.Node;
+import me.lucko.luckperms.core.PermissionHolder;
 import me.lucko.luckperms.data.Log;
+import me.lucko.luckperms.data.LogFilter;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.groups.GroupManager;
+import me.lucko.luckperms.storage.ActionLogWriter;
+import me.lucko.luckperms.storage.Change;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.tracks.Track;
 import me.lucko.luckperms.tracks.TrackManager;
@@ -41,53 +53,302 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
-
-import static me.lucko.luckperms.core.PermissionHolder.exportToLegacy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 abstract class SQLDatastore extends Datastore {
     private static final QueryPS EMPTY_PS = preparedStatement -> {};
 
+    // Kept below SQLite's default limit of 999 parameters per statement
+    private static final int USER_SELECT_CHUNK_SIZE = 500;
+
     private static final Type NM_TYPE = new TypeToken<Map<String, Boolean>>(){}.getType();
     private static final Type T_TYPE = new TypeToken<List<String>>(){}.getType();
+    private static final Type CONTEXTS_TYPE = new TypeToken<Map<String, String>>(){}.getType();
 
-    private static final String USER_INSERT = "INSERT INTO lp_users VALUES(?, ?, ?, ?)";
-    private static final String USER_SELECT = "SELECT * FROM lp_users WHERE uuid=?";
-    private static final String USER_SELECT_ALL = "SELECT uuid FROM lp_users";
-    private static final String USER_UPDATE = "UPDATE lp_users SET name=?, primary_group = ?, perms=? WHERE uuid=?";
-    private static final String USER_DELETE = "DELETE FROM lp_users WHERE uuid=?";
-    private static final String USER_DELETE_ALL = "DELETE FROM lp_users WHERE perms=?";
-
-    private static final String GROUP_INSERT = "INSERT INTO lp_groups VALUES(?, ?)";
-    private static final String GROUP_SELECT = "SELECT perms FROM lp_groups WHERE name=?";
-    private static final String GROUP_SELECT_ALL = "SELECT * FROM lp_groups";
-    private static final String GROUP_UPDATE = "UPDATE lp_groups SET perms=? WHERE name=?";
+    private static final String PLAYER_SELECT = "SELECT * FROM lp_players WHERE uuid=?";
+    private static final String PLAYER_SELECT_IN = "SELECT * FROM lp_players WHERE uuid IN ";
+    private static final String PLAYER_SELECT_ALL = "SELECT uuid FROM lp_players";
+    private static final String PLAYER_SELECT_PAGE = "SELECT uuid FROM lp_players WHERE uuid > ? ORDER BY uuid LIMIT ?";
+    private static final String PLAYER_DELETE = "DELETE FROM lp_players WHERE uuid=?";
+    private static final String PLAYER_DELETE_DEFAULT = "DELETE FROM lp_players WHERE primary_group='default' AND uuid NOT IN " +
+            "(SELECT uuid FROM lp_user_permissions WHERE NOT (permission='group.default' AND `value`=? AND server='global' AND world='global' AND expiry=0 AND contexts='{}'))";
+    private static final String USER_PERMISSIONS_DELETE_ORPHANED = "DELETE FROM lp_user_permissions WHERE uuid NOT IN (SELECT uuid FROM lp_players)";
+
+    private static final String GROUP_SELECT = "SELECT name FROM lp_groups WHERE name=?";
+    private static final String GROUP_SELECT_ALL = "SELECT name FROM lp_groups";
     private static final String GROUP_DELETE = "DELETE FROM lp_groups WHERE name=?";
 
-    private static final String TRACK_INSERT = "INSERT INTO lp_tracks VALUES(?, ?)";
     private static final String TRACK_SELECT = "SELECT groups FROM lp_tracks WHERE name=?";
     private static final String TRACK_SELECT_ALL = "SELECT * FROM lp_tracks";
     private static final String TRACK_UPDATE = "UPDATE lp_tracks SET groups=? WHERE name=?";
     private static final String TRACK_DELETE = "DELETE FROM lp_tracks WHERE name=?";
 
-    private static final String UUIDCACHE_INSERT = "INSERT INTO lp_uuid VALUES(?, ?)";
     private static final String UUIDCACHE_SELECT = "SELECT uuid FROM lp_uuid WHERE name=?";
     private static final String UUIDCACHE_SELECT_NAME = "SELECT name FROM lp_uuid WHERE uuid=?";
-    private static final String UUIDCACHE_UPDATE = "UPDATE lp_uuid SET uuid=? WHERE name=?";
+    private static final int UUID_CACHE_SIZE = 10000;
+    // Other servers sharing the datastore may change a mapping, so cached entries are re-read after a while
+    private static final long UUID_CACHE_EXPIRY_MINUTES = 10L;
 
     private static final String ACTION_INSERT = "INSERT INTO lp_actions(`time`, `actor_uuid`, `actor_name`, `type`, `acted_uuid`, `acted_name`, `action`) VALUES(?, ?, ?, ?, ?, ?, ?)";
+    private static final int ACTION_INSERT_ROWS = 100;
+    private static final String ACTION_INSERT_MULTI = "INSERT INTO lp_actions(`time`, `actor_uuid`, `actor_name`, `type`, `acted_uuid`, `acted_name`, `action`) VALUES" +
+            String.join(", ", Collections.nCopies(ACTION_INSERT_ROWS, "(?, ?, ?, ?, ?, ?, ?)"));
     private static final String ACTION_SELECT_ALL = "SELECT * FROM lp_actions";
+    private static final String ACTION_COUNT = "SELECT COUNT(*) FROM lp_actions";
+
+    private static final String CHANGE_INSERT = "INSERT INTO lp_changes(`time`, origin, `type`, name) VALUES(?, ?, ?, ?)";
+    private static final String CHANGE_SELECT = "SELECT id, `time`, origin, `type`, name FROM lp_changes WHERE id>? OR `time`>=? ORDER BY id";
+    private static final String CHANGE_SELECT_LATEST = "SELECT MAX(id) FROM lp_changes";
+    private static final String CHANGE_DELETE_EXPIRED = "DELETE FROM lp_changes WHERE `time`<?";
+
+    // The legacy layout, which stored each holders nodes as a single json object
+    private static final String LEGACY_USER_SELECT = "SELECT * FROM lp_users LIMIT " + USER_SELECT_CHUNK_SIZE;
+    private static final String LEGACY_USER_DELETE = "DELETE FROM lp_users WHERE uuid=?";
+    private static final String LEGACY_GROUP_SELECT = "SELECT name, perms FROM lp_groups WHERE perms IS NOT NULL";
+    private static final String LEGACY_GROUP_CLEAR = "UPDATE lp_groups SET perms=NULL WHERE name=?";
+
+    private static final NodeTable USER_NODES = new NodeTable("lp_user_permissions", "uuid");
+    private static final NodeTable GROUP_NODES = new NodeTable("lp_group_permissions", "name");
 
     private final Gson gson;
+    final ActionLogWriter actionLog;
+
+    /**
+     * The most recently used entries of lp_uuid
+     */
+    private final UuidNameCache uuidCache = new UuidNameCache(UUID_CACHE_SIZE, UUID_CACHE_EXPIRY_MINUTES, TimeUnit.MINUTES);
+
+    private final ChangeFeed changeFeed = new ChangeFeed();
+
+    // Dialect specific statements
+    private final String playerUpsert;
+    private final String groupInsert;
+    private final String trackInsert;
+    private final String uuidUpsert;
+
+    /**
+     * The nodes last loaded from or written to storage for each holder, used to work out which rows a save changes.
+     * Keys are weak and compared by identity, so a reloaded holder starts from the stored rows.
+     */
+    private final Map<PermissionHolder, Set<Node>> storedNodes = new MapMaker().weakKeys().makeMap();
+
+    private final ThreadLocal<UnitOfWork> unitOfWork = new ThreadLocal<>();
+
+    // Connection pool metrics, shown by the info command
+    private final AtomicInteger activeConnections = new AtomicInteger(0);
+    private final AtomicInteger peakActiveConnections = new AtomicInteger(0);
+    private final AtomicInteger waitingThreads = new AtomicInteger(0);
+    private final AtomicLong connectionsBorrowed = new AtomicLong(0);
+    private final AtomicLong connectionWaitNanos = new AtomicLong(0);
+    private final AtomicLong maxConnectionWaitNanos = new AtomicLong(0);
 
     SQLDatastore(LuckPermsPlugin plugin, String name) {
         super(plugin, name);
         gson = new Gson();
+        actionLog = new ActionLogWriter(plugin, this::logActions);
+
+        playerUpsert = upsert("lp_players", "uuid", "uuid", "username", "primary_group");
+        groupInsert = insertIfAbsent("lp_groups", "name");
+        trackInsert = insertIfAbsent("lp_tracks", "name");
+        uuidUpsert = upsert("lp_uuid", "name", "name", "uuid");
     }
 
+    /**
+     * Gets a connection to the database. The connection is closed once it has been used.
+     */
     abstract Connection getConnection() throws SQLException;
 
-    abstract boolean runQuery(String query, QueryPS queryPS);
-    abstract boolean runQuery(String query, QueryPS queryPS, QueryRS queryRS);
+    /**
+     * Gets a statement which inserts a row, or replaces the values of the existing row with the same key
+     * @param table the table to insert into
+     * @param key the primary key column
+     * @param columns the columns to set, including the key, in the order they are bound
+     * @return the statement
+     */
+    abstract String upsert(String table, String key, String... columns);
+
+    /**
+     * Gets a statement which inserts a row containing only the given key, unless a row with that key already exists
+     * @param table the table to insert into
+     * @param key the primary key column
+     * @return the statement
+     */
+    abstract String insertIfAbsent(String table, String key);
+
+    /**
+     * Runs an operation with a single connection pinned to it. Every query the operation makes on this thread,
+     * including queries made from within a {@link QueryRS}, shares the connection and reuses its prepared statements,
+     * rather than borrowing another connection from the pool.
+     *
+     * Units of work don't nest. An operation started from inside another unit of work joins the outer one.
+     */
+    <T> T inUnitOfWork(Supplier<T> operation) {
+        if (unitOfWork.get() != null) {
+            return operation.get();
+        }
+
+        UnitOfWork unit;
+        try {
+            unit = new UnitOfWork(borrowConnection());
+        } catch (SQLException e) {
+            e.printStackTrace();
+            // Each query will try to get a connection of its own, and fail in the usual way.
+            return operation.get();
+        }
+
+        unitOfWork.set(unit);
+        try {
+            return operation.get();
+        } finally {
+            unitOfWork.remove();
+            unit.close();
+        }
+    }
+
+    /**
+     * Runs an operation in a unit of work as a single transaction, which is committed if the operation returns true,
+     * and rolled back otherwise.
+     */
+    boolean inTransaction(Supplier<Boolean> operation) {
+        return inUnitOfWork(() -> {
+            UnitOfWork unit = unitOfWork.get();
+            if (unit == null) {
+                // No connection could be borrowed, so the operation's queries will fail anyway
+                return operation.get();
+            }
+            return runInTransaction(unit.connection, operation);
+        });
+    }
+
+    static boolean runInTransaction(Connection connection, Supplier<Boolean> operation) {
+        try {
+            if (!connection.getAutoCommit()) {
+                // Already in a transaction, which is committed by whoever started it
+                return operation.get();
+            }
+
+            connection.setAutoCommit(false);
+            boolean success = false;
+            try {
+                success = operation.get();
+            } finally {
+                try {
+                    if (success) {
+                        connection.commit();
+                    } else {
+                        connection.rollback();
+                    }
+                } finally {
+                    connection.setAutoCommit(true);
+                }
+            }
+            return success;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    boolean runQuery(String query, QueryPS queryPS) {
+        return runStatement(query, preparedStatement -> {
+            queryPS.onRun(preparedStatement);
+            preparedStatement.execute();
+            return true;
+        });
+    }
+
+    boolean runQuery(String query, QueryPS queryPS, QueryRS queryRS) {
+        return runStatement(query, preparedStatement -> {
+            queryPS.onRun(preparedStatement);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                return queryRS.onResult(resultSet);
+            }
+        });
+    }
+
+    /**
+     * Executes a batch statement. The {@link QueryPS} should add each set of parameters to the batch.
+     */
+    boolean runBatch(String query, QueryPS queryPS) {
+        return runStatement(query, preparedStatement -> {
+            try {
+                queryPS.onRun(preparedStatement);
+                preparedStatement.executeBatch();
+            } finally {
+                preparedStatement.clearBatch();
+            }
+            return true;
+        });
+    }
+
+    private boolean runStatement(String query, QueryStatement queryStatement) {
+        try {
+            UnitOfWork unit = unitOfWork.get();
+            if (unit != null) {
+                return unit.run(query, queryStatement);
+            }
+
+            Connection connection = borrowConnection();
+            try (PreparedStatement preparedStatement = connection.prepareStatement(query)) {
+                return queryStatement.onRun(preparedStatement);
+            } finally {
+                releaseConnection(connection);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    private Connection borrowConnection() throws SQLException {
+        long start = System.nanoTime();
+        waitingThreads.incrementAndGet();
+        Connection connection;
+        try {
+            connection = getConnection();
+        } finally {
+            waitingThreads.decrementAndGet();
+        }
+
+        if (connection == null || connection.isClosed()) {
+            throw new SQLException("SQL connection is null");
+        }
+
+        long wait = System.nanoTime() - start;
+        connectionsBorrowed.incrementAndGet();
+        connectionWaitNanos.addAndGet(wait);
+        maxConnectionWaitNanos.accumulateAndGet(wait, Math::max);
+        peakActiveConnections.accumulateAndGet(activeConnections.incrementAndGet(), Math::max);
+        return connection;
+    }
+
+    private void releaseConnection(Connection connection) {
+        activeConnections.decrementAndGet();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Map<String, String> getMeta() {
+        long borrowed = connectionsBorrowed.get();
+        long averageWait = borrowed == 0 ? 0 : connectionWaitNanos.get() / borrowed;
+
+        Map<String, String> meta = new LinkedHashMap<>();
+        meta.put("Active Connections", activeConnections.get() + " (peak " + peakActiveConnections.get() + ")");
+        meta.put("Threads Waiting For Connections", Integer.toString(waitingThreads.get()));
+        meta.put("Connections Borrowed", Long.toString(borrowed));
+        meta.put("Connection Wait", String.format("%.2fms average, %.2fms max", averageWait / 1e6, maxConnectionWaitNanos.get() / 1e6));
+        meta.put("Buffered Log Entries", Integer.toString(actionLog.getBufferedCount()));
+        return meta;
+    }
 
     boolean runQuery(String query) {
         return runQuery(query, EMPTY_PS);
@@ -103,147 +364,559 @@ abstract class SQLDatastore extends Datastore {
             if (!runQuery(q)) success = false;
         }
 
-        return success && cleanupUsers();
+        return success && inUnitOfWork(() -> createIndex("lp_uuid_uuid", "lp_uuid", "uuid") && createIndex("lp_changes_time", "lp_changes", "`time`") && startChangeFeed() && setupActionIndexes() && migrateLegacyUsers() && migrateLegacyGroups() && cleanupUsers());
+    }
+
+    /**
+     * Indexes the columns the action log is filtered and ordered by
+     */
+    private boolean setupActionIndexes() {
+        return createIndex("lp_actions_time", "lp_actions", "`time`") &&
+                createIndex("lp_actions_actor_uuid", "lp_actions", "actor_uuid") &&
+                createIndex("lp_actions_acted_uuid", "lp_actions", "acted_uuid") &&
+                createIndex("lp_actions_acted_name", "lp_actions", "`type`, acted_name");
+    }
+
+    /**
+     * Creates an index, unless an index with the same name already exists
+     * @param name the name of the index
+     * @param table the table to index
+     * @param columns the indexed columns, separated by commas
+     * @return true if the index exists
+     */
+    boolean createIndex(String name, String table, String columns) {
+        return runQuery("CREATE INDEX IF NOT EXISTS " + name + " ON " + table + " (" + columns + ")");
+    }
+
+    /**
+     * Moves users from the legacy lp_users table into lp_players and lp_user_permissions.
+     * Rows are removed from the legacy table once copied, so an interrupted migration resumes where it stopped.
+     */
+    private boolean migrateLegacyUsers() {
+        boolean logged = false;
+        while (true) {
+            Map<String, StoredPlayer> players = new LinkedHashMap<>();
+            Map<String, Set<Node>> nodes = new HashMap<>();
+
+            boolean success = runQuery(LEGACY_USER_SELECT, resultSet -> {
+                while (resultSet.next()) {
+                    String uuid = resultSet.getString("uuid");
+                    players.put(uuid, new StoredPlayer(resultSet.getString("name"), resultSet.getString("primary_group")));
+                    nodes.put(uuid, fromLegacy(resultSet.getString("perms")));
+                }
+                return true;
+            });
+
+            if (!success) {
+                return false;
+            }
+
+            if (players.isEmpty()) {
+                return true;
+            }
+
+            if (!logged) {
+                plugin.getLog().info("Migrating users to the per node storage format.");
+                logged = true;
+            }
+
+            success = copyLegacyNodes(USER_NODES, nodes) && runBatch(playerUpsert, preparedStatement -> {
+                for (Map.Entry<String, StoredPlayer> e : players.entrySet()) {
+                    preparedStatement.setString(1, e.getKey());
+                    preparedStatement.setString(2, e.getValue().getName());
+                    preparedStatement.setString(3, e.getValue().getPrimaryGroup());
+                    preparedStatement.addBatch();
+                }
+            }) && runBatch(LEGACY_USER_DELETE, preparedStatement -> {
+                for (String uuid : players.keySet()) {
+                    preparedStatement.setString(1, uuid);
+                    preparedStatement.addBatch();
+                }
+            });
+
+            if (!success) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Moves the nodes of groups still using the legacy perms column into lp_group_permissions
+     */
+    private boolean migrateLegacyGroups() {
+        Map<String, Set<Node>> groups = new LinkedHashMap<>();
+        boolean success = runQuery(LEGACY_GROUP_SELECT, resultSet -> {
+            while (resultSet.next()) {
+                groups.put(resultSet.getString("name"), fromLegacy(resultSet.getString("perms")));
+            }
+            return true;
+        });
+
+        if (!success) {
+            return false;
+        }
+
+        if (groups.isEmpty()) {
+            return true;
+        }
+
+        plugin.getLog().info("Migrating " + groups.size() + " groups to the per node storage format.");
+        return copyLegacyNodes(GROUP_NODES, groups) && runBatch(LEGACY_GROUP_CLEAR, preparedStatement -> {
+            for (String name : groups.keySet()) {
+                preparedStatement.setString(1, name);
+                preparedStatement.addBatch();
+            }
+        });
+    }
+
+    /**
+     * Replaces the stored nodes of each holder with the nodes read from the legacy tables. If the batch fails, the
+     * nodes are inserted one at a time, and any node which can't be stored is logged and skipped, so that a single
+     * bad row doesn't stop the migration.
+     * @return false if the holders' existing rows couldn't be removed
+     */
+    private boolean copyLegacyNodes(NodeTable table, Map<String, Set<Node>> nodes) {
+        QueryPS deleteAll = preparedStatement -> {
+            for (String key : nodes.keySet()) {
+                preparedStatement.setString(1, key);
+                preparedStatement.addBatch();
+            }
+        };
+
+        if (!runBatch(table.deleteAll, deleteAll)) {
+            return false;
+        }
+
+        boolean success = runBatch(table.insert, preparedStatement -> {
+            for (Map.Entry<String, Set<Node>> e : nodes.entrySet()) {
+                for (Node node : e.getValue()) {
+                    setNode(preparedStatement, e.getKey(), node);
+                    preparedStatement.addBatch();
+                }
+            }
+        });
+
+        if (success) {
+            return true;
+        }
+
+        // Some drivers keep the rows inserted before the failing one, so start again from an empty set
+        if (!runBatch(table.deleteAll, deleteAll)) {
+            return false;
+        }
+
+        for (Map.Entry<String, Set<Node>> e : nodes.entrySet()) {
+            for (Node node : e.getValue()) {
+                boolean inserted = runQuery(table.insert, preparedStatement -> {
+                    setNode(preparedStatement, e.getKey(), node);
+                });
+
+                if (!inserted) {
+                    plugin.getLog().warn("Skipped node '" + node.toSerializedNode() + "' of " + e.getKey() + " whilst migrating, as it couldn't be stored.");
+                }
+            }
+        }
+        return true;
+    }
+
+    private Set<Node> fromLegacy(String json) {
+        if (json == null) {
+            return Collections.emptySet();
+        }
+
+        Map<String, Boolean> legacy = gson.fromJson(json, NM_TYPE);
+        Set<Node> nodes = new HashSet<>();
+        for (Map.Entry<String, Boolean> e : legacy.entrySet()) {
+            nodes.add(me.lucko.luckperms.core.Node.fromSerialisedNode(e.getKey(), e.getValue()));
+        }
+        return nodes;
     }
 
     @Override
     public boolean logAction(LogEntry entry) {
-        return runQuery(ACTION_INSERT, preparedStatement -> {
-            preparedStatement.setLong(1, entry.getTimestamp());
-            preparedStatement.setString(2, entry.getActor().toString());
-            preparedStatement.setString(3, entry.getActorName());
-            preparedStatement.setString(4, Character.toString(entry.getType()));
-            preparedStatement.setString(5, entry.getActed() == null ? "null" : entry.getActed().toString());
-            preparedStatement.setString(6, entry.getActedName());
-            preparedStatement.setString(7, entry.getAction());
-        });
+        return actionLog.submit(entry);
+    }
+
+    /**
+     * Inserts entries {@link #ACTION_INSERT_ROWS} rows per statement, and any left over one row per statement
+     */
+    @Override
+    public boolean logActions(Collection<LogEntry> entries) {
+        List<LogEntry> list = new ArrayList<>(entries);
+        int multiRows = list.size() - list.size() % ACTION_INSERT_ROWS;
+
+        return inUnitOfWork(() -> (multiRows == 0 || runBatch(ACTION_INSERT_MULTI, preparedStatement -> {
+            for (int i = 0; i < multiRows; i += ACTION_INSERT_ROWS) {
+                for (int row = 0; row < ACTION_INSERT_ROWS; row++) {
+                    setLogEntry(preparedStatement, row * 7, list.get(i + row));
+                }
+                preparedStatement.addBatch();
+            }
+        })) && (multiRows == list.size() || runBatch(ACTION_INSERT, preparedStatement -> {
+            for (LogEntry entry : list.subList(multiRows, list.size())) {
+                setLogEntry(preparedStatement, 0, entry);
+                preparedStatement.addBatch();
+            }
+        })));
+    }
+
+    private static void setLogEntry(PreparedStatement preparedStatement, int offset, LogEntry entry) throws SQLException {
+        preparedStatement.setLong(offset + 1, entry.getTimestamp());
+        preparedStatement.setString(offset + 2, entry.getActor().toString());
+        preparedStatement.setString(offset + 3, entry.getActorName());
+        preparedStatement.setString(offset + 4, Character.toString(entry.getType()));
+        preparedStatement.setString(offset + 5, entry.getActed() == null ? "null" : entry.getActed().toString());
+        preparedStatement.setString(offset + 6, entry.getActedName());
+        preparedStatement.setString(offset + 7, entry.getAction());
     }
 
     @Override
     public Log getLog() {
+        actionLog.flush();
         final Log.Builder log = Log.builder();
         boolean success = runQuery(ACTION_SELECT_ALL, resultSet -> {
             while (resultSet.next()) {
-                final String actedUuid = resultSet.getString("acted_uuid");
-                LogEntry e = new LogEntry(
-                        resultSet.getLong("time"),
-                        UUID.fromString(resultSet.getString("actor_uuid")),
-                        resultSet.getString("actor_name"),
-                        resultSet.getString("type").toCharArray()[0],
-                        actedUuid.equals("null") ? null : UUID.fromString(actedUuid),
-                        resultSet.getString("acted_name"),
-                        resultSet.getString("action")
-                );
-                log.add(e);
+                log.add(readLogEntry(resultSet));
             }
             return true;
         });
         return success ? log.build() : null;
     }
 
+    @Override
+    public int getLogCount(LogFilter filter) {
+        actionLog.flush();
+        List<Object> parameters = new ArrayList<>();
+        String query = ACTION_COUNT + logConditions(filter, parameters);
+
+        final int[] count = {-1};
+        boolean success = runQuery(query, preparedStatement -> setParameters(preparedStatement, parameters), resultSet -> {
+            if (resultSet.next()) {
+                count[0] = resultSet.getInt(1);
+            }
+            return true;
+        });
+        return success ? count[0] : -1;
+    }
+
+    @Override
+    public List<LogEntry> getLogEntries(LogFilter filter, boolean newestFirst, int offset, int limit) {
+        actionLog.flush();
+        List<Object> parameters = new ArrayList<>();
+        String query = ACTION_SELECT_ALL + logConditions(filter, parameters) +
+                (newestFirst ? " ORDER BY `time` DESC, id DESC" : " ORDER BY `time`, id") + " LIMIT ? OFFSET ?";
+        parameters.add(limit);
+        parameters.add(offset);
+
+        List<LogEntry> entries = new ArrayList<>();
+        boolean success = runQuery(query, preparedStatement -> setParameters(preparedStatement, parameters), resultSet -> {
+            while (resultSet.next()) {
+                entries.add(readLogEntry(resultSet));
+            }
+            return true;
+        });
+        return success ? entries : null;
+    }
+
+    /**
+     * Gets the WHERE clause selecting the entries matched by a filter
+     * @param filter the filter
+     * @param parameters the list to add the values of the clauses parameters to
+     * @return the clause, or an empty string if the filter matches every entry
+     */
+    private static String logConditions(LogFilter filter, List<Object> parameters) {
+        List<String> conditions = new ArrayList<>();
+        if (filter.getActor() != null) {
+            conditions.add("actor_uuid=?");
+            parameters.add(filter.getActor().toString());
+        }
+        if (filter.getType() != null) {
+            conditions.add("`type`=?");
+            parameters.add(filter.getType().toString());
+        }
+        if (filter.getActed() != null) {
+            conditions.add("acted_uuid=?");
+            parameters.add(filter.getActed().toString());
+        }
+        if (filter.getActedName() != null) {
+            conditions.add("acted_name=?");
+            parameters.add(filter.getActedName());
+        }
+        if (filter.getSearch() != null) {
+            conditions.add("(LOWER(actor_name) LIKE ? ESCAPE '!' OR LOWER(acted_name) LIKE ? ESCAPE '!' OR LOWER(`action`) LIKE ? ESCAPE '!')");
+            String pattern = "%" + filter.getSearch().toLowerCase().replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+            parameters.add(pattern);
+            parameters.add(pattern);
+            parameters.add(pattern);
+        }
+        if (filter.getAfter() > 0L) {
+            conditions.add("`time`>=?");
+            parameters.add(filter.getAfter());
+        }
+        if (filter.getBefore() != Long.MAX_VALUE) {
+            conditions.add("`time`<?");
+            parameters.add(filter.getBefore());
+        }
+
+        return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+    }
+
+    private static void setParameters(PreparedStatement preparedStatement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            preparedStatement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    private static LogEntry readLogEntry(ResultSet resultSet) throws SQLException {
+        final String actedUuid = resultSet.getString("acted_uuid");
+        return new LogEntry(
+                resultSet.getLong("time"),
+                UUID.fromString(resultSet.getString("actor_uuid")),
+                resultSet.getString("actor_name"),
+                resultSet.getString("type").toCharArray()[0],
+                actedUuid.equals("null") ? null : UUID.fromString(actedUuid),
+                resultSet.getString("acted_name"),
+                resultSet.getString("action")
+        );
+    }
+
     @Override
     public boolean loadUser(UUID uuid, String username) {
         User user = plugin.getUserManager().getOrMake(UserIdentifier.of(uuid, username));
         user.getIoLock().lock();
         try {
-            return runQuery(USER_SELECT,
-                    preparedStatement -> preparedStatement.setString(1, user.getUuid().toString()),
-                    resultSet -> {
-                        if (resultSet.next()) {
-                            // User exists, let's load.
-                            Map<String, Boolean> nodes = gson.fromJson(resultSet.getString("perms"), NM_TYPE);
-                            user.setNodes(nodes);
-                            user.setPrimaryGroup(resultSet.getString("primary_group"));
-
-                            boolean save = plugin.getUserManager().giveDefaultIfNeeded(user, false);
-
-						if (user.getName() == null || user.getName().equalsIgnoreCase("null")) {
-                                user.setName(resultSet.getString("name"));
-                            } else {
-                                if (!resultSet.getString("name").equals(user.getName())) {
-                                    save = true;
-                                }
-                            }
-
-                            if (save) {
-                                runQuery(USER_UPDATE, preparedStatement -> {
-                                    preparedStatement.setString(1, user.getName());
-                                    preparedStatement.setString(2, user.getPrimaryGroup());
-                                    preparedStatement.setString(3, gson.toJson(exportToLegacy(user.getNodes())));
-                                    preparedStatement.setString(4, user.getUuid().toString());
-                                });
-                            }
-                        } else {
-                            if (plugin.getUserManager().shouldSave(user)) {
-                                user.clearNodes();
-                                user.setPrimaryGroup(null);
-                                plugin.getUserManager().giveDefaultIfNeeded(user, false);
-                            }
-                        }
-                        return true;
-                    }
-            );
+            return inUnitOfWork(() -> readUser(user));
         } finally {
             user.getIoLock().unlock();
             user.refreshPermissions();
         }
     }
 
+    /**
+     * Loads a users stored data. The caller must hold the users io lock.
+     */
+    private boolean readUser(User user) {
+        final StoredPlayer[] player = {null};
+        boolean success = runQuery(PLAYER_SELECT,
+                preparedStatement -> preparedStatement.setString(1, user.getUuid().toString()),
+                resultSet -> {
+                    if (resultSet.next()) {
+                        player[0] = new StoredPlayer(resultSet.getString("username"), resultSet.getString("primary_group"));
+                    }
+                    return true;
+                }
+        );
+
+        if (!success) {
+            return false;
+        }
+
+        if (player[0] == null) {
+            clearUserData(user);
+            return true;
+        }
+
+        // User exists, let's load.
+        Map<String, Set<Node>> nodes = selectNodes(USER_NODES, Collections.singletonList(user.getObjectName()));
+        if (nodes == null) {
+            return false;
+        }
+
+        if (loadUserData(user, player[0], nodes.getOrDefault(user.getObjectName(), Collections.emptySet()))) {
+            writeUsers(Collections.singletonList(user));
+        }
+        return true;
+    }
+
     @Override
-    public boolean saveUser(User user) {
-        if (!plugin.getUserManager().shouldSave(user)) {
-            user.getIoLock().lock();
-            try {
-                return runQuery(USER_DELETE, preparedStatement -> {
-                    preparedStatement.setString(1, user.getUuid().toString());
-                });
-            } finally {
-                user.getIoLock().unlock();
-            }
+    public boolean loadUsers(Collection<UUID> uuids) {
+        Map<String, User> users = new LinkedHashMap<>();
+        for (UUID uuid : uuids) {
+            User user = plugin.getUserManager().getOrMake(UserIdentifier.of(uuid, "null"));
+            users.put(user.getObjectName(), user);
         }
 
-        user.getIoLock().lock();
-        try {
-            return runQuery(USER_SELECT,
-                    preparedStatement -> preparedStatement.setString(1, user.getUuid().toString()),
+        boolean success = inUnitOfWork(() -> readUsers(users));
+        users.values().forEach(User::refreshPermissions);
+        return success;
+    }
+
+    /**
+     * Loads the stored data of several users, keyed by their uuid
+     */
+    private boolean readUsers(Map<String, User> users) {
+        boolean success = true;
+        List<User> toSave = new ArrayList<>();
+
+        for (List<String> chunk : Iterables.partition(users.keySet(), USER_SELECT_CHUNK_SIZE)) {
+            Map<String, StoredPlayer> players = new HashMap<>();
+            boolean loaded = runQuery(PLAYER_SELECT_IN + placeholders(chunk.size()),
+                    preparedStatement -> {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            preparedStatement.setString(i + 1, chunk.get(i));
+                        }
+                    },
                     resultSet -> {
-                        if (!resultSet.next()) {
-                            // Doesn't already exist, let's insert.
-                            return runQuery(USER_INSERT, preparedStatement -> {
-                                preparedStatement.setString(1, user.getUuid().toString());
-                                preparedStatement.setString(2, user.getName());
-                                preparedStatement.setString(3, user.getPrimaryGroup());
-                                preparedStatement.setString(4, gson.toJson(exportToLegacy(user.getNodes())));
-                            });
-
-                        } else {
-                            // User exists, let's update.
-                            return runQuery(USER_UPDATE, preparedStatement -> {
-                                preparedStatement.setString(1, user.getName());
-                                preparedStatement.setString(2, user.getPrimaryGroup());
-                                preparedStatement.setString(3, gson.toJson(exportToLegacy(user.getNodes())));
-                                preparedStatement.setString(4, user.getUuid().toString());
-                            });
+                        while (resultSet.next()) {
+                            players.put(resultSet.getString("uuid"), new StoredPlayer(resultSet.getString("username"), resultSet.getString("primary_group")));
                         }
+                        return true;
                     }
             );
+
+            Map<String, Set<Node>> nodes = loaded && !players.isEmpty() ? selectNodes(USER_NODES, players.keySet()) : Collections.emptyMap();
+            if (!loaded || nodes == null) {
+                success = false;
+                continue;
+            }
+
+            for (String key : chunk) {
+                User user = users.get(key);
+                StoredPlayer player = players.get(key);
+
+                user.getIoLock().lock();
+                try {
+                    if (player == null) {
+                        clearUserData(user);
+                    } else if (loadUserData(user, player, nodes.getOrDefault(key, Collections.emptySet()))) {
+                        toSave.add(user);
+                    }
+                } finally {
+                    user.getIoLock().unlock();
+                }
+            }
+        }
+
+        if (!toSave.isEmpty()) {
+            success &= saveUsers(toSave);
+        }
+        return success;
+    }
+
+    /**
+     * Applies a users stored data
+     * @param user the user to load into
+     * @param player the users row from lp_players
+     * @param nodes the users nodes from lp_user_permissions
+     * @return true if the stored data should be updated
+     */
+    private boolean loadUserData(User user, StoredPlayer player, Set<Node> nodes) {
+        user.setNodes(nodes);
+        storedNodes.put(user, nodes);
+        user.setPrimaryGroup(player.getPrimaryGroup());
+
+        boolean save = plugin.getUserManager().giveDefaultIfNeeded(user, false);
+
+        if (user.getName() == null || user.getName().equalsIgnoreCase("null")) {
+            user.setName(player.getName());
+        } else {
+            if (!player.getName().equals(user.getName())) {
+                save = true;
+            }
+        }
+
+        return save;
+    }
+
+    private void clearUserData(User user) {
+        storedNodes.put(user, Collections.emptySet());
+        if (plugin.getUserManager().shouldSave(user)) {
+            user.clearNodes();
+            user.setPrimaryGroup(null);
+            plugin.getUserManager().giveDefaultIfNeeded(user, false);
+        }
+    }
+
+    static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            sb.append("?");
+        }
+        return sb.append(")").toString();
+    }
+
+    @Override
+    public boolean saveUser(User user) {
+        return saveUsers(Collections.singletonList(user));
+    }
+
+    @Override
+    public boolean saveUsers(Collection<User> users) {
+        List<User> locked = lockAll(users);
+        try {
+            return inUnitOfWork(() -> writeUsers(locked));
         } finally {
-            user.getIoLock().unlock();
+            locked.forEach(u -> u.getIoLock().unlock());
         }
     }
 
+    /**
+     * Writes the users data. The callers must hold the io lock of each user.
+     */
+    private boolean writeUsers(Collection<User> users) {
+        List<User> toSave = new ArrayList<>();
+        List<User> toDelete = new ArrayList<>();
+        for (User user : users) {
+            if (plugin.getUserManager().shouldSave(user)) {
+                toSave.add(user);
+            } else {
+                toDelete.add(user);
+            }
+        }
+
+        boolean success = true;
+        if (!toDelete.isEmpty()) {
+            success = runBatch(PLAYER_DELETE, preparedStatement -> {
+                for (User user : toDelete) {
+                    preparedStatement.setString(1, user.getObjectName());
+                    preparedStatement.addBatch();
+                }
+            }) && runBatch(USER_NODES.deleteAll, preparedStatement -> {
+                for (User user : toDelete) {
+                    preparedStatement.setString(1, user.getObjectName());
+                    preparedStatement.addBatch();
+                }
+            });
+
+            for (User user : toDelete) {
+                if (success) {
+                    storedNodes.put(user, Collections.emptySet());
+                } else {
+                    storedNodes.remove(user);
+                }
+            }
+        }
+
+        if (!toSave.isEmpty()) {
+            success &= runBatch(playerUpsert, preparedStatement -> {
+                for (User user : toSave) {
+                    preparedStatement.setString(1, user.getObjectName());
+                    preparedStatement.setString(2, user.getName());
+                    preparedStatement.setString(3, user.getPrimaryGroup());
+                    preparedStatement.addBatch();
+                }
+            });
+            success &= writeNodes(USER_NODES, toSave);
+        }
+
+        return success && recordChanges(Change.USER, users.stream().map(User::getObjectName).collect(Collectors.toList()));
+    }
+
     @Override
     public boolean cleanupUsers() {
-        return runQuery(USER_DELETE_ALL, preparedStatement -> {
-            preparedStatement.setString(1, "{\"group.default\":true}");
-        });
+        return inUnitOfWork(() -> runQuery(PLAYER_DELETE_DEFAULT, preparedStatement -> {
+            preparedStatement.setBoolean(1, true);
+        }) && runQuery(USER_PERMISSIONS_DELETE_ORPHANED));
     }
 
     @Override
     public Set<UUID> getUniqueUsers() {
         Set<UUID> uuids = new HashSet<>();
 
-        boolean success = runQuery(USER_SELECT_ALL, resultSet -> {
+        boolean success = runQuery(PLAYER_SELECT_ALL, resultSet -> {
             while (resultSet.next()) {
                 String uuid = resultSet.getString("uuid");
                 uuids.add(UUID.fromString(uuid));
@@ -255,26 +928,93 @@ abstract class SQLDatastore extends Datastore {
     }
 
     @Override
-    public boolean createAndLoadGroup(String name) {
-        Group group = plugin.getGroupManager().getOrMake(name);
-        group.getIoLock().lock();
-        try {
-            return runQuery(GROUP_SELECT,
-                    preparedStatement -> preparedStatement.setString(1, group.getName()),
+    public boolean forEachUniqueUserPage(int pageSize, Predicate<List<UUID>> consumer) {
+        // Pages by key rather than by offset, so each query starts from the primary key index
+        String after = "";
+        while (true) {
+            final String from = after;
+            List<UUID> page = new ArrayList<>(pageSize);
+            boolean success = runQuery(PLAYER_SELECT_PAGE,
+                    preparedStatement -> {
+                        preparedStatement.setString(1, from);
+                        preparedStatement.setInt(2, pageSize);
+                    },
                     resultSet -> {
-                        if (resultSet.next()) {
-                            // Group exists, let's load.
-                            Map<String, Boolean> nodes = gson.fromJson(resultSet.getString("perms"), NM_TYPE);
-                            group.setNodes(nodes);
-                            return true;
-                        } else {
-                            return runQuery(GROUP_INSERT, preparedStatement -> {
-                                preparedStatement.setString(1, group.getName());
-                                preparedStatement.setString(2, gson.toJson(exportToLegacy(group.getNodes())));
-                            });
+                        while (resultSet.next()) {
+                            page.add(UUID.fromString(resultSet.getString("uuid")));
                         }
+                        return true;
                     }
             );
+
+            if (!success) {
+                return false;
+            }
+
+            if (page.isEmpty()) {
+                return true;
+            }
+
+            if (!consumer.test(page)) {
+                return false;
+            }
+
+            if (page.size() < pageSize) {
+                return true;
+            }
+
+            after = page.get(page.size() - 1).toString();
+        }
+    }
+
+    @Override
+    public Set<UUID> getUsersWithPermission(String permission) {
+        Set<UUID> uuids = new HashSet<>();
+
+        boolean success = runQuery(USER_NODES.selectHolders,
+                preparedStatement -> preparedStatement.setString(1, permission),
+                resultSet -> {
+                    while (resultSet.next()) {
+                        uuids.add(UUID.fromString(resultSet.getString("uuid")));
+                    }
+                    return true;
+                }
+        );
+
+        return success ? uuids : null;
+    }
+
+    @Override
+    public boolean createAndLoadGroup(String name) {
+        Group group = plugin.getGroupManager().getOrMake(name);
+        group.getIoLock().lock();
+        try {
+            return inUnitOfWork(() -> {
+                // Creates the group if it doesn't already exist, without the race of checking first.
+                if (!runQuery(groupInsert, preparedStatement -> {
+                    preparedStatement.setString(1, group.getName());
+                })) {
+                    return false;
+                }
+
+                Map<String, Set<Node>> nodes = selectNodes(GROUP_NODES, Collections.singletonList(group.getName()));
+                if (nodes == null) {
+                    return false;
+                }
+
+                Set<Node> stored = nodes.get(group.getName());
+                if (stored == null) {
+                    // The group has no stored nodes, so was most likely just created.
+                    storedNodes.put(group, Collections.emptySet());
+                    return writeNodes(GROUP_NODES, Collections.singletonList(group)) &&
+                            recordChanges(Change.GROUP, Collections.singletonList(group.getName()));
+                }
+
+                // Group exists, let's load.
+                group.setNodes(stored);
+                storedNodes.put(group, stored);
+                return true;
+            });
         } finally {
             group.getIoLock().unlock();
         }
@@ -285,18 +1025,27 @@ abstract class SQLDatastore extends Datastore {
         Group group = plugin.getGroupManager().getOrMake(name);
         group.getIoLock().lock();
         try {
-            return runQuery(GROUP_SELECT,
-                    preparedStatement -> preparedStatement.setString(1, name),
-                    resultSet -> {
-                        if (resultSet.next()) {
-                            // Group exists, let's load.
-                            Map<String, Boolean> nodes = gson.fromJson(resultSet.getString("perms"), NM_TYPE);
-                            group.setNodes(nodes);
-                            return true;
-                        }
-                        return false;
-                    }
-            );
+            return inUnitOfWork(() -> {
+                boolean exists = runQuery(GROUP_SELECT,
+                        preparedStatement -> preparedStatement.setString(1, name),
+                        ResultSet::next
+                );
+
+                if (!exists) {
+                    return false;
+                }
+
+                // Group exists, let's load.
+                Map<String, Set<Node>> nodes = selectNodes(GROUP_NODES, Collections.singletonList(group.getName()));
+                if (nodes == null) {
+                    return false;
+                }
+
+                Set<Node> stored = nodes.getOrDefault(group.getName(), Collections.emptySet());
+                group.setNodes(stored);
+                storedNodes.put(group, stored);
+                return true;
+            });
         } finally {
             group.getIoLock().unlock();
         }
@@ -306,20 +1055,32 @@ abstract class SQLDatastore extends Datastore {
     @Override
     public boolean loadAllGroups() {
         List<String> groups = new ArrayList<>();
-        boolean success = runQuery(GROUP_SELECT_ALL, resultSet -> {
-            boolean b = true;
+        Map<String, Set<Node>> nodes = new HashMap<>();
+        boolean success = inUnitOfWork(() -> runQuery(GROUP_SELECT_ALL, resultSet -> {
             while (resultSet.next()) {
-                String name = resultSet.getString("name");
-                if (!loadGroup(name)) {
-                    b = false;
-                }
-                groups.add(name);
+                groups.add(resultSet.getString("name"));
             }
-            return b;
-        });
+            return true;
+        }) && runQuery(GROUP_NODES.selectAll, resultSet -> {
+            // Read every groups nodes in one pass rather than querying once per group
+            readNodes(GROUP_NODES, resultSet, nodes);
+            return true;
+        }));
 
         if (success) {
             GroupManager gm = plugin.getGroupManager();
+            for (String name : groups) {
+                Group group = gm.getOrMake(name);
+                group.getIoLock().lock();
+                try {
+                    Set<Node> stored = nodes.getOrDefault(group.getName(), Collections.emptySet());
+                    group.setNodes(stored);
+                    storedNodes.put(group, stored);
+                } finally {
+                    group.getIoLock().unlock();
+                }
+            }
+
             gm.getAll().values().stream()
                     .filter(g -> !groups.contains(g.getName()))
                     .forEach(gm::unload);
@@ -329,14 +1090,21 @@ abstract class SQLDatastore extends Datastore {
 
     @Override
     public boolean saveGroup(Group group) {
-        group.getIoLock().lock();
+        return saveGroups(Collections.singletonList(group));
+    }
+
+    @Override
+    public boolean saveGroups(Collection<Group> groups) {
+        if (groups.isEmpty()) {
+            return true;
+        }
+
+        List<Group> locked = lockAll(groups);
         try {
-            return runQuery(GROUP_UPDATE, preparedStatement -> {
-                preparedStatement.setString(1, gson.toJson(exportToLegacy(group.getNodes())));
-                preparedStatement.setString(2, group.getName());
-            });
+            return inUnitOfWork(() -> writeNodes(GROUP_NODES, locked) &&
+                    recordChanges(Change.GROUP, locked.stream().map(Group::getName).collect(Collectors.toList())));
         } finally {
-            group.getIoLock().unlock();
+            locked.forEach(g -> g.getIoLock().unlock());
         }
     }
 
@@ -345,9 +1113,12 @@ abstract class SQLDatastore extends Datastore {
         group.getIoLock().lock();
         boolean success;
         try {
-            success = runQuery(GROUP_DELETE, preparedStatement -> {
+            success = inUnitOfWork(() -> runQuery(GROUP_DELETE, preparedStatement -> {
                 preparedStatement.setString(1, group.getName());
-            });
+            }) && runQuery(GROUP_NODES.deleteAll, preparedStatement -> {
+                preparedStatement.setString(1, group.getName());
+            }) && recordChanges(Change.GROUP, Collections.singletonList(group.getName())));
+            storedNodes.remove(group);
         } finally {
             group.getIoLock().unlock();
         }
@@ -356,26 +1127,171 @@ abstract class SQLDatastore extends Datastore {
         return success;
     }
 
+    /**
+     * Locks the io lock of each holder, in a consistent order so concurrent batches can't deadlock
+     * @return the holders, in the order they were locked
+     */
+    private static <T extends PermissionHolder> List<T> lockAll(Collection<T> holders) {
+        List<T> sorted = new ArrayList<>(holders);
+        sorted.sort(Comparator.comparing(PermissionHolder::getObjectName));
+        for (T holder : sorted) {
+            holder.getIoLock().lock();
+        }
+        return sorted;
+    }
+
+    /**
+     * Writes the nodes of each holder in a single transaction. For a holder whose stored nodes are known, only the nodes
+     * added or removed since they were last loaded or saved are written. The rows of any other holder are replaced, as
+     * its rows may have been changed elsewhere since they were read.
+     * The callers must hold the io lock of each holder.
+     */
+    private boolean writeNodes(NodeTable table, Collection<? extends PermissionHolder> holders) {
+        Map<PermissionHolder, Set<Node>> after = new IdentityHashMap<>();
+        List<String> replaced = new ArrayList<>();
+        List<Map.Entry<String, Node>> added = new ArrayList<>();
+        List<Map.Entry<String, Node>> removed = new ArrayList<>();
+        for (PermissionHolder holder : holders) {
+            Set<Node> nodes = holder.getNodes();
+            after.put(holder, nodes);
+
+            Set<Node> previous = storedNodes.get(holder);
+            if (previous == null) {
+                replaced.add(holder.getObjectName());
+                previous = Collections.emptySet();
+            }
+
+            for (Node node : Sets.difference(nodes, previous)) {
+                added.add(Maps.immutableEntry(holder.getObjectName(), node));
+            }
+            for (Node node : Sets.difference(previous, nodes)) {
+                removed.add(Maps.immutableEntry(holder.getObjectName(), node));
+            }
+        }
+
+        boolean success = inTransaction(() -> (replaced.isEmpty() || runBatch(table.deleteAll, preparedStatement -> {
+            for (String key : replaced) {
+                preparedStatement.setString(1, key);
+                preparedStatement.addBatch();
+            }
+        })) && (removed.isEmpty() || runBatch(table.delete, preparedStatement -> {
+            for (Map.Entry<String, Node> e : removed) {
+                setNode(preparedStatement, e.getKey(), e.getValue());
+                preparedStatement.addBatch();
+            }
+        })) && (added.isEmpty() || runBatch(table.insert, preparedStatement -> {
+            for (Map.Entry<String, Node> e : added) {
+                setNode(preparedStatement, e.getKey(), e.getValue());
+                preparedStatement.addBatch();
+            }
+        })));
+
+        for (Map.Entry<PermissionHolder, Set<Node>> e : after.entrySet()) {
+            if (success) {
+                storedNodes.put(e.getKey(), e.getValue());
+            } else {
+                // The stored state is unknown, so replace it on the next save
+                storedNodes.remove(e.getKey());
+            }
+        }
+        return success;
+    }
+
+    /**
+     * Reads the stored nodes of the given holders
+     * @return the nodes of each holder which has any, or null if the query failed
+     */
+    private Map<String, Set<Node>> selectNodes(NodeTable table, Collection<String> keys) {
+        Map<String, Set<Node>> nodes = new HashMap<>();
+        for (List<String> chunk : Iterables.partition(keys, USER_SELECT_CHUNK_SIZE)) {
+            boolean success = runQuery(table.selectIn + placeholders(chunk.size()),
+                    preparedStatement -> {
+                        for (int i = 0; i < chunk.size(); i++) {
+                            preparedStatement.setString(i + 1, chunk.get(i));
+                        }
+                    },
+                    resultSet -> {
+                        readNodes(table, resultSet, nodes);
+                        return true;
+                    }
+            );
+
+            if (!success) {
+                return null;
+            }
+        }
+        return nodes;
+    }
+
+    private void readNodes(NodeTable table, ResultSet resultSet, Map<String, Set<Node>> nodes) throws SQLException {
+        Map<String, ImmutableSet.Builder<Node>> builders = new HashMap<>();
+        while (resultSet.next()) {
+            String server = resultSet.getString("server");
+            String world = resultSet.getString("world");
+            Map<String, String> contexts = gson.fromJson(resultSet.getString("contexts"), CONTEXTS_TYPE);
+
+            Node node = me.lucko.luckperms.core.Node.intern(new me.lucko.luckperms.core.Node(
+                    resultSet.getString("permission"),
+                    resultSet.getBoolean("value"),
+                    false,
+                    resultSet.getLong("expiry"),
+                    server,
+                    world,
+                    contexts
+            ));
+            builders.computeIfAbsent(resultSet.getString(table.key), k -> ImmutableSet.builder()).add(node);
+        }
+
+        builders.forEach((key, builder) -> nodes.put(key, builder.build()));
+    }
+
+    private void setNode(PreparedStatement preparedStatement, String key, Node node) throws SQLException {
+        preparedStatement.setString(1, key);
+        preparedStatement.setString(2, node.getPermission());
+        preparedStatement.setBoolean(3, node.getValue());
+        preparedStatement.setString(4, node.getServer().orElse("global"));
+        // Nodes never have an empty world, so it can't be mistaken for a world named "global"
+        preparedStatement.setString(5, node.getWorld().orElse(""));
+        preparedStatement.setLong(6, node.isPermanent() ? 0L : node.getExpiryUnixTime());
+        // Sorted, so the same contexts always match the stored value
+        preparedStatement.setString(7, gson.toJson(new TreeMap<>(node.getExtraContexts())));
+    }
+
     @Override
     public boolean createAndLoadTrack(String name) {
         Track track = plugin.getTrackManager().getOrMake(name);
         track.getIoLock().lock();
         try {
-            return runQuery(TRACK_SELECT,
-                    preparedStatement -> preparedStatement.setString(1, track.getName()),
-                    resultSet -> {
-                        if (resultSet.next()) {
-                            // Track exists, let's load.
-                            track.setGroups(gson.fromJson(resultSet.getString("groups"), T_TYPE));
-                            return true;
-                        } else {
-                            return runQuery(TRACK_INSERT, preparedStatement -> {
-                                preparedStatement.setString(1, track.getName());
-                                preparedStatement.setString(2, gson.toJson(track.getGroups()));
-                            });
+            return inUnitOfWork(() -> {
+                // Creates the track if it doesn't already exist, without the race of checking first.
+                if (!runQuery(trackInsert, preparedStatement -> {
+                    preparedStatement.setString(1, track.getName());
+                })) {
+                    return false;
+                }
+
+                return runQuery(TRACK_SELECT,
+                        preparedStatement -> preparedStatement.setString(1, track.getName()),
+                        resultSet -> {
+                            if (!resultSet.next()) {
+                                return false;
+                            }
+
+                            String groups = resultSet.getString("groups");
+                            if (groups != null) {
+                                // Track exists, let's load.
+                                track.setGroups(gson.fromJson(groups, T_TYPE));
+                                return true;
+                            }
+
+                            // The track was just created.
+                            return runQuery(TRACK_UPDATE, preparedStatement -> {
+                                preparedStatement.setString(1, gson.toJson(track.getGroups()));
+                                preparedStatement.setString(2, track.getName());
+                            }) && recordChanges(Change.TRACK, Collections.singletonList(track.getName()));
                         }
-                    }
-            );
+                );
+            });
         } finally {
             track.getIoLock().unlock();
         }
@@ -390,7 +1306,8 @@ abstract class SQLDatastore extends Datastore {
                     preparedStatement -> preparedStatement.setString(1, name),
                     resultSet -> {
                         if (resultSet.next()) {
-                            track.setGroups(gson.fromJson(resultSet.getString("groups"), T_TYPE));
+                            String groups = resultSet.getString("groups");
+                            track.setGroups(groups == null ? new ArrayList<>() : gson.fromJson(groups, T_TYPE));
                             return true;
                         }
                         return false;
@@ -404,7 +1321,7 @@ abstract class SQLDatastore extends Datastore {
     @Override
     public boolean loadAllTracks() {
         List<String> tracks = new ArrayList<>();
-        boolean success = runQuery(TRACK_SELECT_ALL, resultSet -> {
+        boolean success = inUnitOfWork(() -> runQuery(TRACK_SELECT_ALL, resultSet -> {
             boolean b = true;
             while (resultSet.next()) {
                 String name = resultSet.getString("name");
@@ -414,7 +1331,7 @@ abstract class SQLDatastore extends Datastore {
                 tracks.add(name);
             }
             return b;
-        });
+        }));
 
         if (success) {
             TrackManager tm = plugin.getTrackManager();
@@ -429,10 +1346,10 @@ abstract class SQLDatastore extends Datastore {
     public boolean saveTrack(Track track) {
         track.getIoLock().lock();
         try {
-            return runQuery(TRACK_UPDATE, preparedStatement -> {
+            return inUnitOfWork(() -> runQuery(TRACK_UPDATE, preparedStatement -> {
                 preparedStatement.setString(1, gson.toJson(track.getGroups()));
                 preparedStatement.setString(2, track.getName());
-            });
+            }) && recordChanges(Change.TRACK, Collections.singletonList(track.getName())));
         } finally {
             track.getIoLock().unlock();
         }
@@ -443,9 +1360,9 @@ abstract class SQLDatastore extends Datastore {
         track.getIoLock().lock();
         boolean success;
         try {
-            success = runQuery(TRACK_DELETE, preparedStatement -> {
+            success = inUnitOfWork(() -> runQuery(TRACK_DELETE, preparedStatement -> {
                 preparedStatement.setString(1, track.getName());
-            });
+            }) && recordChanges(Change.TRACK, Collections.singletonList(track.getName())));
         } finally {
             track.getIoLock().unlock();
         }
@@ -455,38 +1372,99 @@ abstract class SQLDatastore extends Datastore {
     }
 
     @Override
-    public boolean saveUUIDData(String username, UUID uuid) {
-        final String u = username.toLowerCase();
-        return runQuery(UUIDCACHE_SELECT,
-                preparedStatement -> preparedStatement.setString(1, u),
+    public List<Change> pollChanges() {
+        if (!changeFeed.isStarted()) {
+            startChangeFeed();
+            return null;
+        }
+
+        boolean expired = changeFeed.isExpired();
+        List<Change> changes = new ArrayList<>();
+        boolean success = inUnitOfWork(() -> runQuery(CHANGE_SELECT,
+                preparedStatement -> {
+                    preparedStatement.setLong(1, changeFeed.getCursor());
+                    preparedStatement.setLong(2, changeFeed.getWindowStart());
+                },
                 resultSet -> {
-                    boolean success;
-                    if (resultSet.next()) {
-                        success = runQuery(UUIDCACHE_UPDATE, preparedStatement -> {
-                            preparedStatement.setString(1, uuid.toString());
-                            preparedStatement.setString(2, u);
-                        });
-                    } else {
-                        success = runQuery(UUIDCACHE_INSERT, preparedStatement -> {
-                            preparedStatement.setString(1, u);
-                            preparedStatement.setString(2, uuid.toString());
-                        });
+                    while (resultSet.next()) {
+                        changes.add(new Change(
+                                resultSet.getLong("id"),
+                                resultSet.getLong("time"),
+                                resultSet.getString("origin"),
+                                resultSet.getString("type").charAt(0),
+                                resultSet.getString("name")
+                        ));
                     }
-                    return success;
+                    return true;
                 }
-        );
+        ) && runQuery(CHANGE_DELETE_EXPIRED, preparedStatement -> {
+            preparedStatement.setLong(1, ChangeFeed.now() - ChangeFeed.RETENTION);
+        }));
+
+        if (!success) {
+            return null;
+        }
+
+        List<Change> unread = changeFeed.accept(changes);
+        return expired ? null : unread;
+    }
+
+    /**
+     * Starts reading the change feed after the latest change
+     */
+    private boolean startChangeFeed() {
+        return runQuery(CHANGE_SELECT_LATEST, resultSet -> {
+            // MAX is null if there are no changes, which is read as 0.
+            changeFeed.start(resultSet.next() ? resultSet.getLong(1) : 0L);
+            return true;
+        });
+    }
+
+    private boolean recordChanges(char type, Collection<String> names) {
+        if (names.isEmpty()) {
+            return true;
+        }
+
+        long time = ChangeFeed.now();
+        return runBatch(CHANGE_INSERT, preparedStatement -> {
+            for (String name : names) {
+                preparedStatement.setLong(1, time);
+                preparedStatement.setString(2, changeFeed.getOrigin());
+                preparedStatement.setString(3, Character.toString(type));
+                preparedStatement.setString(4, name);
+                preparedStatement.addBatch();
+            }
+        });
+    }
+
+    @Override
+    public boolean saveUUIDData(String username, UUID uuid) {
+        final String u = username.toLowerCase();
+        boolean success = runQuery(uuidUpsert, preparedStatement -> {
+            preparedStatement.setString(1, u);
+            preparedStatement.setString(2, uuid.toString());
+        });
+
+        if (success) {
+            uuidCache.put(u, uuid);
+        }
+        return success;
     }
 
     @Override
     public UUID getUUID(String username) {
         final String u = username.toLowerCase();
-        final UUID[] uuid = {null};
+        final UUID[] uuid = {uuidCache.getUuid(u)};
+        if (uuid[0] != null) {
+            return uuid[0];
+        }
 
         boolean success = runQuery(UUIDCACHE_SELECT,
                 preparedStatement -> preparedStatement.setString(1, u),
                 resultSet -> {
                     if (resultSet.next()) {
                         uuid[0] = UUID.fromString(resultSet.getString("uuid"));
+                        uuidCache.put(u, uuid[0]);
                         return true;
                     }
                     return false;
@@ -499,13 +1477,17 @@ abstract class SQLDatastore extends Datastore {
     @Override
     public String getName(UUID uuid) {
         final String u = uuid.toString();
-        final String[] name = {null};
+        final String[] name = {uuidCache.getName(uuid)};
+        if (name[0] != null) {
+            return name[0];
+        }
 
         boolean success = runQuery(UUIDCACHE_SELECT_NAME,
                 preparedStatement -> preparedStatement.setString(1, u),
                 resultSet -> {
                     if (resultSet.next()) {
                         name[0] = resultSet.getString("name");
+                        uuidCache.put(name[0], uuid);
                         return true;
                     }
                     return false;
@@ -515,6 +1497,82 @@ abstract class SQLDatastore extends Datastore {
         return success ? name[0] : null;
     }
 
+    /**
+     * A table holding one row per node, keyed by the uuid of a user or the name of a group
+     */
+    private static final class NodeTable {
+        private final String key;
+        private final String selectIn;
+        private final String selectAll;
+        private final String selectHolders;
+        private final String insert;
+        private final String delete;
+        private final String deleteAll;
+
+        private NodeTable(String table, String key) {
+            this.key = key;
+            selectIn = "SELECT * FROM " + table + " WHERE " + key + " IN ";
+            selectAll = "SELECT * FROM " + table;
+            selectHolders = "SELECT DISTINCT " + key + " FROM " + table + " WHERE permission=?";
+            insert = "INSERT INTO " + table + "(" + key + ", permission, `value`, server, world, expiry, contexts) VALUES(?, ?, ?, ?, ?, ?, ?)";
+            delete = "DELETE FROM " + table + " WHERE " + key + "=? AND permission=? AND `value`=? AND server=? AND world=? AND expiry=? AND contexts=?";
+            deleteAll = "DELETE FROM " + table + " WHERE " + key + "=?";
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static final class StoredPlayer {
+        private final String name;
+        private final String primaryGroup;
+    }
+
+    /**
+     * The connection pinned to a unit of work, and the statements prepared on it so far
+     */
+    private final class UnitOfWork {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private UnitOfWork(Connection connection) {
+            this.connection = connection;
+        }
+
+        private boolean run(String query, QueryStatement queryStatement) throws SQLException {
+            // Taken out whilst in use, so a nested query with the same statement doesn't reset this one's results
+            PreparedStatement preparedStatement = statements.remove(query);
+            if (preparedStatement == null) {
+                preparedStatement = connection.prepareStatement(query);
+            } else {
+                preparedStatement.clearParameters();
+            }
+
+            try {
+                return queryStatement.onRun(preparedStatement);
+            } finally {
+                if (statements.putIfAbsent(query, preparedStatement) != null) {
+                    preparedStatement.close();
+                }
+            }
+        }
+
+        private void close() {
+            for (PreparedStatement preparedStatement : statements.values()) {
+                try {
+                    preparedStatement.close();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+            statements.clear();
+            releaseConnection(connection);
+        }
+    }
+
+    private interface QueryStatement {
+        boolean onRun(PreparedStatement preparedStatement) throws SQLException;
+    }
+
     interface QueryPS {
         void onRun(PreparedStatement preparedStatement) throws SQLException;
     }
@@ -22,32 +22,64 @@
 
 package me.lucko.luckperms.storage.methods;
 
-import lombok.Cleanup;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.storage.DatastoreConfiguration;
 
 import java.io.File;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 public class SQLiteDatastore extends SQLDatastore {
 
     private static final String CREATETABLE_UUID = "CREATE TABLE IF NOT EXISTS `lp_uuid` (`name` VARCHAR(16) NOT NULL, `uuid` VARCHAR(36) NOT NULL, PRIMARY KEY (`name`));";
+    // Legacy, only read when migrating to lp_players and lp_user_permissions
     private static final String CREATETABLE_USERS = "CREATE TABLE IF NOT EXISTS `lp_users` (`uuid` VARCHAR(36) NOT NULL, `name` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, `perms` TEXT NOT NULL, PRIMARY KEY (`uuid`));";
+    private static final String CREATETABLE_PLAYERS = "CREATE TABLE IF NOT EXISTS `lp_players` (`uuid` VARCHAR(36) NOT NULL, `username` VARCHAR(16) NOT NULL, `primary_group` VARCHAR(36) NOT NULL, PRIMARY KEY (`uuid`));";
+    private static final String CREATETABLE_USER_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_user_permissions` (`id` INTEGER PRIMARY KEY NOT NULL, `uuid` VARCHAR(36) NOT NULL, `permission` TEXT NOT NULL, `value` BOOL NOT NULL, `server` TEXT NOT NULL, `world` TEXT NOT NULL, `expiry` BIGINT NOT NULL, `contexts` TEXT NOT NULL);";
+    private static final String CREATETABLE_GROUP_PERMISSIONS = "CREATE TABLE IF NOT EXISTS `lp_group_permissions` (`id` INTEGER PRIMARY KEY NOT NULL, `name` VARCHAR(36) NOT NULL, `permission` TEXT NOT NULL, `value` BOOL NOT NULL, `server` TEXT NOT NULL, `world` TEXT NOT NULL, `expiry` BIGINT NOT NULL, `contexts` TEXT NOT NULL);";
+    private static final String CREATEINDEX_USER_PERMISSIONS_UUID = "CREATE INDEX IF NOT EXISTS `lp_user_permissions_uuid` ON `lp_user_permissions` (`uuid`);";
+    private static final String CREATEINDEX_USER_PERMISSIONS_PERMISSION = "CREATE INDEX IF NOT EXISTS `lp_user_permissions_permission` ON `lp_user_permissions` (`permission`);";
+    private static final String CREATEINDEX_GROUP_PERMISSIONS_NAME = "CREATE INDEX IF NOT EXISTS `lp_group_permissions_name` ON `lp_group_permissions` (`name`);";
+    private static final String CREATEINDEX_GROUP_PERMISSIONS_PERMISSION = "CREATE INDEX IF NOT EXISTS `lp_group_permissions_permission` ON `lp_group_permissions` (`permission`);";
     private static final String CREATETABLE_GROUPS = "CREATE TABLE IF NOT EXISTS `lp_groups` (`name` VARCHAR(36) NOT NULL, `perms` TEXT NULL, PRIMARY KEY (`name`));";
     private static final String CREATETABLE_TRACKS = "CREATE TABLE IF NOT EXISTS `lp_tracks` (`name` VARCHAR(36) NOT NULL, `groups` TEXT NULL, PRIMARY KEY (`name`));";
     private static final String CREATETABLE_ACTION = "CREATE TABLE IF NOT EXISTS `lp_actions` (`id` INTEGER PRIMARY KEY NOT NULL, `time` BIG INT NOT NULL, `actor_uuid` VARCHAR(36) NOT NULL, `actor_name` VARCHAR(16) NOT NULL, `type` CHAR(1) NOT NULL, `acted_uuid` VARCHAR(36) NOT NULL, `acted_name` VARCHAR(36) NOT NULL, `action` VARCHAR(256) NOT NULL);";
+    private static final String CREATETABLE_CHANGES = "CREATE TABLE IF NOT EXISTS `lp_changes` (`id` INTEGER PRIMARY KEY NOT NULL, `time` BIG INT NOT NULL, `origin` VARCHAR(36) NOT NULL, `type` CHAR(1) NOT NULL, `name` VARCHAR(36) NOT NULL);";
 
     private final File file;
-    private Connection connection = null;
-    private final Object connectionLock = new Object();
+    private final DatastoreConfiguration configuration;
 
-    public SQLiteDatastore(LuckPermsPlugin plugin, File file) {
+    // SQLite only allows one writer at a time, so writes are queued on a single connection. In WAL mode, readers
+    // don't block the writer, so reads are spread over a pool of connections.
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final Map<String, PreparedStatement> writeStatements = new HashMap<>();
+    private Connection writeConnection = null;
+    private HikariDataSource readPool;
+
+    public SQLiteDatastore(LuckPermsPlugin plugin, File file, DatastoreConfiguration configuration) {
         super(plugin, "SQLite");
         this.file = file;
+        this.configuration = configuration;
     }
 
     @Override
     public void init() {
-        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_GROUPS, CREATETABLE_TRACKS, CREATETABLE_ACTION)) {
+        HikariConfig config = new HikariConfig();
+        config.setMaximumPoolSize(configuration.getPoolSize());
+        config.setPoolName("luckperms-sqlite");
+        config.setDriverClassName("org.sqlite.JDBC");
+        config.setJdbcUrl("jdbc:sqlite:" + file.getAbsolutePath());
+        config.setDataSourceProperties(getConnectionProperties());
+
+        readPool = new HikariDataSource(config);
+
+        if (!setupTables(CREATETABLE_UUID, CREATETABLE_USERS, CREATETABLE_PLAYERS, CREATETABLE_USER_PERMISSIONS, CREATETABLE_GROUPS, CREATETABLE_GROUP_PERMISSIONS, CREATEINDEX_USER_PERMISSIONS_UUID, CREATEINDEX_USER_PERMISSIONS_PERMISSION, CREATEINDEX_GROUP_PERMISSIONS_NAME, CREATEINDEX_GROUP_PERMISSIONS_PERMISSION, CREATETABLE_TRACKS, CREATETABLE_ACTION, CREATETABLE_CHANGES)) {
             plugin.getLog().severe("Error occurred whilst initialising the database.");
             shutdown();
         } else {
@@ -55,69 +87,141 @@ public class SQLiteDatastore extends SQLDatastore {
         }
     }
 
+    private static Properties getConnectionProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("journal_mode", "WAL");
+        properties.setProperty("synchronous", "NORMAL");
+        properties.setProperty("busy_timeout", "10000");
+        return properties;
+    }
+
     @Override
     boolean runQuery(String query, QueryPS queryPS) {
         boolean success = false;
+        writeLock.lock();
         try {
-            Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
-            }
-
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
+            PreparedStatement preparedStatement = getWriteStatement(query);
             queryPS.onRun(preparedStatement);
             preparedStatement.execute();
 
             success = true;
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            writeLock.unlock();
         }
         return success;
     }
 
     @Override
-    boolean runQuery(String query, QueryPS queryPS, QueryRS queryRS) {
+    String upsert(String table, String key, String... columns) {
+        return "INSERT OR REPLACE INTO " + table + "(" + String.join(", ", columns) + ") VALUES" + placeholders(columns.length);
+    }
+
+    @Override
+    String insertIfAbsent(String table, String key) {
+        return "INSERT OR IGNORE INTO " + table + "(" + key + ") VALUES(?)";
+    }
+
+    @Override
+    boolean runBatch(String query, QueryPS queryPS) {
         boolean success = false;
+        writeLock.lock();
         try {
-            Connection connection = getConnection();
-            if (connection == null || connection.isClosed()) {
-                throw new IllegalStateException("SQL connection is null");
+            PreparedStatement preparedStatement = getWriteStatement(query);
+            try {
+                queryPS.onRun(preparedStatement);
+                preparedStatement.executeBatch();
+            } finally {
+                preparedStatement.clearBatch();
             }
 
-            @Cleanup PreparedStatement preparedStatement = connection.prepareStatement(query);
-            queryPS.onRun(preparedStatement);
-
-            @Cleanup ResultSet resultSet = preparedStatement.executeQuery();
-            success = queryRS.onResult(resultSet);
+            success = true;
         } catch (SQLException e) {
             e.printStackTrace();
+        } finally {
+            writeLock.unlock();
         }
         return success;
     }
 
     @Override
     public void shutdown() {
+        actionLog.shutdown();
+        writeLock.lock();
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            closeWriteConnection();
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (readPool != null) {
+            readPool.close();
         }
     }
 
     @Override
     Connection getConnection() throws SQLException {
-        synchronized (connectionLock) {
-            if (connection == null || connection.isClosed()) {
-                try {
-                    Class.forName("org.sqlite.JDBC");
-                } catch (ClassNotFoundException ignored) {}
+        return readPool.getConnection();
+    }
 
-                connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
-            }
+    /**
+     * Runs the operation as a transaction on the write connection, holding the write lock throughout, as that's where
+     * its writes are made
+     */
+    @Override
+    boolean inTransaction(Supplier<Boolean> operation) {
+        writeLock.lock();
+        try {
+            return runInTransaction(getWriteConnection(), operation);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the write connection, opening it if needed. Must be called whilst holding the write lock.
+     */
+    private Connection getWriteConnection() throws SQLException {
+        if (writeConnection == null || writeConnection.isClosed()) {
+            writeStatements.clear();
+            try {
+                Class.forName("org.sqlite.JDBC");
+            } catch (ClassNotFoundException ignored) {}
+
+            writeConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath(), getConnectionProperties());
         }
+        return writeConnection;
+    }
+
+    /**
+     * Gets a reusable statement on the write connection, opening the connection if needed. Must be called whilst
+     * holding the write lock.
+     */
+    private PreparedStatement getWriteStatement(String query) throws SQLException {
+        Connection connection = getWriteConnection();
+        PreparedStatement preparedStatement = writeStatements.get(query);
+        if (preparedStatement == null) {
+            preparedStatement = connection.prepareStatement(query);
+            writeStatements.put(query, preparedStatement);
+        } else {
+            preparedStatement.clearParameters();
+        }
+        return preparedStatement;
+    }
 
-        return connection;
+    private void closeWriteConnection() {
+        writeStatements.clear();
+        try {
+            if (writeConnection != null && !writeConnection.isClosed()) {
+                writeConnection.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        writeConnection = null;
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage.methods;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import lombok.Cleanup;
+
+import java.io.*;
+import java.lang.reflect.Type;
+import java.util.*;
+
+/**
+ * Maps the permissions held by each user to the users holding them, so flatfile datastores can find users by
+ * permission without reading every user file.
+ *
+ * The index is kept in memory, and written to a sidecar file on shutdown.
+ */
+class UserPermissionIndex {
+    private static final Type INDEX_TYPE = new TypeToken<Map<String, Set<String>>>(){}.getType();
+
+    private final Map<UUID, Set<String>> permissionsByUser = new HashMap<>();
+    private final Map<String, Set<UUID>> usersByPermission = new HashMap<>();
+
+    /**
+     * Replaces the permissions indexed for a user
+     * @param uuid the user
+     * @param permissions the permissions of each of the users nodes
+     */
+    synchronized void update(UUID uuid, Set<String> permissions) {
+        Set<String> before = permissionsByUser.get(uuid);
+        if (before != null && before.equals(permissions)) {
+            return;
+        }
+
+        remove(uuid);
+        if (permissions.isEmpty()) {
+            return;
+        }
+
+        Set<String> after = ImmutableSet.copyOf(permissions);
+        permissionsByUser.put(uuid, after);
+        for (String permission : after) {
+            usersByPermission.computeIfAbsent(permission, p -> new HashSet<>()).add(uuid);
+        }
+    }
+
+    synchronized void remove(UUID uuid) {
+        Set<String> before = permissionsByUser.remove(uuid);
+        if (before == null) {
+            return;
+        }
+
+        for (String permission : before) {
+            Set<UUID> users = usersByPermission.get(permission);
+            if (users != null) {
+                users.remove(uuid);
+                if (users.isEmpty()) {
+                    usersByPermission.remove(permission);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes every user not in the given set
+     * @param uuids the users to keep
+     */
+    synchronized void retain(Set<UUID> uuids) {
+        new ArrayList<>(permissionsByUser.keySet()).stream()
+                .filter(uuid -> !uuids.contains(uuid))
+                .forEach(this::remove);
+    }
+
+    synchronized Set<UUID> getUsers(String permission) {
+        Set<UUID> users = usersByPermission.get(permission);
+        return users == null ? new HashSet<>() : new HashSet<>(users);
+    }
+
+    synchronized Set<String> getPermissions(UUID uuid) {
+        return permissionsByUser.getOrDefault(uuid, Collections.emptySet());
+    }
+
+    /**
+     * Reads the index from a file, replacing the current contents
+     * @param file the file to read
+     * @return true if the file existed and was read successfully
+     */
+    synchronized boolean load(File file) {
+        if (!file.exists()) {
+            return false;
+        }
+
+        try {
+            @Cleanup FileReader fileReader = new FileReader(file);
+            @Cleanup BufferedReader bufferedReader = new BufferedReader(fileReader);
+            Map<String, Set<String>> index = new Gson().fromJson(bufferedReader, INDEX_TYPE);
+
+            permissionsByUser.clear();
+            usersByPermission.clear();
+            if (index != null) {
+                index.forEach((uuid, permissions) -> update(UUID.fromString(uuid), permissions));
+            }
+            return index != null;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    synchronized boolean save(File file) {
+        Map<String, Set<String>> index = new HashMap<>();
+        permissionsByUser.forEach((uuid, permissions) -> index.put(uuid.toString(), permissions));
+
+        try {
+            @Cleanup FileWriter fileWriter = new FileWriter(file);
+            @Cleanup BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
+            new Gson().toJson(index, INDEX_TYPE, bufferedWriter);
+            bufferedWriter.flush();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
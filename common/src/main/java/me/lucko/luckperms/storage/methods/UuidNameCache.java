@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage.methods;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Maps lowercase usernames to uuids, and uuids to the name last saved for them, keeping the most recently used
+ * entries up to a maximum size. Entries can also expire a fixed time after they were last put, for when the backing
+ * store is shared and may be changed elsewhere.
+ */
+class UuidNameCache {
+    private final int maxSize;
+    private final long expireAfterWriteNanos;
+    private final Map<UUID, String> namesByUuid = new HashMap<>();
+    private final Map<String, Long> writeTimes = new HashMap<>();
+    private final LinkedHashMap<String, UUID> uuidsByName;
+
+    UuidNameCache(int maxSize) {
+        this(maxSize, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries
+     * @param expireAfterWrite how long after being put an entry expires, or 0 to never expire entries
+     * @param unit the unit of expireAfterWrite
+     */
+    UuidNameCache(int maxSize, long expireAfterWrite, TimeUnit unit) {
+        this.maxSize = maxSize;
+        this.expireAfterWriteNanos = unit.toNanos(expireAfterWrite);
+        this.uuidsByName = new LinkedHashMap<String, UUID>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UUID> eldest) {
+                if (size() <= UuidNameCache.this.maxSize) {
+                    return false;
+                }
+                namesByUuid.remove(eldest.getValue(), eldest.getKey());
+                writeTimes.remove(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Records the name of a uuid
+     * @param name the lowercase name
+     * @param uuid the uuid
+     * @return true if the entry was not already cached
+     */
+    synchronized boolean put(String name, UUID uuid) {
+        UUID previous = uuidsByName.put(name, uuid);
+        String previousName = namesByUuid.put(uuid, name);
+        if (expireAfterWriteNanos > 0L) {
+            writeTimes.put(name, System.nanoTime());
+        }
+
+        // The name used to belong to someone else.
+        if (previous != null && !previous.equals(uuid)) {
+            namesByUuid.remove(previous, name);
+        }
+        return !uuid.equals(previous) || !name.equals(previousName);
+    }
+
+    synchronized UUID getUuid(String name) {
+        if (expireIfStale(name)) {
+            return null;
+        }
+        return uuidsByName.get(name);
+    }
+
+    synchronized String getName(UUID uuid) {
+        String name = namesByUuid.get(uuid);
+        if (name != null && expireIfStale(name)) {
+            return null;
+        }
+
+        if (name != null) {
+            // Mark the entry as used
+            uuidsByName.get(name);
+        }
+        return name;
+    }
+
+    /**
+     * Removes the entry for a name if it has expired
+     * @param name the lowercase name
+     * @return true if the entry was removed
+     */
+    private boolean expireIfStale(String name) {
+        Long written = writeTimes.get(name);
+        if (written == null || System.nanoTime() - written < expireAfterWriteNanos) {
+            return false;
+        }
+
+        UUID uuid = uuidsByName.remove(name);
+        if (uuid != null) {
+            namesByUuid.remove(uuid, name);
+        }
+        writeTimes.remove(name);
+        return true;
+    }
+
+    synchronized Map<String, UUID> getAll() {
+        return new HashMap<>(uuidsByName);
+    }
+
+    synchronized int size() {
+        return uuidsByName.size();
+    }
+}
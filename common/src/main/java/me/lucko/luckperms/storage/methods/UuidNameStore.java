@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package me.lucko.luckperms.storage.methods;
+
+import lombok.Cleanup;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Stores the uuid cache of flatfile datastores. The cache is held in memory, and read from a snapshot file followed
+ * by a journal of the entries saved since the snapshot was written. Both files hold "name=uuid" lines, in the order
+ * they were saved, so the last name read for a uuid is its current name.
+ *
+ * New entries are appended to the journal as soon as they are saved, so they are kept if the server stops without
+ * shutting down. The journal is compacted into the snapshot once it grows larger than the snapshot, and on shutdown.
+ */
+class UuidNameStore {
+    private static final int MIN_COMPACT_SIZE = 1000;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final UuidNameCache cache = new UuidNameCache(Integer.MAX_VALUE);
+
+    private Writer journal = null;
+    private int journalSize = 0;
+
+    UuidNameStore(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Reads the snapshot and replays the journal
+     */
+    synchronized void load() {
+        read(snapshotFile);
+        journalSize = read(journalFile);
+    }
+
+    /**
+     * Reads the entries of a file into the cache. Snapshots written before the journal existed are properties files,
+     * which have the same format apart from a comment at the top.
+     * @return the number of entries read
+     */
+    private int read(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int entries = 0;
+        try {
+            @Cleanup BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The last line of the journal is incomplete if the server stopped whilst writing it.
+                int split = line.indexOf('=');
+                if (line.startsWith("#") || split == -1 || line.length() - split - 1 != 36) {
+                    continue;
+                }
+
+                try {
+                    cache.put(line.substring(0, split), UUID.fromString(line.substring(split + 1)));
+                    entries++;
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return entries;
+    }
+
+    /**
+     * Saves the name of a uuid, appending it to the journal if it has changed
+     * @param name the lowercase name
+     * @param uuid the uuid
+     * @return true if the entry was saved successfully
+     */
+    synchronized boolean save(String name, UUID uuid) {
+        if (!cache.put(name, uuid)) {
+            return true;
+        }
+
+        try {
+            if (journal == null) {
+                journal = Files.newBufferedWriter(journalFile.toPath(), StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            journal.write(name + "=" + uuid + "\n");
+            journal.flush();
+            journalSize++;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        if (journalSize > Math.max(MIN_COMPACT_SIZE, cache.size())) {
+            compact();
+        }
+        return true;
+    }
+
+    UUID getUuid(String name) {
+        return cache.getUuid(name);
+    }
+
+    String getName(UUID uuid) {
+        return cache.getName(uuid);
+    }
+
+    /**
+     * Writes every entry to a new snapshot, and clears the journal
+     * @return true if the snapshot was written successfully
+     */
+    synchronized boolean compact() {
+        File temp = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try {
+            // Previous names are written first, so the current name of each uuid is read last.
+            Map<String, UUID> entries = cache.getAll();
+            try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                for (boolean current : new boolean[]{false, true}) {
+                    for (Map.Entry<String, UUID> e : entries.entrySet()) {
+                        if (e.getKey().equals(cache.getName(e.getValue())) == current) {
+                            writer.write(e.getKey() + "=" + e.getValue() + "\n");
+                        }
+                    }
+                }
+            }
+            Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+            Files.deleteIfExists(journalFile.toPath());
+            journalSize = 0;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+}
@@ -113,9 +113,11 @@ public class YAMLDatastore extends FlatfileDatastore {
                             data.put("perms", exportToLegacy(user.getNodes()));
                             doWrite(userFile, data);
                         }
+                        indexUser(user);
                         return true;
                     });
                 } else {
+                    unindexUser(uuid);
                     if (plugin.getUserManager().shouldSave(user)) {
                         user.clearNodes();
                         user.setPrimaryGroup(null);
@@ -140,6 +142,7 @@ public class YAMLDatastore extends FlatfileDatastore {
                     if (userFile.exists()) {
                         userFile.delete();
                     }
+                    unindexUser(user.getUuid());
                     return true;
                 }
 
@@ -157,7 +160,12 @@ public class YAMLDatastore extends FlatfileDatastore {
                 values.put("name", user.getName());
                 values.put("primary-group", user.getPrimaryGroup());
                 values.put("perms", exportToLegacy(user.getNodes()));
-                return doWrite(userFile, values);
+
+                boolean success = doWrite(userFile, values);
+                if (success) {
+                    indexUser(user);
+                }
+                return success;
             }, false);
         } finally {
             user.getIoLock().unlock();
@@ -167,7 +175,7 @@ public class YAMLDatastore extends FlatfileDatastore {
     @Override
     public boolean cleanupUsers() {
         return call(() -> {
-            File[] files = usersDir.listFiles((dir, name1) -> name1.endsWith(".yml"));
+            File[] files = getUserFilesToScan(".yml");
             if (files == null) return false;
 
             for (File file : files) {
@@ -186,8 +194,12 @@ public class YAMLDatastore extends FlatfileDatastore {
                     }
                 }
 
+                UUID uuid = getUserUuid(file, ".yml");
                 if (shouldDelete) {
                     file.delete();
+                    unindexUser(uuid);
+                } else {
+                    indexUser(uuid, nodes);
                 }
             }
             return true;
@@ -22,11 +22,14 @@
 
 package me.lucko.luckperms.users;
 
+import com.google.common.collect.ImmutableSortedSet;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
 import me.lucko.luckperms.LuckPermsPlugin;
+import me.lucko.luckperms.api.Contexts;
+import me.lucko.luckperms.api.LocalizedNode;
 import me.lucko.luckperms.api.event.events.GroupAddEvent;
 import me.lucko.luckperms.api.implementation.internal.GroupLink;
 import me.lucko.luckperms.api.implementation.internal.PermissionHolderLink;
@@ -35,12 +38,14 @@ import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
 import me.lucko.luckperms.exceptions.ObjectLacksException;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.utils.Identifiable;
+import me.lucko.luckperms.utils.VersionedCache;
 
-import java.util.UUID;
+import java.util.*;
 
 @ToString(of = {"uuid"})
 @EqualsAndHashCode(of = {"uuid"}, callSuper = false)
 public abstract class User extends PermissionHolder implements Identifiable<UserIdentifier> {
+    private static final int MAX_RESOLVED_CONTEXTS = 16;
 
     /**
      * The users Mojang UUID
@@ -52,7 +57,6 @@ public abstract class User extends PermissionHolder implements Identifiable<User
      * The last known username of a player
      */
     @Getter
-    @Setter
     private String name;
 
     /**
@@ -62,6 +66,20 @@ public abstract class User extends PermissionHolder implements Identifiable<User
     @Setter
     private String primaryGroup = null;
 
+    /**
+     * The fully resolved nodes of this user, mapped by the context they were resolved in.
+     * Entries are recalculated once the user, or any group they inherit, changes. Only the most recently used
+     * {@link #MAX_RESOLVED_CONTEXTS} contexts are kept.
+     */
+    private final Map<Contexts, VersionedCache<SortedSet<LocalizedNode>>> resolvedCache = Collections.synchronizedMap(
+            new LinkedHashMap<Contexts, VersionedCache<SortedSet<LocalizedNode>>>(MAX_RESOLVED_CONTEXTS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Contexts, VersionedCache<SortedSet<LocalizedNode>>> eldest) {
+                    return size() > MAX_RESOLVED_CONTEXTS;
+                }
+            }
+    );
+
     protected User(UUID uuid, LuckPermsPlugin plugin) {
         super(uuid.toString(), plugin);
         this.uuid = uuid;
@@ -74,11 +92,44 @@ public abstract class User extends PermissionHolder implements Identifiable<User
         this.name = name;
     }
 
+    public void setName(String name) {
+        String previous = this.name;
+        this.name = name;
+        getPlugin().getUserManager().onNameChange(this, previous);
+    }
+
     @Override
     public UserIdentifier getId() {
         return UserIdentifier.of(uuid, name);
     }
 
+    @Override
+    protected SortedSet<LocalizedNode> resolveAllNodes(Set<String> excludedGroups, Set<String> hitExcludedGroups, Contexts context) {
+        if (!excludedGroups.isEmpty()) {
+            return super.resolveAllNodes(excludedGroups, hitExcludedGroups, context);
+        }
+
+        return resolvedCache.computeIfAbsent(context, c -> new VersionedCache<>(() ->
+                ImmutableSortedSet.copyOfSorted(super.resolveAllNodes(new HashSet<>(), new HashSet<>(), c))
+        )).getFresh();
+    }
+
+    /**
+     * Checks whether any of the users resolved nodes were inherited from, or affected by, the given holder
+     * @param holder the holder, usually a group
+     * @return true if the users permissions would have to be recalculated after the holder changes
+     */
+    public boolean dependsOn(PermissionHolder holder) {
+        synchronized (resolvedCache) {
+            for (VersionedCache<SortedSet<LocalizedNode>> cache : resolvedCache.values()) {
+                if (cache.dependsOn(holder)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
     /**
      * Refresh and re-assign the users permissions
      */
@@ -30,31 +30,62 @@ import me.lucko.luckperms.exceptions.ObjectAlreadyHasException;
 import me.lucko.luckperms.utils.AbstractManager;
 import me.lucko.luckperms.utils.Identifiable;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 @RequiredArgsConstructor
 public abstract class UserManager extends AbstractManager<UserIdentifier, User> {
     private final LuckPermsPlugin plugin;
 
+    /**
+     * The loaded users, mapped by their lowercase name
+     */
+    private final Map<String, User> usersByName = new ConcurrentHashMap<>();
+
     /**
      * Get a user object by name
      * @param name The name to search by
      * @return a {@link User} object if the user is loaded, returns null if the user is not loaded
      */
-    @SuppressWarnings("OptionalGetWithoutIsPresent")
     public User get(String name) {
-        for (User user : getAll().values()) {
-            if (user.getName().equalsIgnoreCase(name)) {
-                return user;
-            }
-        }
-        return null;
+        return name == null ? null : usersByName.get(name.toLowerCase());
     }
 
     public User get(UUID uuid) {
         return get(UserIdentifier.of(uuid, null));
     }
 
+    @Override
+    protected void postLoad(User user) {
+        if (user.getName() != null) {
+            usersByName.put(user.getName().toLowerCase(), user);
+        }
+    }
+
+    @Override
+    protected void postUnload(User user) {
+        if (user.getName() != null) {
+            usersByName.remove(user.getName().toLowerCase(), user);
+        }
+        plugin.getExpiryScheduler().cancel(user);
+    }
+
+    /**
+     * Updates the name a user is found by, if they are loaded
+     * @param user the user
+     * @param previous the users previous name
+     */
+    void onNameChange(User user, String previous) {
+        // The previous name is removed even if the user isn't loaded, in case they were unloaded whilst being renamed.
+        if (previous != null) {
+            usersByName.remove(previous.toLowerCase(), user);
+        }
+
+        // Checked and updated under the same lock as loads and unloads, so an unloaded user is never added back.
+        runIfLoaded(user, () -> postLoad(user));
+    }
+
     /**
      * Set a user to the default group
      * @param user the user to give to
@@ -123,6 +154,14 @@ public abstract class UserManager extends AbstractManager<UserIdentifier, User>
      */
     public abstract void cleanup(User user);
 
+    /**
+     * Recalculates the permissions of all loaded users, without reloading their data.
+     * Users who are not affected by a change are served from their resolved node caches.
+     */
+    public void refreshAllUsers() {
+        getAll().values().forEach(User::refreshPermissions);
+    }
+
     /**
      * Reloads the data of all online users
      */
@@ -51,7 +51,11 @@ public abstract class AbstractManager<I, T extends Identifiable<I>> implements F
      */
     public final T getOrMake(I id) {
         synchronized (objects) {
-            return objects.computeIfAbsent(id, this);
+            return objects.computeIfAbsent(id, i -> {
+                T t = apply(i);
+                postLoad(t);
+                return t;
+            });
         }
     }
 
@@ -86,22 +90,52 @@ public abstract class AbstractManager<I, T extends Identifiable<I>> implements F
             synchronized (objects) {
                 objects.computeIfPresent(t.getId(), (i, t1) -> {
                     preUnload(t1);
+                    postUnload(t1);
                     return null;
                 });
             }
         }
     }
 
+    /**
+     * Runs an action whilst holding the lock on the managed objects, if the object is still loaded
+     * @param t the object
+     * @param action the action to run
+     * @return true if the object was loaded, and the action was run
+     */
+    protected final boolean runIfLoaded(T t, Runnable action) {
+        synchronized (objects) {
+            if (objects.get(t.getId()) != t) {
+                return false;
+            }
+
+            action.run();
+            return true;
+        }
+    }
+
     protected void preUnload(T t) {
 
     }
 
+    /*
+        Called whilst holding the lock on the managed objects, once an object is added, and as it is removed.
+     */
+    protected void postLoad(T t) {
+
+    }
+
+    protected void postUnload(T t) {
+
+    }
+
     /**
      * Unloads all objects from the manager
      */
     public final void unloadAll() {
         synchronized (objects) {
             objects.values().forEach(this::preUnload);
+            objects.values().forEach(this::postUnload);
             objects.clear();
         }
     }
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.utils;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * An immutable record of the {@link Versioned} sources read by a computation, and the versions that were read.
+ *
+ * <p>Sources are tracked against the computation currently being recorded on the calling thread, so nested
+ * computations (and cached values returned within them) contribute their sources to the outer computation.</p>
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Dependencies {
+    private static final ThreadLocal<Map<Versioned, Long>> RECORDING = new ThreadLocal<>();
+
+    public static final Dependencies NONE = new Dependencies(new Versioned[0], new long[0]);
+
+    private final Versioned[] sources;
+    private final long[] versions;
+
+    /**
+     * Checks whether all of the sources are still at the versions which were read
+     * @return true if no source has changed since it was recorded
+     */
+    public boolean isCurrent() {
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i].getVersion() != versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the given source was read
+     * @param source the source
+     * @return true if the source is one of the dependencies
+     */
+    public boolean contains(Versioned source) {
+        for (Versioned s : sources) {
+            if (s == source) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Records that the computation running on this thread depends on the given source.
+     * This should be called before the state of the source is read.
+     * @param source the source
+     */
+    public static void track(Versioned source) {
+        Map<Versioned, Long> recording = RECORDING.get();
+        if (recording != null) {
+            recording.putIfAbsent(source, source.getVersion());
+        }
+    }
+
+    /**
+     * Records that the computation running on this thread depends on a previously recorded set of sources.
+     * Used when a value computed earlier is reused.
+     * @param dependencies the dependencies of the reused value
+     */
+    public static void track(Dependencies dependencies) {
+        Map<Versioned, Long> recording = RECORDING.get();
+        if (recording != null) {
+            dependencies.addTo(recording);
+        }
+    }
+
+    /**
+     * Runs a computation, recording the sources it depends on
+     * @param supplier the computation
+     * @param <T> the result type
+     * @return the result, and the sources it depends on
+     */
+    public static <T> Tracked<T> record(Supplier<T> supplier) {
+        Map<Versioned, Long> parent = RECORDING.get();
+        Map<Versioned, Long> recording = new IdentityHashMap<>();
+
+        RECORDING.set(recording);
+        T value;
+        try {
+            value = supplier.get();
+        } finally {
+            if (parent == null) {
+                RECORDING.remove();
+            } else {
+                RECORDING.set(parent);
+            }
+        }
+
+        Dependencies dependencies = of(recording);
+        if (parent != null) {
+            dependencies.addTo(parent);
+        }
+        return new Tracked<>(value, dependencies);
+    }
+
+    private static Dependencies of(Map<Versioned, Long> recording) {
+        if (recording.isEmpty()) {
+            return NONE;
+        }
+
+        Versioned[] sources = new Versioned[recording.size()];
+        long[] versions = new long[recording.size()];
+
+        int i = 0;
+        for (Map.Entry<Versioned, Long> e : recording.entrySet()) {
+            sources[i] = e.getKey();
+            versions[i] = e.getValue();
+            i++;
+        }
+        return new Dependencies(sources, versions);
+    }
+
+    private void addTo(Map<Versioned, Long> recording) {
+        for (int i = 0; i < sources.length; i++) {
+            recording.putIfAbsent(sources[i], versions[i]);
+        }
+    }
+
+    /**
+     * A computed value, and the sources it was computed from
+     * @param <T> the value type
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static final class Tracked<T> {
+        private final T value;
+        private final Dependencies dependencies;
+
+        public boolean isCurrent() {
+            return dependencies.isCurrent();
+        }
+    }
+}
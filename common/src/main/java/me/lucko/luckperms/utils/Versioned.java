@@ -20,25 +20,18 @@
  *  SOFTWARE.
  */
 
-package me.lucko.luckperms.utils;
 
-import java.util.function.Supplier;
+package me.lucko.luckperms.utils;
 
-public class Cache<T> {
-    private T t = null;
+/**
+ * An object whose state can be identified by a version number
+ */
+public interface Versioned {
 
-    public T get(Supplier<T> supplier) {
-        synchronized (this) {
-            if (t == null) {
-                t = supplier.get();
-            }
-            return t;
-        }
-    }
+    /**
+     * Gets the current version of this object. The value changes each time the state of the object changes.
+     * @return the current version
+     */
+    long getVersion();
 
-    public void invalidate() {
-        synchronized (this) {
-            t = null;
-        }
-    }
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2016 Lucko (Luck) <luck@lucko.me>
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+
+package me.lucko.luckperms.utils;
+
+import lombok.RequiredArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A memoized value which is recalculated when any of the {@link Versioned} sources it was computed from change.
+ *
+ * <p>Sources are recorded using {@link Dependencies#track(Versioned)} whilst the supplier runs. Reads of a current
+ * value never block. Only one thread recalculates a stale value at a time - other readers are given the stale
+ * value in the meantime, unless they request a fresh one using {@link #getFresh()}.</p>
+ *
+ * @param <T> the value type
+ */
+@RequiredArgsConstructor
+public class VersionedCache<T> {
+    private final Supplier<T> supplier;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong invalidations = new AtomicLong(0L);
+    private volatile Entry<T> entry = null;
+
+    /**
+     * Gets the value, returning a stale value if another thread is already recalculating it
+     * @return the value
+     */
+    public T get() {
+        Entry<T> e = entry;
+        if (e != null && isCurrent(e)) {
+            Dependencies.track(e.value.getDependencies());
+            return e.value.getValue();
+        }
+
+        if (e != null) {
+            if (!lock.tryLock()) {
+                Dependencies.track(e.value.getDependencies());
+                return e.value.getValue();
+            }
+        } else {
+            lock.lock();
+        }
+
+        try {
+            return refresh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the value, waiting for it to be recalculated if it is stale
+     * @return the value
+     */
+    public T getFresh() {
+        Entry<T> e = entry;
+        if (e != null && isCurrent(e)) {
+            Dependencies.track(e.value.getDependencies());
+            return e.value.getValue();
+        }
+
+        lock.lock();
+        try {
+            return refresh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks whether the last calculated value was computed from the given source
+     * @param source the source
+     * @return true if a value has been calculated, and depends on the source
+     */
+    public boolean dependsOn(Versioned source) {
+        Entry<T> e = entry;
+        return e != null && e.value.getDependencies().contains(source);
+    }
+
+    /**
+     * Marks the value as stale, regardless of its sources
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+    }
+
+    private T refresh() {
+        // Another thread may have finished recalculating whilst we were waiting
+        Entry<T> e = entry;
+        if (e != null && isCurrent(e)) {
+            Dependencies.track(e.value.getDependencies());
+            return e.value.getValue();
+        }
+
+        long invalidation = invalidations.get();
+        Dependencies.Tracked<T> value = Dependencies.record(supplier);
+        entry = new Entry<>(invalidation, value);
+        return value.getValue();
+    }
+
+    private boolean isCurrent(Entry<T> e) {
+        return e.invalidation == invalidations.get() && e.value.isCurrent();
+    }
+
+    @RequiredArgsConstructor
+    private static final class Entry<T> {
+        private final long invalidation;
+        private final Dependencies.Tracked<T> value;
+    }
+}
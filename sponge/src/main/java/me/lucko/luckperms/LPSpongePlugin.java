@@ -28,6 +28,8 @@ import me.lucko.luckperms.api.LuckPermsApi;
 import me.lucko.luckperms.api.PlatformType;
 import me.lucko.luckperms.api.implementation.ApiProvider;
 import me.lucko.luckperms.api.sponge.LuckPermsService;
+import me.lucko.luckperms.api.sponge.collections.UserCollection;
+import me.lucko.luckperms.caching.ContextualCache;
 import me.lucko.luckperms.commands.ConsecutiveExecutor;
 import me.lucko.luckperms.commands.Sender;
 import me.lucko.luckperms.config.LPConfiguration;
@@ -37,10 +39,11 @@ import me.lucko.luckperms.contexts.ContextManager;
 import me.lucko.luckperms.contexts.ContextUpdateTask;
 import me.lucko.luckperms.contexts.ServerCalculator;
 import me.lucko.luckperms.contexts.WorldCalculator;
+import me.lucko.luckperms.core.ExpiryScheduler;
 import me.lucko.luckperms.core.UuidCache;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.data.Importer;
 import me.lucko.luckperms.groups.GroupManager;
-import me.lucko.luckperms.runnables.ExpireTemporaryTask;
 import me.lucko.luckperms.runnables.UpdateTask;
 import me.lucko.luckperms.storage.Datastore;
 import me.lucko.luckperms.storage.StorageFactory;
@@ -100,6 +103,8 @@ public class LPSpongePlugin implements LuckPermsPlugin {
     private ConsecutiveExecutor consecutiveExecutor;
     private LuckPermsService service;
     private LocaleManager localeManager;
+    private ExpiryScheduler expiryScheduler;
+    private WorkerPool workerPool;
     private ContextManager<Player> contextManager; // TODO convert this to use Subject instead of Player
 
     @Listener
@@ -108,6 +113,8 @@ public class LPSpongePlugin implements LuckPermsPlugin {
 
         getLog().info("Loading configuration...");
         configuration = new SpongeConfig(this);
+        expiryScheduler = new ExpiryScheduler(this);
+        workerPool = new WorkerPool();
 
         localeManager = new LocaleManager();
         File locale = new File(getMainDir(), "lang.yml");
@@ -154,7 +161,7 @@ public class LPSpongePlugin implements LuckPermsPlugin {
 
         int mins = getConfiguration().getSyncTime();
         if (mins > 0) {
-            scheduler.createTaskBuilder().async().interval(mins, TimeUnit.MINUTES).execute(new UpdateTask(this))
+            scheduler.createTaskBuilder().async().interval(mins, TimeUnit.MINUTES).execute(new UpdateTask(this, true))
                     .submit(LPSpongePlugin.this);
         } else {
             // Update online users
@@ -162,7 +169,6 @@ public class LPSpongePlugin implements LuckPermsPlugin {
         }
 
         scheduler.createTaskBuilder().intervalTicks(1L).execute(SpongeSenderFactory.get(this)).submit(this);
-        scheduler.createTaskBuilder().async().intervalTicks(60L).execute(new ExpireTemporaryTask(this)).submit(this);
         scheduler.createTaskBuilder().async().intervalTicks(20L).execute(consecutiveExecutor).submit(this);
         scheduler.createTaskBuilder().async().intervalTicks(600L).execute(new ContextUpdateTask(service.getUserSubjects())).submit(this);
 
@@ -173,6 +179,8 @@ public class LPSpongePlugin implements LuckPermsPlugin {
     public void onDisable(GameStoppingServerEvent event) {
         getLog().info("Closing datastore...");
         datastore.shutdown();
+        expiryScheduler.shutdown();
+        workerPool.shutdown();
 
         getLog().info("Unregistering API...");
         LuckPerms.unregisterProvider();
@@ -229,6 +237,12 @@ public class LPSpongePlugin implements LuckPermsPlugin {
         return game.getServer().getPlayer(getUuidCache().getExternalUUID(uuid)).isPresent() ? Message.PLAYER_ONLINE : Message.PLAYER_OFFLINE;
     }
 
+    @Override
+    public Map<String, String> getCacheInfo() {
+        UserCollection users = service.getUserSubjects();
+        return Collections.singletonMap("Subject Context Caches", ContextualCache.describe(users.getCachedContextCount(), users.getCacheStats()));
+    }
+
     @Override
     public int getPlayerCount() {
         return game.getServer().getOnlinePlayers().size();
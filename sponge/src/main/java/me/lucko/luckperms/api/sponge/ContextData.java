@@ -24,8 +24,14 @@ package me.lucko.luckperms.api.sponge;
 
 import lombok.Getter;
 import lombok.NonNull;
+import me.lucko.luckperms.api.Contexts;
 import me.lucko.luckperms.api.Tristate;
+import me.lucko.luckperms.api.event.events.UserPermissionRefreshEvent;
+import me.lucko.luckperms.api.implementation.internal.UserLink;
 import me.lucko.luckperms.calculators.*;
+import me.lucko.luckperms.core.PermissionHolder;
+import me.lucko.luckperms.users.User;
+import me.lucko.luckperms.utils.VersionedCache;
 import org.spongepowered.api.service.context.Context;
 
 import java.util.ArrayList;
@@ -35,7 +41,16 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * The permissions of a user or group subject in a single context.
+ *
+ * <p>The calculator is refilled from the holders shared {@link me.lucko.luckperms.caching.PermissionCache} whenever
+ * its snapshot changes. The snapshot cache is kept, and read without locking or waiting for recalculations, so
+ * lookups of already calculated permissions don't allocate or contend with other threads.</p>
+ */
 public class ContextData {
+    private final PermissionHolder holder;
+    private final LuckPermsService service;
 
     @Getter
     private final Map<String, String> context;
@@ -43,10 +58,26 @@ public class ContextData {
     @Getter
     private final Map<String, Boolean> permissionCache = new ConcurrentHashMap<>();
 
+    private final VersionedCache<Map<String, Boolean>> source;
     private final PermissionCalculator calculator;
 
-    public ContextData(LuckPermsUserSubject parent, Map<String, String> context, LuckPermsService service) {
+    /**
+     * The snapshot the permission cache was last filled from
+     */
+    private volatile Map<String, Boolean> snapshot = null;
+
+    public ContextData(PermissionHolder holder, Map<String, String> context, LuckPermsService service) {
+        this.holder = holder;
+        this.service = service;
         this.context = context;
+        this.source = holder.getPermissionCache().getSnapshot(new Contexts(
+                context,
+                service.getPlugin().getConfiguration().isIncludingGlobalPerms(),
+                service.getPlugin().getConfiguration().isIncludingGlobalWorldPerms(),
+                true,
+                service.getPlugin().getConfiguration().isApplyingGlobalGroups(),
+                service.getPlugin().getConfiguration().isApplyingGlobalWorldGroups()
+        ));
 
         Set<Context> contexts = context.entrySet().stream().map(e -> new Context(e.getKey(), e.getValue())).collect(Collectors.toSet());
         List<PermissionProcessor> processors = new ArrayList<>(5);
@@ -60,7 +91,41 @@ public class ContextData {
         }
         processors.add(new DefaultsProcessor(service, contexts));
 
-        calculator = new PermissionCalculator(service.getPlugin(), parent.getUser().getName(), service.getPlugin().getConfiguration().isDebugPermissionChecks(), processors);
+        String name = holder instanceof User ? ((User) holder).getName() : holder.getObjectName();
+        calculator = new PermissionCalculator(service.getPlugin(), name, service.getPlugin().getConfiguration().isDebugPermissionChecks(), processors);
+
+        // Filled without waiting for a recalculation another thread is running, as this is usually built on the thread
+        // checking a permission. The snapshot is only calculated here if it never has been for these contexts.
+        apply(source.get());
+    }
+
+    /**
+     * Refills the calculator if the holders permissions have changed since it was last filled, waiting for them to be
+     * recalculated if needed
+     * @return true if the permissions changed
+     */
+    public boolean refresh() {
+        return apply(source.getFresh());
+    }
+
+    private synchronized boolean apply(Map<String, Boolean> toApply) {
+        if (toApply == snapshot) {
+            return false;
+        }
+
+        snapshot = toApply;
+        if (toApply.equals(permissionCache)) {
+            return false;
+        }
+
+        permissionCache.clear();
+        permissionCache.putAll(toApply);
+        invalidateCache();
+
+        if (holder instanceof User) {
+            service.getPlugin().getApiProvider().fireEventAsync(new UserPermissionRefreshEvent(new UserLink((User) holder)));
+        }
+        return true;
     }
 
     public void invalidateCache() {
@@ -68,6 +133,13 @@ public class ContextData {
     }
 
     public Tristate getPermissionValue(@NonNull String permission) {
+        // Only take the lock if the holder has changed. A recalculation another thread is running isn't waited for,
+        // the next check or the background refresh picks up its result.
+        Map<String, Boolean> current = source.get();
+        if (current != snapshot) {
+            apply(current);
+        }
+
         me.lucko.luckperms.api.Tristate t = calculator.getPermissionValue(permission);
         if (t != me.lucko.luckperms.api.Tristate.UNDEFINED) {
             return Tristate.fromBoolean(t.asBoolean());
@@ -23,11 +23,15 @@
 package me.lucko.luckperms.api.sponge;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
 import me.lucko.luckperms.api.Contexts;
 import me.lucko.luckperms.api.Node;
+import me.lucko.luckperms.api.context.ContextSet;
+import me.lucko.luckperms.caching.ContextualCache;
 import me.lucko.luckperms.core.PermissionHolder;
 import me.lucko.luckperms.groups.Group;
 import me.lucko.luckperms.users.User;
@@ -39,7 +43,6 @@ import org.spongepowered.api.service.permission.SubjectData;
 import org.spongepowered.api.util.Tristate;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 import static me.lucko.luckperms.utils.ArgumentChecker.unescapeCharacters;
 
@@ -55,11 +58,22 @@ public class LuckPermsSubject implements Subject {
     private LuckPermsSubjectData transientData;
     protected LuckPermsService service;
 
+    @Getter
+    private ContextualCache<ContextData> contextData;
+
+    /**
+     * The contexts most recently checked, and their data. Subjects are usually checked repeatedly with the same
+     * contexts, such as those returned by {@link #getActiveContexts()}, so this avoids looking them up in
+     * {@link #contextData} each time.
+     */
+    private volatile LastLookup lastLookup = null;
+
     LuckPermsSubject(PermissionHolder holder, LuckPermsService service) {
         this.holder = holder;
         this.enduringData = new LuckPermsSubjectData(true, this, service, holder);
         this.transientData = new LuckPermsSubjectData(true, this, service, holder);
         this.service = service;
+        this.contextData = new ContextualCache<>();
     }
 
     public void deprovision() {
@@ -67,6 +81,8 @@ public class LuckPermsSubject implements Subject {
         enduringData = null;
         transientData = null;
         service = null;
+        contextData = null;
+        lastLookup = null;
     }
 
     void objectSave(PermissionHolder t) {
@@ -77,7 +93,7 @@ public class LuckPermsSubject implements Subject {
             }
             if (t instanceof Group) {
                 service.getPlugin().getDatastore().saveGroup(((Group) t));
-                service.getPlugin().runUpdateTask();
+                service.getPlugin().getUserManager().refreshAllUsers();
             }
         });
     }
@@ -127,21 +143,60 @@ public class LuckPermsSubject implements Subject {
 
     @Override
     public Tristate getPermissionValue(@NonNull Set<Context> contexts, @NonNull String node) {
-        Map<String, String> context = new HashMap<>();
-        for (Context c : contexts) {
-            context.put(c.getKey(), c.getValue());
+        me.lucko.luckperms.api.Tristate t = getContextData(contexts).getPermissionValue(node);
+        if (t != me.lucko.luckperms.api.Tristate.UNDEFINED) {
+            return Tristate.fromBoolean(t.asBoolean());
+        } else {
+            return Tristate.UNDEFINED;
+        }
+    }
+
+    private ContextData getContextData(Set<Context> contexts) {
+        LastLookup last = lastLookup;
+
+        // The same instance can only be assumed to hold the same contexts if it can't be modified
+        if (last != null && last.contexts == contexts && isImmutable(contexts)) {
+            return last.data;
         }
 
-        switch (holder.inheritsPermission(new me.lucko.luckperms.core.Node.Builder(node).withExtraContext(context).build())) {
-            case UNDEFINED:
-                return Tristate.UNDEFINED;
-            case TRUE:
-                return Tristate.TRUE;
-            case FALSE:
-                return Tristate.FALSE;
-            default:
-                return null;
+        // Context sets are interned, so can be compared by identity
+        ContextSet context = ContextSet.fromEntries(contexts);
+        if (last != null && last.context == context) {
+            if (last.contexts != contexts) {
+                lastLookup = new LastLookup(contexts, context, last.data);
+            }
+            return last.data;
         }
+
+        // The cache has already been checked, so the loader builds the data without looking it up again
+        ContextData data = contextData.get(context, map -> new ContextData(holder, map, service));
+        lastLookup = new LastLookup(contexts, context, data);
+        return data;
+    }
+
+    private static boolean isImmutable(Set<Context> contexts) {
+        return contexts instanceof ImmutableSet || contexts == SubjectData.GLOBAL_CONTEXT;
+    }
+
+    public ContextData calculatePermissions(Map<String, String> context, boolean apply) {
+        ContextData existing = contextData.getIfPresent(context);
+        if (existing == null) {
+            existing = new ContextData(holder, context, service);
+            if (apply) {
+                contextData.put(context, existing);
+            }
+        } else {
+            existing.refresh();
+        }
+        return existing;
+    }
+
+    public void calculatePermissions(Set<Context> contexts, boolean apply) {
+        calculatePermissions(ContextSet.fromEntries(contexts).toMap(), apply);
+    }
+
+    public void calculateActivePermissions(boolean apply) {
+        calculatePermissions(getActiveContexts(), apply);
     }
 
     @Override
@@ -209,11 +264,9 @@ public class LuckPermsSubject implements Subject {
     private String getChatMeta(Set<Context> contexts, boolean prefix, PermissionHolder holder) {
         if (holder == null) return "";
 
-        Map<String, String> context = contexts.stream().collect(Collectors.toMap(Context::getKey, Context::getValue));
-        String server = context.get("server");
-        String world = context.get("world");
-        context.remove("server");
-        context.remove("world");
+        ContextSet context = ContextSet.fromEntries(contexts);
+        String server = context.getServer();
+        String world = context.getWorld();
 
         int priority = Integer.MIN_VALUE;
         String meta = null;
@@ -235,7 +288,7 @@ public class LuckPermsSubject implements Subject {
                 continue;
             }
 
-            if (!n.shouldApplyWithContext(context, false)) {
+            if (!n.shouldApplyWithContext(context.getOther(), false)) {
                 continue;
             }
 
@@ -248,4 +301,11 @@ public class LuckPermsSubject implements Subject {
 
         return meta == null ? "" : unescapeCharacters(meta);
     }
+
+    @AllArgsConstructor
+    private static final class LastLookup {
+        private final Set<Context> contexts;
+        private final ContextSet context;
+        private final ContextData data;
+    }
 }
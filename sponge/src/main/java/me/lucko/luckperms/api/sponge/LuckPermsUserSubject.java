@@ -22,22 +22,17 @@
 
 package me.lucko.luckperms.api.sponge;
 
+import com.google.common.collect.ImmutableSet;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.NonNull;
-import me.lucko.luckperms.api.Contexts;
-import me.lucko.luckperms.api.event.events.UserPermissionRefreshEvent;
-import me.lucko.luckperms.api.implementation.internal.UserLink;
 import me.lucko.luckperms.users.User;
 import org.spongepowered.api.Sponge;
 import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.service.context.Context;
 import org.spongepowered.api.service.permission.SubjectData;
-import org.spongepowered.api.util.Tristate;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 public class LuckPermsUserSubject extends LuckPermsSubject {
     public static LuckPermsUserSubject wrapUser(User user, LuckPermsService service) {
@@ -47,14 +42,14 @@ public class LuckPermsUserSubject extends LuckPermsSubject {
     @Getter
     private User user;
 
-    @Getter
-    private Map<Map<String, String>, ContextData> contextData;
+    /**
+     * The contexts of the player in the tick they were last calculated
+     */
+    private volatile ActiveContexts activeContexts = null;
 
     private LuckPermsUserSubject(User user, LuckPermsService service) {
         super(user, service);
         this.user = user;
-
-        contextData = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -63,76 +58,9 @@ public class LuckPermsUserSubject extends LuckPermsSubject {
            As well as unloading, we also remove all references to the User instances. */
         super.deprovision();
         user = null;
-        contextData = null;
+        activeContexts = null;
     }
 
-    @Override
-    public Tristate getPermissionValue(@NonNull Set<Context> contexts, @NonNull String permission) {
-        Map<String, String> context = contexts.stream().collect(Collectors.toMap(Context::getKey, Context::getValue));
-        ContextData cd = contextData.computeIfAbsent(context, map -> calculatePermissions(map, false));
-
-        me.lucko.luckperms.api.Tristate t =  cd.getPermissionValue(permission);
-        if (t != me.lucko.luckperms.api.Tristate.UNDEFINED) {
-            return Tristate.fromBoolean(t.asBoolean());
-        } else {
-            return Tristate.UNDEFINED;
-        }
-    }
-
-    public ContextData calculatePermissions(Map<String, String> context, boolean apply) {
-        Map<String, Boolean> toApply = user.exportNodes(
-                new Contexts(
-                        context,
-                        service.getPlugin().getConfiguration().isIncludingGlobalPerms(),
-                        service.getPlugin().getConfiguration().isIncludingGlobalWorldPerms(),
-                        true,
-                        service.getPlugin().getConfiguration().isApplyingGlobalGroups(),
-                        service.getPlugin().getConfiguration().isApplyingGlobalWorldGroups()
-                ),
-                Collections.emptyList(),
-                true
-        );
-
-        ContextData existing = contextData.get(context);
-        if (existing == null) {
-            existing = new ContextData(this, context, service);
-            if (apply) {
-                contextData.put(context, existing);
-            }
-        }
-
-        boolean different = false;
-        if (toApply.size() != existing.getPermissionCache().size()) {
-            different = true;
-        } else {
-            for (Map.Entry<String, Boolean> e : existing.getPermissionCache().entrySet()) {
-                if (toApply.containsKey(e.getKey()) && toApply.get(e.getKey()) == e.getValue()) {
-                    continue;
-                }
-                different = true;
-                break;
-            }
-        }
-
-        if (!different) return existing;
-
-        existing.getPermissionCache().clear();
-        existing.invalidateCache();
-        existing.getPermissionCache().putAll(toApply);
-        service.getPlugin().getApiProvider().fireEventAsync(new UserPermissionRefreshEvent(new UserLink(user)));
-        return existing;
-    }
-
-    public void calculatePermissions(Set<Context> contexts, boolean apply) {
-        Map<String, String> context = contexts.stream().collect(Collectors.toMap(Context::getKey, Context::getValue));
-        calculatePermissions(context, apply);
-    }
-
-    public void calculateActivePermissions(boolean apply) {
-        calculatePermissions(getActiveContexts(), apply);
-    }
-
-
     @Override
     public String getIdentifier() {
         return service.getPlugin().getUuidCache().getExternalUUID(user.getUuid()).toString();
@@ -152,15 +80,40 @@ public class LuckPermsUserSubject extends LuckPermsSubject {
 
     @Override
     public Set<Context> getActiveContexts() {
+        // Contexts are only recalculated once per tick, as plugins may check permissions many times within one
+        int tick = Sponge.getServer().getRunningTimeTicks();
+        ActiveContexts last = activeContexts;
+        if (last != null && last.tick == tick) {
+            return last.contexts;
+        }
+
         final UUID uuid = service.getPlugin().getUuidCache().getExternalUUID(user.getUuid());
         Optional<Player> player = Sponge.getServer().getPlayer(uuid);
 
+        Set<Context> contexts;
         if (!player.isPresent()) {
-            return SubjectData.GLOBAL_CONTEXT;
+            contexts = SubjectData.GLOBAL_CONTEXT;
+        } else {
+            Map<String, String> context = new HashMap<>();
+            service.getPlugin().getContextManager().giveApplicableContext(player.get(), context);
+
+            ImmutableSet.Builder<Context> builder = ImmutableSet.builder();
+            context.forEach((k, v) -> builder.add(new Context(k, v)));
+            contexts = builder.build();
         }
 
-        Map<String, String> context = new HashMap<>();
-        service.getPlugin().getContextManager().giveApplicableContext(player.get(), context);
-        return context.entrySet().stream().map(e -> new Context(e.getKey(), e.getValue())).collect(Collectors.toSet());
+        // Keep returning the same instance whilst the contexts are unchanged, so it can be recognised by identity
+        if (last != null && last.contexts.equals(contexts)) {
+            contexts = last.contexts;
+        }
+
+        activeContexts = new ActiveContexts(tick, contexts);
+        return contexts;
+    }
+
+    @AllArgsConstructor
+    private static final class ActiveContexts {
+        private final int tick;
+        private final Set<Context> contexts;
     }
 }
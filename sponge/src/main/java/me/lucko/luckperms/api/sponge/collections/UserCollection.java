@@ -22,11 +22,13 @@
 
 package me.lucko.luckperms.api.sponge.collections;
 
+import com.google.common.cache.CacheStats;
 import lombok.Getter;
 import lombok.NonNull;
 import me.lucko.luckperms.api.sponge.LuckPermsService;
 import me.lucko.luckperms.api.sponge.LuckPermsUserSubject;
 import me.lucko.luckperms.api.sponge.simple.SimpleCollection;
+import me.lucko.luckperms.caching.ContextualCache;
 import me.lucko.luckperms.commands.Util;
 import me.lucko.luckperms.users.User;
 import me.lucko.luckperms.users.UserIdentifier;
@@ -61,6 +63,32 @@ public class UserCollection implements SubjectCollection {
         this.fallback = new SimpleCollection(service, "fallback-users");
     }
 
+    /**
+     * Gets the combined statistics of the context caches of every subject
+     * @return the statistics
+     */
+    public CacheStats getCacheStats() {
+        CacheStats stats = new CacheStats(0, 0, 0, 0, 0, 0);
+        for (LuckPermsUserSubject subject : users.values()) {
+            ContextualCache<?> contextData = subject.getContextData();
+            if (contextData != null) {
+                stats = stats.plus(contextData.getStats());
+            }
+        }
+        return stats;
+    }
+
+    public long getCachedContextCount() {
+        long count = 0;
+        for (LuckPermsUserSubject subject : users.values()) {
+            ContextualCache<?> contextData = subject.getContextData();
+            if (contextData != null) {
+                count += contextData.size();
+            }
+        }
+        return count;
+    }
+
     @Override
     public String getIdentifier() {
         return PermissionService.SUBJECTS_USER;
@@ -26,10 +26,6 @@ import lombok.AllArgsConstructor;
 import me.lucko.luckperms.api.sponge.LuckPermsUserSubject;
 import me.lucko.luckperms.api.sponge.collections.UserCollection;
 
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
 @AllArgsConstructor
 public class ContextUpdateTask implements Runnable {
     private final UserCollection userCollection;
@@ -37,8 +33,7 @@ public class ContextUpdateTask implements Runnable {
     @Override
     public void run() {
         for (LuckPermsUserSubject subject : userCollection.getUsers().values()) {
-            Set<Map<String, String>> contexts = new HashSet<>(subject.getContextData().keySet());
-            contexts.forEach(map -> subject.calculatePermissions(map, true));
+            subject.getContextData().getContexts().forEach(map -> subject.calculatePermissions(map, true));
         }
     }
 
@@ -27,6 +27,7 @@ import me.lucko.luckperms.api.context.ContextListener;
 import org.spongepowered.api.entity.living.player.Player;
 
 import java.util.Map;
+import java.util.stream.Collectors;
 
 public class SpongeUserManager extends UserManager implements ContextListener<Player> {
     private final LPSpongePlugin plugin;
@@ -59,9 +60,10 @@ public class SpongeUserManager extends UserManager implements ContextListener<Pl
 
     @Override
     public void updateAllUsers() {
-        plugin.getGame().getServer().getOnlinePlayers().stream()
+        plugin.getDatastore().loadUsers(plugin.getGame().getServer().getOnlinePlayers().stream()
                 .map(p -> plugin.getUuidCache().getUUID(p.getUniqueId()))
-                .forEach(u -> plugin.getDatastore().loadUser(u, "null"));
+                .collect(Collectors.toSet())
+        );
     }
 
     @Override
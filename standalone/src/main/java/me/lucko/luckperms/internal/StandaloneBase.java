@@ -35,7 +35,9 @@ import me.lucko.luckperms.constants.Constants;
 import me.lucko.luckperms.constants.Message;
 import me.lucko.luckperms.constants.Permission;
 import me.lucko.luckperms.contexts.ContextManager;
+import me.lucko.luckperms.core.ExpiryScheduler;
 import me.lucko.luckperms.core.UuidCache;
+import me.lucko.luckperms.core.WorkerPool;
 import me.lucko.luckperms.data.Importer;
 import me.lucko.luckperms.groups.GroupManager;
 import me.lucko.luckperms.storage.Datastore;
@@ -68,12 +70,16 @@ public class StandaloneBase implements LuckPermsPlugin {
     private final UuidCache uuidCache;
     private final ApiProvider apiProvider;
     private final LocaleManager localeManager;
+    private final ExpiryScheduler expiryScheduler;
+    private final WorkerPool workerPool;
 
     public StandaloneBase(LPStandaloneApp app) {
         logger = java.util.logging.Logger.getGlobal();
         log = LogFactory.wrap(logger);
 
         configuration = new StandaloneConfiguration(this);
+        expiryScheduler = new ExpiryScheduler(this);
+        workerPool = new WorkerPool();
         localeManager = new LocaleManager();
 
         // TODO datastore
@@ -92,6 +98,8 @@ public class StandaloneBase implements LuckPermsPlugin {
 
     public void shutdown() {
         datastore.shutdown();
+        expiryScheduler.shutdown();
+        workerPool.shutdown();
     }
 
     @Override